@@ -0,0 +1,27 @@
+#!/bin/sh
+# Memory footprint and latency of the autocomplete indexes. Needs curl, wrk (https://github.com/wg/wrk) and
+# a running application, ideally on a database loaded with sql/bench_search.sql (5M product names).
+# Usage: bench/autocomplete.sh [base url] [duration]
+#
+# index-bytes is the size of the arrays of each index, names included. To check it against the heap, compare
+# jvm.memory.used after a full GC (jcmd <pid> GC.run) with shopapp.autocomplete.enabled=true and false.
+
+BASE_URL=${1:-http://localhost:8080}
+DURATION=${2:-30s}
+
+metric() {
+    curl -s "$BASE_URL/actuator/metrics/$1?tag=index:$2" | grep -o '"value":[0-9.E]*' | cut -d: -f2
+}
+
+for index in shops products.fr products.en; do
+    entries=$(metric shopapp.autocomplete.entries "$index")
+    bytes=$(metric shopapp.autocomplete.index-bytes "$index")
+    echo "== $index: $entries entries, $bytes bytes"
+done
+
+# Short prefixes match the most names, the top entries still come from the tree without a scan
+for path in "shops?prefix=s" "shops?prefix=shop%201004" "products?prefix=c" "products?prefix=chai" \
+    "products?prefix=model42&locale=EN"; do
+    echo "== $path"
+    wrk -t4 -c64 -d"$DURATION" --latency "$BASE_URL/api/v1/autocomplete/$path" | grep -E "Requests/sec|Non-2xx|50%|99%"
+done
@@ -0,0 +1,24 @@
+#!/bin/sh
+# Measures the category listings at several category sizes, from Postgres and from the read model.
+# Needs wrk (https://github.com/wg/wrk) and a running application on a database loaded with
+# sql/bench_categories.sql. Run it once with shopapp.read-model.enabled=false and once with true, and
+# with shopapp.list-cache.enabled=false so that every request is served by the database or the model.
+# Usage: bench/categories.sh [base url] [duration]
+
+BASE_URL=${1:-http://localhost:8080}
+DURATION=${2:-30s}
+
+for query in \
+    "categoryId=9000001" \
+    "categoryId=9000001&page=500" \
+    "categoryId=9000004" \
+    "categoryId=9000003,9000004" \
+    "categoryId=9000001,9000003&categoryMatch=ALL" \
+    "categoryId=9000001,9000002&categoryMatch=ALL" \
+    "categoryId=9000002&shopId=3004242"; do
+    for total in false true; do
+        echo "== $query, withTotal=$total"
+        wrk -t4 -c32 -d"$DURATION" --latency "$BASE_URL/api/v1/products?$query&size=20&withTotal=$total" \
+            | grep -E "Requests/sec|Non-2xx|50%|99%"
+    done
+done
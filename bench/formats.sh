@@ -0,0 +1,30 @@
+#!/bin/sh
+# Payload size and serialization cost of the response formats of the list endpoints.
+# Needs curl, wrk (https://github.com/wg/wrk) and a running application, ideally on a database loaded
+# with sql/bench_partitioning.sql. Run it with shopapp.list-cache.enabled=false, so that every request
+# serializes its page. Usage: bench/formats.sh [base url] [duration]
+#
+# The sizes are the bytes on the wire, with and without gzip (above server.compression.min-response-size).
+# At the same concurrency the requests/s of each format show the serialization and compression CPU,
+# the database work being the same: compare them with the JSON line.
+
+BASE_URL=${1:-http://localhost:8080}
+DURATION=${2:-30s}
+SHOP_ID=${SHOP_ID:-1000000}
+
+for path in \
+    "shops?page=0&size=100" \
+    "products?shopId=$SHOP_ID&page=0&size=100" \
+    "categories?page=0&size=100"; do
+    for format in json cbor smile; do
+        url="$BASE_URL/api/v1/$path&format=$format"
+        plain=$(curl -s -o /dev/null -w "%{size_download}" "$url")
+        gzip=$(curl -s -o /dev/null -w "%{size_download}" -H "Accept-Encoding: gzip" "$url")
+        echo "== $format $path: $plain bytes, $gzip bytes gzipped"
+        for encoding in identity gzip; do
+            echo "-- Accept-Encoding: $encoding"
+            wrk -t4 -c32 -d"$DURATION" --latency -H "Accept-Encoding: $encoding" "$url" \
+                | grep -E "Requests/sec|Non-2xx|50%|99%"
+        done
+    done
+done
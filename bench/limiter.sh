@@ -0,0 +1,42 @@
+#!/bin/sh
+# Latency of the by-id reads alone, then during a storm of shops sorted by number of products.
+# Needs curl, wrk (https://github.com/wg/wrk) and a running application, ideally on a database loaded
+# with sql/bench_partitioning.sql. Run it with shopapp.limiter.enabled=true and false: with the limiter,
+# the p99 of the by-id reads should stay close to the one measured alone, the storm getting 503s.
+# Usage: bench/limiter.sh [base url] [duration]
+
+BASE_URL=${1:-http://localhost:8080}
+DURATION=${2:-30s}
+SHOP_ID=${SHOP_ID:-1000000}
+PRODUCT_ID=${PRODUCT_ID:-10000000}
+STORM_CONNECTIONS=${STORM_CONNECTIONS:-256}
+
+metric() {
+    curl -s "$BASE_URL/actuator/metrics/$1?tag=class:$2" | grep -o '"value":[0-9.E]*' | cut -d: -f2
+}
+
+by_id() {
+    for path in "shops/$SHOP_ID" "products/$PRODUCT_ID"; do
+        echo "-- $path"
+        wrk -t4 -c64 -d"$DURATION" --latency "$BASE_URL/api/v1/$path" \
+            | grep -E "Requests/sec|Non-2xx|50%|99%"
+    done
+}
+
+echo "== by-id reads alone"
+by_id
+
+echo "== by-id reads during the storm, $STORM_CONNECTIONS connections on sortBy=nbProducts"
+wrk -t4 -c"$STORM_CONNECTIONS" -d3600s "$BASE_URL/api/v1/shops?sortBy=nbProducts&page=0&size=20" \
+    > /dev/null &
+STORM=$!
+trap 'kill $STORM 2> /dev/null' EXIT
+sleep 5
+by_id
+kill $STORM
+
+for class in cheap standard expensive; do
+    limit=$(metric shopapp.limiter.limit "$class")
+    rejected=$(metric shopapp.limiter.rejected "$class")
+    echo "== $class: limit $limit, $rejected rejected"
+done
@@ -0,0 +1,35 @@
+#!/bin/sh
+# Throughput of the 404 responses of unknown ids, compared with the 200 responses of known ones.
+# Needs wrk (https://github.com/wg/wrk) and a running application. Run it on the build before the
+# typed exceptions and on the current one: the 404s used to cost more than the lookup they answer
+# (stack traces at each layer and logged), they should now come close to the 200s.
+# Usage: bench/not_found.sh [base url] [duration]
+
+BASE_URL=${1:-http://localhost:8080}
+DURATION=${2:-30s}
+SHOP_ID=${SHOP_ID:-1}
+PRODUCT_ID=${PRODUCT_ID:-1}
+CATEGORY_ID=${CATEGORY_ID:-1}
+
+# Random unknown ids, like scrapers, so that the requests are not coalesced
+SCRIPT=$(mktemp)
+trap 'rm -f "$SCRIPT"' EXIT
+cat > "$SCRIPT" << 'LUA'
+request = function()
+    return wrk.format("GET", wrk.path .. math.random(1000000000, 2000000000))
+end
+LUA
+
+for entity in shops products categories; do
+    case $entity in
+        shops) id=$SHOP_ID ;;
+        products) id=$PRODUCT_ID ;;
+        categories) id=$CATEGORY_ID ;;
+    esac
+    echo "== $entity/$id"
+    wrk -t4 -c64 -d"$DURATION" --latency "$BASE_URL/api/v1/$entity/$id" \
+        | grep -E "Requests/sec|Non-2xx|50%|99%"
+    echo "== $entity/<unknown id>"
+    wrk -t4 -c64 -d"$DURATION" --latency -s "$SCRIPT" "$BASE_URL/api/v1/$entity/" \
+        | grep -E "Requests/sec|Non-2xx|50%|99%"
+done
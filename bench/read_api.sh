@@ -0,0 +1,28 @@
+#!/bin/sh
+# Compares the blocking v1 read endpoints with the non-blocking v2 ones at increasing concurrency.
+# Needs wrk (https://github.com/wg/wrk) and a running application, ideally on a database loaded with
+# sql/bench_partitioning.sql. Usage: bench/read_api.sh [base url] [duration]
+#
+# Both versions answer the same queries. At high concurrency, v1 is bounded by the Tomcat request
+# threads and the Hikari pool (each request holds both for the whole round trip), v2 by the R2DBC
+# pool only: compare the requests/s and the tail latencies of each pair.
+
+BASE_URL=${1:-http://localhost:8080}
+DURATION=${2:-30s}
+SHOP_ID=${SHOP_ID:-1000000}
+PRODUCT_ID=${PRODUCT_ID:-10000000}
+
+for concurrency in 64 256 1024; do
+    for path in \
+        "shops/$SHOP_ID" \
+        "products/$PRODUCT_ID" \
+        "shops?page=0&size=20" \
+        "products?shopId=$SHOP_ID&page=0&size=20" \
+        "categories?page=0&size=20"; do
+        for version in v1 v2; do
+            echo "== $version $path, $concurrency connections"
+            wrk -t8 -c"$concurrency" -d"$DURATION" --latency "$BASE_URL/api/$version/$path" \
+                | grep -E "Requests/sec|Non-2xx|50%|99%"
+        done
+    done
+done
@@ -0,0 +1,31 @@
+#!/bin/sh
+# Connections taken from the pool by identical by-id reads, at increasing concurrency.
+# Needs curl, wrk (https://github.com/wg/wrk) and a running application, ideally on a database loaded
+# with sql/bench_partitioning.sql. Run it with shopapp.read-model.enabled=false, so that the reads go
+# to the database. Usage: bench/single_flight.sh [base url] [duration]
+#
+# Each load takes one connection, so the acquisitions per second are the database load rate. Coalesced,
+# it stays flat as the concurrency grows while the requests/s follow it; with shopapp.single-flight.ttl
+# above zero, it drops to about one load per TTL.
+
+BASE_URL=${1:-http://localhost:8080}
+DURATION=${2:-30s}
+SHOP_ID=${SHOP_ID:-1000000}
+PRODUCT_ID=${PRODUCT_ID:-10000000}
+
+acquisitions() {
+    curl -s "$BASE_URL/actuator/metrics/hikaricp.connections.acquire" | grep -o '"value":[0-9.E]*' | head -1 \
+        | cut -d: -f2
+}
+
+for path in "shops/$SHOP_ID" "products/$PRODUCT_ID"; do
+    for concurrency in 1 16 256 1024; do
+        before=$(acquisitions)
+        start=$(date +%s)
+        echo "== $path, $concurrency connections"
+        wrk -t8 -c"$concurrency" -d"$DURATION" --latency "$BASE_URL/api/v1/$path" \
+            | grep -E "Requests/sec|Non-2xx|50%|99%"
+        after=$(acquisitions)
+        echo "   connections acquired/s: $(echo "($after - $before) / ($(date +%s) - $start)" | bc)"
+    done
+done
@@ -0,0 +1,90 @@
+-- Loads 2M products over 10 000 shops in categories of very different sizes, then shows the plans of
+-- the category listings (ProductRepository). Run after sql/products_categories_index.sql.
+--   9000001: every other product (1M)    9000002: one product in 10 (200 000)
+--   9000003: one product in 1 000 (2 000)    9000004: 20 products
+-- A page of a large category should stop after a few index probes, a small category should be read
+-- from the (category_id, product_id) index instead of scanning the products. The ALL match reads the
+-- index entries of every filtered category: its cost grows with the largest category, which is
+-- where the read model (shopapp.read-model.enabled) is expected to be much faster.
+
+insert into shops (id, name, created_at, in_vacations)
+select s, 'Shop ' || s, current_date, false
+from generate_series(3000000, 3009999) s
+on conflict do nothing;
+
+insert into categories (id, name)
+values (9000001, 'Half'), (9000002, 'Tenth'), (9000003, 'Thousandth'), (9000004, 'Twenty')
+on conflict do nothing;
+
+insert into products (id, price, shop_id)
+select p, (random() * 100)::float4, 3000000 + (p % 10000)
+from generate_series(80000000, 81999999) p;
+
+insert into products_categories (product_id, category_id)
+select p, 9000001 from generate_series(80000000, 81999999, 2) p
+union all
+select p, 9000002 from generate_series(80000000, 81999999, 10) p
+union all
+select p, 9000003 from generate_series(80000000, 81999999, 1000) p
+union all
+select p, 9000004 from generate_series(80000000, 80019999, 1000) p;
+
+analyze;
+
+-- One large category, first and deep pages
+explain (analyze, buffers)
+select * from products p
+where exists (select 1 from products_categories pc where pc.product_id = p.id and pc.category_id in (9000001))
+and not exists (select 1 from shops s where s.id = p.shop_id and s.deleted)
+limit 21;
+
+explain (analyze, buffers)
+select * from products p
+where exists (select 1 from products_categories pc where pc.product_id = p.id and pc.category_id in (9000001))
+and not exists (select 1 from shops s where s.id = p.shop_id and s.deleted)
+offset 10000 limit 21;
+
+-- One small category: read from the category index, not from a scan of the products
+explain (analyze, buffers)
+select * from products p
+where exists (select 1 from products_categories pc where pc.product_id = p.id and pc.category_id in (9000004))
+and not exists (select 1 from shops s where s.id = p.shop_id and s.deleted)
+limit 21;
+
+-- Any of two categories
+explain (analyze, buffers)
+select * from products p
+where exists (select 1 from products_categories pc where pc.product_id = p.id
+              and pc.category_id in (9000003, 9000004))
+and not exists (select 1 from shops s where s.id = p.shop_id and s.deleted)
+limit 21;
+
+-- All of a large and a small category
+explain (analyze, buffers)
+select * from products p
+where p.id in (select pc.product_id from products_categories pc where pc.category_id in (9000001, 9000003)
+               group by pc.product_id having count(*) = 2)
+and not exists (select 1 from shops s where s.id = p.shop_id and s.deleted)
+limit 21;
+
+-- All of two large categories
+explain (analyze, buffers)
+select * from products p
+where p.id in (select pc.product_id from products_categories pc where pc.category_id in (9000001, 9000002)
+               group by pc.product_id having count(*) = 2)
+and not exists (select 1 from shops s where s.id = p.shop_id and s.deleted)
+limit 21;
+
+-- Total of a large category, as counted for withTotal
+explain (analyze, buffers)
+select count(*) from products p
+where exists (select 1 from products_categories pc where pc.product_id = p.id and pc.category_id in (9000001))
+and not exists (select 1 from shops s where s.id = p.shop_id and s.deleted);
+
+-- Category of a shop: a single products partition
+explain (analyze, buffers)
+select * from products p
+where p.shop_id = 3004242
+and exists (select 1 from products_categories pc where pc.product_id = p.id and pc.category_id in (9000002))
+and not exists (select 1 from shops s where s.id = 3004242 and s.deleted)
+limit 21;
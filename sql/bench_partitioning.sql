@@ -0,0 +1,37 @@
+-- Loads 50M products over 10 000 shops, then shows the plans of the per-shop queries.
+-- Each plan should only touch one products_pN partition ("Subplans Removed" / a single partition scan).
+-- To compare with the unpartitioned layout, run the same script on a database created before partitioning.
+
+insert into shops (id, name, created_at, in_vacations)
+select s, 'Shop ' || s, current_date, false
+from generate_series(1000000, 1009999) s;
+
+insert into products (id, price, shop_id)
+select p, (random() * 100)::float4, 1000000 + (p % 10000)
+from generate_series(10000000, 59999999) p;
+
+insert into categories (id, name)
+select c, 'Category ' || c from generate_series(1000000, 1000099) c;
+
+insert into products_categories (product_id, category_id)
+select p, 1000000 + (p % 100) from generate_series(10000000, 59999999, 3) p;
+
+analyze;
+
+-- ProductRepository.findByShop
+explain (analyze, buffers)
+select * from products where shop_id = 1004242 order by id limit 20;
+
+-- ProductRepository.findByShopAndCategory
+explain (analyze, buffers)
+select * from products p where p.shop_id = 1004242 and p.id in (
+    select pc.product_id from products_categories pc where pc.category_id = 1000042
+) limit 20;
+
+-- Shop.nbProducts formula
+explain (analyze, buffers)
+select count(*) from products p where p.shop_id = 1004242;
+
+-- Prepared statements, as issued by the application, rely on execution-time pruning
+prepare by_shop(int8) as select * from products where shop_id = $1 order by id limit 20;
+explain (analyze, buffers) execute by_shop(1004242);
@@ -0,0 +1,71 @@
+-- Loads 5M localizations (2.5M products in french and english) over 10 000 shops, then shows the plans
+-- of the product search (ProductSearchService). Run after sql/product_search.sql.
+-- A rare word should read a few GIN pages; a frequent one stops after shopapp.search.max-candidates
+-- matches instead of ranking every matching row. Both should stay well under 50 ms once cached.
+
+insert into shops (id, name, created_at, in_vacations)
+select s, 'Shop ' || s, current_date, false
+from generate_series(2000000, 2009999) s
+on conflict do nothing;
+
+insert into products (id, price, shop_id)
+select p, (random() * 100)::float4, 2000000 + (p % 10000)
+from generate_series(70000000, 72499999) p;
+
+-- Names mix a frequent word (one product in 10) with rarer ones (one in 10 000)
+insert into localized_product (id, locale, name, description)
+select 2 * p, 'FR',
+       (array['chaise', 'table', 'lampe', 'tapis', 'miroir'])[1 + p % 5] || ' ' || 'modèle' || (p % 10000)
+           || case when p % 10 = 0 then ' vintage' else '' end,
+       'Description du produit ' || p
+from generate_series(70000000, 72499999) p;
+
+insert into localized_product (id, locale, name, description)
+select 2 * p + 1, 'EN',
+       (array['chair', 'table', 'lamp', 'rug', 'mirror'])[1 + p % 5] || ' ' || 'model' || (p % 10000)
+           || case when p % 10 = 0 then ' vintage' else '' end,
+       'Description of product ' || p
+from generate_series(70000000, 72499999) p;
+
+insert into products_localized_product (product_id, localized_product_id)
+select p, 2 * p from generate_series(70000000, 72499999) p
+union all
+select p, 2 * p + 1 from generate_series(70000000, 72499999) p;
+
+analyze;
+
+-- Rare word
+explain (analyze, buffers)
+select m.product_id, m.rank from (
+    select pl.product_id, ts_rank(l.search_vector, websearch_to_tsquery('french', 'modèle4242')) as rank
+    from localized_product l
+    join products_localized_product pl on pl.localized_product_id = l.id
+    join products p on p.id = pl.product_id
+    where l.locale = 'FR' and l.search_vector @@ websearch_to_tsquery('french', 'modèle4242')
+    and not exists (select 1 from shops s where s.id = p.shop_id and s.deleted)
+    limit 10000) m
+order by m.rank desc, m.product_id limit 21;
+
+-- Frequent word, bounded by the candidates limit
+explain (analyze, buffers)
+select m.product_id, m.rank from (
+    select pl.product_id, ts_rank(l.search_vector, websearch_to_tsquery('english', 'vintage chair')) as rank
+    from localized_product l
+    join products_localized_product pl on pl.localized_product_id = l.id
+    join products p on p.id = pl.product_id
+    where l.locale = 'EN' and l.search_vector @@ websearch_to_tsquery('english', 'vintage chair')
+    and not exists (select 1 from shops s where s.id = p.shop_id and s.deleted)
+    limit 10000) m
+order by m.rank desc, m.product_id limit 21;
+
+-- Filtered by shop: a single products partition
+explain (analyze, buffers)
+select m.product_id, m.rank from (
+    select pl.product_id, ts_rank(l.search_vector, websearch_to_tsquery('french', 'lampe')) as rank
+    from localized_product l
+    join products_localized_product pl on pl.localized_product_id = l.id
+    join products p on p.id = pl.product_id
+    where l.locale = 'FR' and l.search_vector @@ websearch_to_tsquery('french', 'lampe')
+    and not exists (select 1 from shops s where s.id = p.shop_id and s.deleted) and p.shop_id = 2004242
+    limit 10000) m
+order by m.rank desc, m.product_id limit 21;
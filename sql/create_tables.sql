@@ -1,14 +1,31 @@
+create table change_events (
+    id int8 generated by default as identity,
+    created_at timestamp(6) with time zone not null,
+    entity_id int8 not null,
+    entity_type varchar(255) not null check (entity_type in ('SHOP','PRODUCT','CATEGORY')),
+    operation varchar(255) not null check (operation in ('CREATED','UPDATED','DELETED')),
+    shop_id int8,
+    primary key (id)
+);
+
 create table categories (
     id int8 not null,
     name varchar(255) not null,
     primary key (id)
 );
 
+-- search_vector is maintained by Postgres for the product search, with the configuration of the locale
 create table localized_product (
     id int8 not null,
     description varchar(255),
     locale varchar(255) not null,
     name varchar(255) not null,
+    search_vector tsvector generated always as (
+        setweight(to_tsvector(case locale when 'FR' then 'french'::regconfig else 'english'::regconfig end,
+                              coalesce(name, '')), 'A')
+        || setweight(to_tsvector(case locale when 'FR' then 'french'::regconfig else 'english'::regconfig end,
+                                 coalesce(description, '')), 'B')
+    ) stored,
     primary key (id)
 );
 
@@ -20,18 +37,36 @@ create table opening_hours (
     primary key (id)
 );
 
+-- products is hash-partitioned on shop_id, so that per-shop queries only scan one partition.
+-- The keys of a partitioned table must contain shop_id, which is null for the products detached from a
+-- purged shop: the key is the unique (shop_id, id) constraint rather than a primary key, and the tables
+-- referencing products by id alone are checked by the triggers at the end of this script.
 create table products (
     id int8 not null,
     price float4 not null,
     shop_id int8,
-    primary key (id)
-);
+    constraint uk_products_shop_id_id unique (shop_id, id)
+) partition by hash (shop_id);
+
+do $$
+begin
+    for i in 0..15 loop
+        execute format(
+            'create table products_p%s partition of products for values with (modulus 16, remainder %s)', i, i
+        );
+    end loop;
+end $$;
+
+create index idx_products_id on products (id);
 
 create table products_categories (
     product_id int8 not null,
-    category_id int8 not null
+    category_id int8 not null,
+    constraint uk_products_categories unique (product_id, category_id)
 );
 
+create index idx_products_categories_category_id_product_id on products_categories (category_id, product_id);
+
 create table products_localized_product (
     product_id int8 not null,
     localized_product_id int8 not null
@@ -40,11 +75,43 @@ create table products_localized_product (
 create table shops (
     id int8 not null,
     created_at date not null,
+    deleted boolean default false not null,
     in_vacations boolean not null,
     name varchar(255) not null,
     primary key (id)
 );
 
+create table price_adjustments (
+    id int8 generated by default as identity,
+    category_id int8,
+    created_at timestamp(6) with time zone not null,
+    error varchar(1000),
+    finished_at timestamp(6) with time zone,
+    last_product_id int8 not null,
+    max_price float4,
+    min_price float4,
+    products_matched int8 not null,
+    products_updated int8 not null,
+    shop_id int8,
+    status varchar(255) not null check (status in ('DRY_RUN','RUNNING','COMPLETED','FAILED')),
+    type varchar(255) not null check (type in ('AMOUNT','PERCENT')),
+    value float4 not null,
+    primary key (id)
+);
+
+create table shop_deletion_jobs (
+    id int8 generated by default as identity,
+    attempts int4 default 0 not null,
+    created_at timestamp(6) with time zone not null,
+    error varchar(1000),
+    finished_at timestamp(6) with time zone,
+    products_detached int8 not null,
+    shop_id int8 not null,
+    status varchar(255) not null check (status in ('PENDING','RUNNING','COMPLETED','FAILED')),
+    updated_at timestamp(6) with time zone not null,
+    primary key (id)
+);
+
 create table shops_opening_hours (
     shop_id int8 not null,
     opening_hours_id int8 not null
@@ -58,6 +125,14 @@ create table translation (
     primary key (id)
 );
 
+create index idx_change_events_created_at on change_events (created_at);
+
+create index idx_shop_deletion_jobs_status on shop_deletion_jobs (status);
+
+create index idx_localized_product_search_fr on localized_product using gin (search_vector) where locale = 'FR';
+
+create index idx_localized_product_search_en on localized_product using gin (search_vector) where locale = 'EN';
+
 alter table products_localized_product
 add constraint UK_n8q0vltkv2dgjclj2aqn26l03 unique(localized_product_id);
 
@@ -70,17 +145,45 @@ add constraint FK7kp8sbhxboponhx3lxqtmkcoj foreign key (shop_id) references shop
 alter table products_categories
 add constraint FKqt6m2o5dly3luqcm00f5t4h2p foreign key (category_id) references categories;
 
-alter table products_categories
-add constraint FKtj1vdea8qwerbjqie4xldl1el foreign key (product_id) references products;
-
 alter table products_localized_product
 add constraint FKjs8yfvw4we59oaei8c9txb4wy foreign key (localized_product_id) references localized_product;
 
-alter table products_localized_product add constraint
-FK6i2yelx9i3lagm1u7n6v0xnfh foreign key (product_id) references products;
-
 alter table shops_opening_hours
 add constraint FKti43xlm3mfbeodhgi4qn1yhgw foreign key (opening_hours_id) references opening_hours;
 
 alter table shops_opening_hours
 add constraint FK8dcjdnasobclsvyy8wjfki7gj foreign key (shop_id) references shops;
+
+-- In place of the foreign keys to products: the referenced product is locked like a foreign key would,
+-- and a product can only be deleted once its rows are (the rows moved to another partition by a change
+-- of shop_id are deleted and inserted in the same statement, hence the check that the id is gone)
+create function check_product_exists() returns trigger as $$
+begin
+    perform 1 from products where id = new.product_id for key share;
+    if not found then
+        raise foreign_key_violation using message = format(
+            'product %s referenced by %s does not exist', new.product_id, tg_table_name
+        );
+    end if;
+    return null;
+end $$ language plpgsql;
+
+create function check_product_not_referenced() returns trigger as $$
+begin
+    if not exists (select 1 from products where id = old.id)
+            and (exists (select 1 from products_categories where product_id = old.id)
+                or exists (select 1 from products_localized_product where product_id = old.id)) then
+        raise foreign_key_violation using message = format('product %s is still referenced', old.id);
+    end if;
+    return null;
+end $$ language plpgsql;
+
+create trigger trg_products_categories_product after insert or update of product_id on products_categories
+for each row execute function check_product_exists();
+
+create trigger trg_products_localized_product_product
+after insert or update of product_id on products_localized_product
+for each row execute function check_product_exists();
+
+create trigger trg_products_referenced after delete on products
+for each row execute function check_product_not_referenced();
@@ -0,0 +1,97 @@
+-- Migrates an existing unpartitioned products table to the hash-partitioned layout of create_tables.sql.
+-- Run it with psql outside of a transaction block (the copy commits after each chunk),
+-- while the application is stopped or no longer writing products.
+
+-- 1. Partitioned copy of the table
+create table products_partitioned (
+    id int8 not null,
+    price float4 not null,
+    shop_id int8
+) partition by hash (shop_id);
+
+do $$
+begin
+    for i in 0..15 loop
+        execute format(
+            'create table products_partitioned_p%s partition of products_partitioned '
+            'for values with (modulus 16, remainder %s)', i, i
+        );
+    end loop;
+end $$;
+
+-- 2. Copy the rows in chunks of 100 000 ids, committing each chunk to keep transactions short
+do $$
+declare
+    chunk_start int8 := 0;
+    max_id int8;
+begin
+    select coalesce(max(id), 0) into max_id from products;
+    while chunk_start <= max_id loop
+        insert into products_partitioned (id, price, shop_id)
+        select id, price, shop_id from products
+        where id >= chunk_start and id < chunk_start + 100000;
+        commit;
+        chunk_start := chunk_start + 100000;
+    end loop;
+end $$;
+
+-- Indexes are built once the data is loaded, which is faster than maintaining them during the copy.
+-- The key of the partitioned table must contain shop_id, see create_tables.sql.
+create index idx_products_partitioned_id on products_partitioned (id);
+alter table products_partitioned add constraint uk_products_partitioned_shop_id_id unique (shop_id, id);
+
+-- 3. Swap the tables. The foreign keys of the join tables reference the primary key of the old table,
+-- they are replaced by the triggers of create_tables.sql.
+begin;
+alter table products_categories drop constraint if exists FKtj1vdea8qwerbjqie4xldl1el;
+alter table products_localized_product drop constraint if exists FK6i2yelx9i3lagm1u7n6v0xnfh;
+alter table products rename to products_unpartitioned;
+alter index if exists idx_products_id rename to idx_products_unpartitioned_id;
+alter index if exists idx_products_shop_id_id rename to idx_products_unpartitioned_shop_id_id;
+alter table products_partitioned rename to products;
+alter index idx_products_partitioned_id rename to idx_products_id;
+alter table products rename constraint uk_products_partitioned_shop_id_id to uk_products_shop_id_id;
+do $$
+begin
+    for i in 0..15 loop
+        execute format('alter table products_partitioned_p%s rename to products_p%s', i, i);
+    end loop;
+end $$;
+alter table products add constraint FK7kp8sbhxboponhx3lxqtmkcoj foreign key (shop_id) references shops;
+
+create or replace function check_product_exists() returns trigger as $$
+begin
+    perform 1 from products where id = new.product_id for key share;
+    if not found then
+        raise foreign_key_violation using message = format(
+            'product %s referenced by %s does not exist', new.product_id, tg_table_name
+        );
+    end if;
+    return null;
+end $$ language plpgsql;
+
+create or replace function check_product_not_referenced() returns trigger as $$
+begin
+    if not exists (select 1 from products where id = old.id)
+            and (exists (select 1 from products_categories where product_id = old.id)
+                or exists (select 1 from products_localized_product where product_id = old.id)) then
+        raise foreign_key_violation using message = format('product %s is still referenced', old.id);
+    end if;
+    return null;
+end $$ language plpgsql;
+
+create trigger trg_products_categories_product after insert or update of product_id on products_categories
+for each row execute function check_product_exists();
+
+create trigger trg_products_localized_product_product
+after insert or update of product_id on products_localized_product
+for each row execute function check_product_exists();
+
+create trigger trg_products_referenced after delete on products
+for each row execute function check_product_not_referenced();
+commit;
+
+analyze products;
+
+-- 4. Once the application has been checked against the new table:
+-- drop table products_unpartitioned;
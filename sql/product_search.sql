@@ -0,0 +1,19 @@
+-- Adds the full-text search column of the localized products, with the text search configuration
+-- of their locale (the name weighs more than the description), and one GIN index per locale.
+-- Adding a stored generated column rewrites the table.
+
+alter table localized_product
+add column search_vector tsvector generated always as (
+    setweight(to_tsvector(case locale when 'FR' then 'french'::regconfig else 'english'::regconfig end,
+                          coalesce(name, '')), 'A')
+    || setweight(to_tsvector(case locale when 'FR' then 'french'::regconfig else 'english'::regconfig end,
+                             coalesce(description, '')), 'B')
+) stored;
+
+create index concurrently idx_localized_product_search_fr on localized_product using gin (search_vector)
+where locale = 'FR';
+
+create index concurrently idx_localized_product_search_en on localized_product using gin (search_vector)
+where locale = 'EN';
+
+analyze localized_product;
@@ -0,0 +1,9 @@
+-- Adds the (category_id, product_id) index of create_tables.sql to an existing database. The unique
+-- (product_id, category_id) constraint only finds the categories of a product; this index finds the
+-- products of a category, for the category listings without a shop and the GROUP BY of the ALL match.
+-- Run it with psql outside of a transaction block: the index is built without blocking the writes.
+
+create index concurrently if not exists idx_products_categories_category_id_product_id
+on products_categories (category_id, product_id);
+
+analyze products_categories;
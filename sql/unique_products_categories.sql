@@ -0,0 +1,18 @@
+-- Adds the unique (product_id, category_id) constraint that the bulk category endpoints rely on
+-- (ON CONFLICT). Duplicate links are removed first, keeping one row per pair.
+
+begin;
+
+lock table products_categories in share row exclusive mode;
+
+delete from products_categories pc
+using (
+    select ctid, row_number() over (partition by product_id, category_id order by ctid) as n
+    from products_categories
+) duplicates
+where pc.ctid = duplicates.ctid and duplicates.n > 1;
+
+alter table products_categories
+add constraint uk_products_categories unique (product_id, category_id);
+
+commit;
@@ -0,0 +1,120 @@
+package fr.fullstack.shopapp.autocomplete;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Names of one kind of entity in one locale: an immutable {@link PrefixIndex} with the changes made
+ * since it was built in a small sorted map. Changed and removed ids are hidden from the prefix
+ * index until the next compaction merges the map into a new one.
+ * Writes come from a single thread, reads from any thread.
+ */
+class AutocompleteIndex {
+    private static final Comparator<Suggestion> BEST_FIRST = Comparator.comparingLong(Suggestion::score)
+            .reversed()
+            .thenComparing(Suggestion::name);
+
+    private volatile Generation generation = new Generation(PrefixIndex.build(List.of()));
+
+    void compact() {
+        Generation current = generation;
+        List<Suggestion> items = current.base.items(current.replaced::contains);
+        items.addAll(current.changes.values());
+        generation = new Generation(PrefixIndex.build(items));
+    }
+
+    int entries() {
+        Generation current = generation;
+        return current.base.entries() + current.delta.size();
+    }
+
+    long estimatedBytes() {
+        // The map holds few entries, counted with the size of a skip list node
+        Generation current = generation;
+        return current.base.estimatedBytes() + current.delta.size() * 96L;
+    }
+
+    /**
+     * Number of changes waiting for the next compaction.
+     */
+    int pending() {
+        return generation.replaced.size();
+    }
+
+    void put(Suggestion item) {
+        Generation current = generation;
+        remove(item.id());
+        for (String key : PrefixIndex.keys(item.name())) {
+            current.delta.put(key + '\0' + item.id(), item);
+        }
+        current.changes.put(item.id(), item);
+    }
+
+    void remove(long id) {
+        Generation current = generation;
+        current.replaced.add(id);
+        Suggestion previous = current.changes.remove(id);
+        if (previous != null) {
+            for (String key : PrefixIndex.keys(previous.name())) {
+                current.delta.remove(key + '\0' + id);
+            }
+        }
+    }
+
+    void reset(List<Suggestion> items) {
+        generation = new Generation(PrefixIndex.build(items));
+    }
+
+    List<Suggestion> suggest(String prefix, int limit) {
+        String normalized = PrefixIndex.normalize(prefix);
+        if (normalized.length() > PrefixIndex.MAX_KEY_LENGTH) {
+            normalized = normalized.substring(0, PrefixIndex.MAX_KEY_LENGTH);
+        }
+
+        Generation current = generation;
+        List<Suggestion> suggestions = current.base.top(normalized, limit, current.replaced::contains);
+        NavigableMap<String, Suggestion> changed = current.delta.subMap(
+                normalized, true, normalized + Character.MAX_VALUE, false
+        );
+        if (changed.isEmpty()) {
+            return suggestions;
+        }
+
+        Set<Long> ids = new HashSet<Long>();
+        List<Suggestion> merged = new ArrayList<Suggestion>(suggestions);
+        for (Suggestion suggestion : suggestions) {
+            ids.add(suggestion.id());
+        }
+        for (Suggestion suggestion : changed.values()) {
+            if (ids.add(suggestion.id())) {
+                merged.add(suggestion);
+            }
+        }
+        merged.sort(BEST_FIRST);
+        return merged.size() > limit ? merged.subList(0, limit) : merged;
+    }
+
+    private static class Generation {
+        private final PrefixIndex base;
+
+        // Current items of the changed ids
+        private final Map<Long, Suggestion> changes = new ConcurrentHashMap<Long, Suggestion>();
+
+        // Keys of the changed items, each suffixed with its id
+        private final ConcurrentSkipListMap<String, Suggestion> delta = new ConcurrentSkipListMap<String, Suggestion>();
+
+        // Ids whose entries in the base are out of date
+        private final Set<Long> replaced = ConcurrentHashMap.newKeySet();
+
+        Generation(PrefixIndex base) {
+            this.base = base;
+        }
+    }
+}
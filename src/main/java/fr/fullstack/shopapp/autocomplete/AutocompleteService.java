@@ -0,0 +1,303 @@
+package fr.fullstack.shopapp.autocomplete;
+
+import fr.fullstack.shopapp.model.Locale;
+import fr.fullstack.shopapp.service.CatalogChangedEvent;
+import fr.fullstack.shopapp.service.CatalogChangesMissedEvent;
+import fr.fullstack.shopapp.service.ProductsChangedEvent;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Search-as-you-type on the shop names and the localized product names, served from memory.
+ * The indexes are built off-thread at startup and rebuilt periodically to refresh the scores; in
+ * between, every committed change is re-read from the database by a single writer thread and
+ * added to the indexes. Products are ranked by the number of products of their shop.
+ */
+@Service
+public class AutocompleteService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AutocompleteService.class);
+
+    private static final String PRODUCTS = "SELECT pl.product_id, l.locale, l.name, p.shop_id "
+            + "FROM localized_product l "
+            + "JOIN products_localized_product pl ON pl.localized_product_id = l.id "
+            + "JOIN products p ON p.id = pl.product_id "
+            + "WHERE NOT EXISTS (SELECT 1 FROM shops s WHERE s.id = p.shop_id AND s.deleted)";
+
+    // Same as the nbProducts formula of Shop
+    private static final String SHOPS = "SELECT s.id, s.name, "
+            + "(SELECT COUNT(*) FROM products p WHERE p.shop_id = s.id) AS nb_products "
+            + "FROM shops s WHERE s.deleted = false";
+
+    private final int batchSize;
+
+    private final int compactThreshold;
+
+    private final boolean enabled;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final Map<Locale, AutocompleteIndex> products = new EnumMap<Locale, AutocompleteIndex>(Locale.class);
+
+    private volatile boolean ready;
+
+    private final Map<Long, Long> shopScores = new ConcurrentHashMap<Long, Long>();
+
+    private final AutocompleteIndex shops = new AutocompleteIndex();
+
+    private final TransactionTemplate transactionTemplate;
+
+    // Loads and applies the changes, so the indexes only have one writer
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "autocomplete-index");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public AutocompleteService(
+            DataSource dataSource,
+            MeterRegistry registry,
+            PlatformTransactionManager transactionManager,
+            @Value("${shopapp.autocomplete.enabled:false}") boolean enabled,
+            @Value("${shopapp.autocomplete.batch-size:1000}") int batchSize,
+            @Value("${shopapp.autocomplete.compact-threshold:10000}") int compactThreshold
+    ) {
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.compactThreshold = compactThreshold;
+        // Rows are streamed from a cursor, which Postgres only keeps open in a transaction
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(batchSize);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+
+        register(registry, "shops", shops);
+        for (Locale locale : Locale.values()) {
+            AutocompleteIndex index = new AutocompleteIndex();
+            products.put(locale, index);
+            register(registry, "products." + locale.name().toLowerCase(), index);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCatalogChanged(CatalogChangedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        switch (event.entityType()) {
+            case PRODUCT:
+                writer.execute(() -> applyProducts(List.of(event.entityId())));
+                break;
+            case SHOP:
+                writer.execute(() -> applyShop(event.entityId()));
+                break;
+            default:
+                break;
+        }
+    }
+
+    @EventListener
+    public void onChangesMissed(CatalogChangesMissedEvent event) {
+        // While loading, the load reads the missed changes anyway
+        if (ready) {
+            writer.execute(this::load);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductsChanged(ProductsChangedEvent event) {
+        if (enabled) {
+            writer.execute(() -> {
+                List<Long> ids = new ArrayList<Long>(event.productIds().length);
+                for (long id : event.productIds()) {
+                    ids.add(id);
+                }
+                applyProductsInBatches(ids);
+            });
+        }
+    }
+
+    @Scheduled(
+            initialDelayString = "${shopapp.autocomplete.reload-interval-ms:3600000}",
+            fixedDelayString = "${shopapp.autocomplete.reload-interval-ms:3600000}"
+    )
+    public void scheduleReload() {
+        if (ready) {
+            writer.execute(this::load);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (enabled) {
+            writer.execute(this::load);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        writer.shutdownNow();
+    }
+
+    /**
+     * Best products with a word of their name in the locale starting with the prefix, or empty
+     * while the indexes are loading.
+     */
+    public Optional<List<Suggestion>> suggestProducts(String prefix, Locale locale, int limit) {
+        return ready ? Optional.of(products.get(locale).suggest(prefix, limit)) : Optional.empty();
+    }
+
+    /**
+     * Best shops with a word of their name starting with the prefix, or empty while the indexes
+     * are loading.
+     */
+    public Optional<List<Suggestion>> suggestShops(String prefix, int limit) {
+        return ready ? Optional.of(shops.suggest(prefix, limit)) : Optional.empty();
+    }
+
+    private void applyProducts(List<Long> ids) {
+        try {
+            Map<Locale, Map<Long, Suggestion>> found = new EnumMap<Locale, Map<Long, Suggestion>>(Locale.class);
+            for (Locale locale : Locale.values()) {
+                found.put(locale, new HashMap<Long, Suggestion>());
+            }
+            jdbcTemplate.query(PRODUCTS + " AND pl.product_id = ANY(?)", rs -> {
+                long shopId = rs.getLong("shop_id");
+                found.get(Locale.valueOf(rs.getString("locale"))).put(rs.getLong("product_id"), new Suggestion(
+                        rs.getLong("product_id"), rs.getString("name"), shopScores.getOrDefault(shopId, 0L)
+                ));
+            }, (Object) ids.toArray(new Long[0]));
+
+            for (Locale locale : Locale.values()) {
+                AutocompleteIndex index = products.get(locale);
+                for (long id : ids) {
+                    Suggestion product = found.get(locale).get(id);
+                    if (product != null) {
+                        index.put(product);
+                    } else {
+                        index.remove(id);
+                    }
+                }
+                compactIfNeeded(index);
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warn("Could not apply {} product changes to the autocomplete indexes", ids.size(), e);
+        }
+    }
+
+    private void applyProductsInBatches(List<Long> ids) {
+        for (int i = 0; i < ids.size(); i += batchSize) {
+            applyProducts(ids.subList(i, Math.min(i + batchSize, ids.size())));
+        }
+    }
+
+    private void applyShop(long id) {
+        try {
+            List<Suggestion> found = jdbcTemplate.query(
+                    SHOPS + " AND s.id = ?",
+                    (rs, rowNum) -> new Suggestion(rs.getLong("id"), rs.getString("name"), rs.getLong("nb_products")),
+                    id
+            );
+            if (found.isEmpty()) {
+                shopScores.remove(id);
+                shops.remove(id);
+                // The products of a deleted shop are not suggested anymore: re-reading them removes them
+                applyProductsInBatches(jdbcTemplate.queryForList(
+                        "SELECT id FROM products WHERE shop_id = ?", Long.class, id
+                ));
+            } else {
+                shopScores.put(id, found.get(0).score());
+                shops.put(found.get(0));
+            }
+            compactIfNeeded(shops);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Could not apply the change of shop {} to the autocomplete indexes", id, e);
+        }
+    }
+
+    private void compactIfNeeded(AutocompleteIndex index) {
+        if (index.pending() >= compactThreshold) {
+            index.compact();
+        }
+    }
+
+    private void load() {
+        long start = System.currentTimeMillis();
+        try {
+            List<Suggestion> shopItems = new ArrayList<Suggestion>();
+            Map<Long, Long> scores = new HashMap<Long, Long>();
+            Map<Locale, List<Suggestion>> productItems = new EnumMap<Locale, List<Suggestion>>(Locale.class);
+            for (Locale locale : Locale.values()) {
+                productItems.put(locale, new ArrayList<Suggestion>());
+            }
+
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.query(SHOPS, rs -> {
+                    Suggestion shop = new Suggestion(rs.getLong("id"), rs.getString("name"), rs.getLong("nb_products"));
+                    shopItems.add(shop);
+                    scores.put(shop.id(), shop.score());
+                });
+                jdbcTemplate.query(PRODUCTS, rs -> {
+                    long shopId = rs.getLong("shop_id");
+                    productItems.get(Locale.valueOf(rs.getString("locale"))).add(new Suggestion(
+                            rs.getLong("product_id"), rs.getString("name"), scores.getOrDefault(shopId, 0L)
+                    ));
+                });
+            });
+
+            shopScores.putAll(scores);
+            shopScores.keySet().retainAll(scores.keySet());
+            shops.reset(shopItems);
+            for (Locale locale : Locale.values()) {
+                products.get(locale).reset(productItems.get(locale));
+            }
+            ready = true;
+            LOGGER.info(
+                    "Autocomplete indexes loaded in {} ms: {} shops, {} product names",
+                    System.currentTimeMillis() - start, shopItems.size(), countItems(productItems)
+            );
+        } catch (RuntimeException e) {
+            LOGGER.error("Could not load the autocomplete indexes", e);
+        }
+    }
+
+    private long countItems(Map<Locale, List<Suggestion>> items) {
+        long count = 0;
+        for (List<Suggestion> list : items.values()) {
+            count += list.size();
+        }
+        return count;
+    }
+
+    private void register(MeterRegistry registry, String name, AutocompleteIndex index) {
+        Gauge.builder("shopapp.autocomplete.entries", index, AutocompleteIndex::entries)
+                .tag("index", name)
+                .register(registry);
+        Gauge.builder("shopapp.autocomplete.index-bytes", index, AutocompleteIndex::estimatedBytes)
+                .tag("index", name)
+                .baseUnit("bytes")
+                .register(registry);
+    }
+}
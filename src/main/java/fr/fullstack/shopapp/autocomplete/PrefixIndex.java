@@ -0,0 +1,278 @@
+package fr.fullstack.shopapp.autocomplete;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.LongPredicate;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable prefix index. Every word of a name starts a key, so a prefix matches any word; the
+ * normalized keys are sorted and packed in one char array, and a tree over the sorted keys gives
+ * the best scored key of any range. The keys starting with a prefix are one range, whose top
+ * entries are taken from the tree without scanning it.
+ */
+final class PrefixIndex {
+    // Longer keys and prefixes are cut, a prefix that long matches few names anyway
+    static final int MAX_KEY_LENGTH = 64;
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final int[] entryItems;
+
+    private final long[] itemIds;
+
+    private final String[] itemNames;
+
+    private final long[] itemScores;
+
+    private final char[] keyChars;
+
+    private final int[] keyOffsets;
+
+    // Best scored entry of each node, the leaves being the entries from entries() to 2 * entries() - 1
+    private final int[] tree;
+
+    private PrefixIndex(
+            char[] keyChars,
+            int[] keyOffsets,
+            int[] entryItems,
+            long[] itemIds,
+            String[] itemNames,
+            long[] itemScores
+    ) {
+        this.keyChars = keyChars;
+        this.keyOffsets = keyOffsets;
+        this.entryItems = entryItems;
+        this.itemIds = itemIds;
+        this.itemNames = itemNames;
+        this.itemScores = itemScores;
+
+        int size = entryItems.length;
+        this.tree = new int[2 * size];
+        for (int i = 0; i < size; i++) {
+            tree[size + i] = i;
+        }
+        for (int i = size - 1; i > 0; i--) {
+            tree[i] = better(tree[2 * i], tree[2 * i + 1]);
+        }
+    }
+
+    static PrefixIndex build(List<Suggestion> items) {
+        List<Key> keys = new ArrayList<Key>();
+        int length = 0;
+        for (int item = 0; item < items.size(); item++) {
+            for (String key : keys(items.get(item).name())) {
+                keys.add(new Key(key, item));
+                length += key.length();
+            }
+        }
+        Key[] sorted = keys.toArray(new Key[0]);
+        Arrays.sort(sorted, (a, b) -> a.key().compareTo(b.key()));
+
+        char[] keyChars = new char[length];
+        int[] keyOffsets = new int[sorted.length + 1];
+        int[] entryItems = new int[sorted.length];
+        int offset = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            String key = sorted[i].key();
+            key.getChars(0, key.length(), keyChars, offset);
+            keyOffsets[i] = offset;
+            entryItems[i] = sorted[i].item();
+            offset += key.length();
+        }
+        keyOffsets[sorted.length] = offset;
+
+        long[] itemIds = new long[items.size()];
+        String[] itemNames = new String[items.size()];
+        long[] itemScores = new long[items.size()];
+        for (int i = 0; i < items.size(); i++) {
+            itemIds[i] = items.get(i).id();
+            itemNames[i] = items.get(i).name();
+            itemScores[i] = items.get(i).score();
+        }
+        return new PrefixIndex(keyChars, keyOffsets, entryItems, itemIds, itemNames, itemScores);
+    }
+
+    /**
+     * Keys of a name: its normalized form from the start of each word.
+     */
+    static List<String> keys(String name) {
+        String normalized = normalize(name);
+        List<String> keys = new ArrayList<String>();
+        int start = 0;
+        while (start < normalized.length()) {
+            keys.add(normalized.substring(start, Math.min(normalized.length(), start + MAX_KEY_LENGTH)));
+            int space = normalized.indexOf(' ', start);
+            if (space < 0) {
+                break;
+            }
+            start = space + 1;
+        }
+        return keys;
+    }
+
+    /**
+     * Lower case without accents, words separated by a single space.
+     */
+    static String normalize(String text) {
+        // Most names are ASCII, spared the decomposition and the regular expressions
+        StringBuilder ascii = new StringBuilder(text.length());
+        boolean separator = true;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                ascii = null;
+                break;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                ascii.append(Character.toLowerCase(c));
+                separator = false;
+            } else if (!separator) {
+                ascii.append(' ');
+                separator = true;
+            }
+        }
+        if (ascii != null) {
+            return ascii.toString().strip();
+        }
+
+        String stripped = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        return SEPARATORS.matcher(stripped.toLowerCase(Locale.ROOT)).replaceAll(" ").strip();
+    }
+
+    long estimatedBytes() {
+        long names = 0;
+        for (String name : itemNames) {
+            // Header of the string and of its latin-1 array
+            names += 40 + name.length();
+        }
+        return (long) keyChars.length * Character.BYTES
+                + (long) (keyOffsets.length + entryItems.length + tree.length) * Integer.BYTES
+                + (long) (itemIds.length + itemScores.length) * Long.BYTES
+                + (long) itemNames.length * 4
+                + names;
+    }
+
+    int entries() {
+        return entryItems.length;
+    }
+
+    /**
+     * Items of the index, except the skipped ids.
+     */
+    List<Suggestion> items(LongPredicate skip) {
+        List<Suggestion> items = new ArrayList<Suggestion>(itemIds.length);
+        for (int i = 0; i < itemIds.length; i++) {
+            if (!skip.test(itemIds[i])) {
+                items.add(new Suggestion(itemIds[i], itemNames[i], itemScores[i]));
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Best scored items with a word starting with the normalized prefix, except the skipped ids.
+     */
+    List<Suggestion> top(String prefix, int limit, LongPredicate skip) {
+        List<Suggestion> top = new ArrayList<Suggestion>(limit);
+        int from = lowerBound(prefix);
+        int to = lowerBound(prefix + Character.MAX_VALUE);
+        if (from >= to) {
+            return top;
+        }
+
+        // Ranges of the prefix range still to look at, the range holding the best entry first
+        PriorityQueue<int[]> ranges = new PriorityQueue<int[]>((a, b) -> a[2] == better(a[2], b[2]) ? -1 : 1);
+        ranges.add(new int[] {from, to, best(from, to)});
+        Set<Integer> seen = new HashSet<Integer>();
+        while (!ranges.isEmpty() && top.size() < limit) {
+            int[] range = ranges.poll();
+            int entry = range[2];
+            int item = entryItems[entry];
+            // A name with several words starting with the prefix has several entries
+            if (!skip.test(itemIds[item]) && seen.add(item)) {
+                top.add(new Suggestion(itemIds[item], itemNames[item], itemScores[item]));
+            }
+            if (range[0] < entry) {
+                ranges.add(new int[] {range[0], entry, best(range[0], entry)});
+            }
+            if (entry + 1 < range[1]) {
+                ranges.add(new int[] {entry + 1, range[1], best(entry + 1, range[1])});
+            }
+        }
+        return top;
+    }
+
+    /**
+     * Best scored entry of [from, to), the first one of equal scores.
+     */
+    private int best(int from, int to) {
+        int size = entryItems.length;
+        int best = -1;
+        for (int left = from + size, right = to + size; left < right; left >>= 1, right >>= 1) {
+            if ((left & 1) == 1) {
+                best = better(best, tree[left++]);
+            }
+            if ((right & 1) == 1) {
+                best = better(best, tree[--right]);
+            }
+        }
+        return best;
+    }
+
+    private int better(int a, int b) {
+        if (a < 0) {
+            return b;
+        }
+        if (b < 0) {
+            return a;
+        }
+        long scoreA = itemScores[entryItems[a]];
+        long scoreB = itemScores[entryItems[b]];
+        if (scoreA != scoreB) {
+            return scoreA > scoreB ? a : b;
+        }
+        return Math.min(a, b);
+    }
+
+    private int compareKey(int entry, String value) {
+        int start = keyOffsets[entry];
+        int length = keyOffsets[entry + 1] - start;
+        int common = Math.min(length, value.length());
+        for (int i = 0; i < common; i++) {
+            int difference = keyChars[start + i] - value.charAt(i);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length - value.length();
+    }
+
+    /**
+     * First entry whose key is not less than the value.
+     */
+    private int lowerBound(String value) {
+        int low = 0;
+        int high = entryItems.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compareKey(middle, value) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private record Key(String key, int item) {
+    }
+}
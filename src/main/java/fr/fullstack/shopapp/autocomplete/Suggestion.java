@@ -0,0 +1,8 @@
+package fr.fullstack.shopapp.autocomplete;
+
+/**
+ * A shop or product name matching a prefix. The score ranks the suggestions: the number of
+ * products of the shop, or of the shop of the product.
+ */
+public record Suggestion(long id, String name, long score) {
+}
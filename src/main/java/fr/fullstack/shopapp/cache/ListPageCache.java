@@ -0,0 +1,330 @@
+package fr.fullstack.shopapp.cache;
+
+import fr.fullstack.shopapp.dto.PageResponse;
+import fr.fullstack.shopapp.model.Category;
+import fr.fullstack.shopapp.model.Product;
+import fr.fullstack.shopapp.model.Shop;
+import fr.fullstack.shopapp.readmodel.CatalogReadModel;
+import fr.fullstack.shopapp.service.CatalogChangedEvent;
+import fr.fullstack.shopapp.service.CatalogChangesMissedEvent;
+import fr.fullstack.shopapp.service.ProductsChangedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serialized pages of the shop and product lists, keyed by their normalized parameters. Each page
+ * is tagged with the entities it shows and with the filters it depends on, and the committed
+ * writes evict the pages of the tags they can change; the TTL bounds what the tags miss (the
+ * product count of the shop a product moved from, the totals). A page loaded while a write
+ * committed is not kept, since it may have been read before the write. Pages served by the read
+ * model are not cached: they are already in memory, and the model applies the writes after they
+ * commit, later than the evictions.
+ */
+@Component
+public class ListPageCache {
+    public static final String PRODUCTS = "products";
+
+    public static final String SHOPS = "shops";
+
+    // Product pages without a shop filter
+    public static final String TAG_ALL_SHOPS_PRODUCTS = "products:all-shops";
+
+    // Product pages filtered by category
+    public static final String TAG_CATEGORY_PRODUCTS = "products:by-category";
+
+    // Shop pages sorted by number of products
+    public static final String TAG_NB_PRODUCTS_SHOPS = "shops:by-nb-products";
+
+    // Product pages sorted on the product fields
+    public static final String TAG_SORTED_PRODUCTS = "products:sorted";
+
+    // Shop pages with a sort or a filter on the shop fields
+    public static final String TAG_SORTED_SHOPS = "shops:sorted-or-filtered";
+
+    private final CatalogReadModel catalogReadModel;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    private final boolean enabled;
+
+    private final Map<String, Set<String>> keysByTag = new HashMap<String, Set<String>>();
+
+    private final int maxEntries;
+
+    private final Map<String, FamilyMeters> meters = new HashMap<String, FamilyMeters>();
+
+    private final ResponseSerializer serializer;
+
+    private final Duration ttl;
+
+    private final AtomicLong writes = new AtomicLong();
+
+    public ListPageCache(
+            CatalogReadModel catalogReadModel,
+            MeterRegistry registry,
+            ResponseSerializer serializer,
+            @Value("${shopapp.list-cache.enabled:true}") boolean enabled,
+            @Value("${shopapp.list-cache.max-entries:1000}") int maxEntries,
+            @Value("${shopapp.list-cache.ttl:60s}") Duration ttl
+    ) {
+        this.catalogReadModel = catalogReadModel;
+        this.serializer = serializer;
+        this.enabled = enabled;
+        this.maxEntries = maxEntries;
+        this.ttl = ttl;
+        for (String family : List.of(PRODUCTS, SHOPS)) {
+            meters.put(family, new FamilyMeters(registry, family));
+        }
+        Gauge.builder("shopapp.list-cache.entries", this, ListPageCache::size).register(registry);
+    }
+
+    public static String productsOfShop(long shopId) {
+        return "products:shop=" + shopId;
+    }
+
+    /**
+     * Returns the cached page of the filters, or loads, serializes and caches it. The filters must
+     * be written the same way for the same results, absent parameters left out.
+     */
+    public byte[] load(
+            String family,
+            String filters,
+            Set<String> tags,
+            Pageable pageable,
+            MediaType mediaType,
+            Callable<PageResponse<?>> loader
+    ) throws Exception {
+        if (!enabled || catalogReadModel.canServe(pageable)) {
+            return serializer.write(loader.call(), mediaType);
+        }
+
+        String fullKey = family + ":" + filters
+                + ":page=" + pageable.getPageNumber()
+                + ":size=" + pageable.getPageSize()
+                + ":sort=" + pageable.getSort()
+                + ":" + mediaType;
+        FamilyMeters familyMeters = meters.get(family);
+        synchronized (this) {
+            Entry entry = entries.get(fullKey);
+            if (entry != null && System.nanoTime() - entry.loadedAt < ttl.toNanos()) {
+                familyMeters.hits.increment();
+                return entry.body;
+            }
+            if (entry != null) {
+                remove(fullKey);
+                familyMeters.expired.increment();
+            }
+        }
+        familyMeters.misses.increment();
+
+        long writesBefore = writes.get();
+        PageResponse<?> page = loader.call();
+        byte[] body = serializer.write(page, mediaType);
+
+        Set<String> allTags = new HashSet<String>(tags);
+        allTags.add(family);
+        for (Object item : page.getContent()) {
+            addItemTags(item, allTags);
+        }
+        synchronized (this) {
+            if (writes.get() == writesBefore) {
+                put(fullKey, new Entry(family, body, allTags, System.nanoTime()));
+            }
+        }
+        return body;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCatalogChanged(CatalogChangedEvent event) {
+        if (!enabled) {
+            return;
+        }
+
+        List<String> tags = new ArrayList<String>();
+        long id = event.entityId();
+        switch (event.entityType()) {
+            case CATEGORY:
+                tags.add("category:" + id);
+                break;
+            case PRODUCT:
+                tags.add("product:" + id);
+                if (event.shopId() != null) {
+                    tags.add(productsOfShop(event.shopId()));
+                }
+                switch (event.operation()) {
+                    case UPDATED:
+                        // The categories and the sorted fields of the product may have changed
+                        tags.add(TAG_CATEGORY_PRODUCTS);
+                        tags.add(TAG_SORTED_PRODUCTS);
+                        break;
+                    default:
+                        // The product count of the shop changed, and the pages after the product moved
+                        tags.add(TAG_ALL_SHOPS_PRODUCTS);
+                        tags.add(TAG_NB_PRODUCTS_SHOPS);
+                        if (event.shopId() != null) {
+                            tags.add("shop:" + event.shopId());
+                        }
+                }
+                break;
+            case SHOP:
+                tags.add("shop:" + id);
+                switch (event.operation()) {
+                    case UPDATED:
+                        tags.add(TAG_SORTED_SHOPS);
+                        break;
+                    default:
+                        // Every shop page may move, and a deleted shop hides its products
+                        tags.add(SHOPS);
+                        tags.add(TAG_ALL_SHOPS_PRODUCTS);
+                }
+                break;
+        }
+        evict(tags);
+    }
+
+    @EventListener
+    public void onChangesMissed(CatalogChangesMissedEvent event) {
+        synchronized (this) {
+            writes.incrementAndGet();
+            for (Entry entry : entries.values()) {
+                meters.get(entry.family).invalidated.increment();
+            }
+            entries.clear();
+            keysByTag.clear();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductsChanged(ProductsChangedEvent event) {
+        if (!enabled) {
+            return;
+        }
+
+        // Bulk writes change prices or categories, or detach the products of a deleted shop, whose
+        // pages were evicted with the shop
+        List<String> tags = new ArrayList<String>(event.productIds().length + 2);
+        for (long id : event.productIds()) {
+            tags.add("product:" + id);
+        }
+        tags.add(TAG_CATEGORY_PRODUCTS);
+        tags.add(TAG_SORTED_PRODUCTS);
+        evict(tags);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void addItemTags(Object item, Set<String> tags) {
+        if (item instanceof Shop shop) {
+            tags.add("shop:" + shop.getId());
+        } else if (item instanceof Product product) {
+            tags.add("product:" + product.getId());
+            if (product.getShop() != null) {
+                // Products show their shop, and its product count
+                tags.add("shop:" + product.getShop().getId());
+            }
+            for (Category category : product.getCategories()) {
+                tags.add("category:" + category.getId());
+            }
+        }
+    }
+
+    private void evict(List<String> tags) {
+        synchronized (this) {
+            writes.incrementAndGet();
+            for (String tag : tags) {
+                Set<String> keys = keysByTag.remove(tag);
+                if (keys == null) {
+                    continue;
+                }
+                for (String key : keys) {
+                    Entry entry = remove(key);
+                    if (entry != null) {
+                        meters.get(entry.family).invalidated.increment();
+                    }
+                }
+            }
+        }
+    }
+
+    // Called holding the lock
+    private void put(String key, Entry entry) {
+        remove(key);
+        entries.put(key, entry);
+        for (String tag : entry.tags) {
+            keysByTag.computeIfAbsent(tag, t -> new HashSet<String>()).add(key);
+        }
+        // The least recently read pages go first
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (entries.size() > maxEntries && eldest.hasNext()) {
+            Map.Entry<String, Entry> evicted = eldest.next();
+            eldest.remove();
+            unlink(evicted.getKey(), evicted.getValue());
+            meters.get(evicted.getValue().family).evicted.increment();
+        }
+    }
+
+    // Called holding the lock
+    private Entry remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            unlink(key, entry);
+        }
+        return entry;
+    }
+
+    private void unlink(String key, Entry entry) {
+        for (String tag : entry.tags) {
+            Set<String> keys = keysByTag.get(tag);
+            if (keys != null) {
+                keys.remove(key);
+                if (keys.isEmpty()) {
+                    keysByTag.remove(tag);
+                }
+            }
+        }
+    }
+
+    private record Entry(String family, byte[] body, Set<String> tags, long loadedAt) {
+    }
+
+    private static class FamilyMeters {
+        private final Counter evicted;
+
+        private final Counter expired;
+
+        private final Counter hits;
+
+        private final Counter invalidated;
+
+        private final Counter misses;
+
+        FamilyMeters(MeterRegistry registry, String family) {
+            hits = registry.counter("shopapp.list-cache.requests", "family", family, "result", "hit");
+            misses = registry.counter("shopapp.list-cache.requests", "family", family, "result", "miss");
+            evicted = registry.counter("shopapp.list-cache.removals", "family", family, "cause", "capacity");
+            expired = registry.counter("shopapp.list-cache.removals", "family", family, "cause", "ttl");
+            invalidated = registry.counter("shopapp.list-cache.removals", "family", family, "cause", "write");
+        }
+    }
+}
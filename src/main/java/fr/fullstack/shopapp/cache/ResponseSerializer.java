@@ -0,0 +1,60 @@
+package fr.fullstack.shopapp.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import fr.fullstack.shopapp.util.MediaTypes;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
+import org.springframework.web.accept.ContentNegotiationManager;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serializes responses to bytes ahead of the message converters, so that the bytes can be
+ * shared between requests. Uses the same content negotiation as Spring MVC, and mappers built from
+ * the Jackson2ObjectMapperBuilder of Spring Boot (spring.jackson.* and the registered modules), like
+ * the message converters (see ContentNegotiationConfig).
+ */
+@Component
+public class ResponseSerializer {
+    private final Map<MediaType, ObjectMapper> mappers = new LinkedHashMap<>();
+
+    @Autowired
+    @Qualifier("mvcContentNegotiationManager")
+    private ContentNegotiationManager contentNegotiationManager;
+
+    // A new builder for each mapper: the builder bean is a prototype, and factory() changes it
+    public ResponseSerializer(ObjectProvider<Jackson2ObjectMapperBuilder> builders) {
+        // JSON first: it is picked for */* and missing Accept headers
+        mappers.put(MediaType.APPLICATION_JSON, builders.getObject().build());
+        mappers.put(MediaType.APPLICATION_CBOR, builders.getObject().factory(new CBORFactory()).build());
+        mappers.put(MediaTypes.APPLICATION_SMILE, builders.getObject().factory(new SmileFactory()).build());
+    }
+
+    public MediaType negotiate(HttpServletRequest request) throws HttpMediaTypeNotAcceptableException {
+        List<MediaType> requested = contentNegotiationManager.resolveMediaTypes(new ServletWebRequest(request));
+        for (MediaType type : requested) {
+            for (MediaType supported : mappers.keySet()) {
+                if (type.isCompatibleWith(supported)) {
+                    return supported;
+                }
+            }
+        }
+        throw new HttpMediaTypeNotAcceptableException(List.copyOf(mappers.keySet()));
+    }
+
+    public byte[] write(Object value, MediaType mediaType) throws IOException {
+        return mappers.get(mediaType).writeValueAsBytes(value);
+    }
+}
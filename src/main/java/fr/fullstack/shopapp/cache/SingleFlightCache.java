@@ -0,0 +1,96 @@
+package fr.fullstack.shopapp.cache;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces concurrent loads of the same key: the first caller runs the loader, the others
+ * wait for its result instead of hitting the database again. Results can optionally be kept
+ * for a short TTL (shopapp.single-flight.ttl, disabled by default). A result loaded while a
+ * write evicted keys is not kept, since it may have been read before the write.
+ */
+@Component
+public class SingleFlightCache {
+    private static final int MAX_ENTRIES = 10000;
+
+    private final Map<String, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<>();
+
+    private final Map<String, CachedBytes> recent = new ConcurrentHashMap<>();
+
+    private final Duration ttl;
+
+    private final AtomicLong writes = new AtomicLong();
+
+    public SingleFlightCache(@Value("${shopapp.single-flight.ttl:0ms}") Duration ttl) {
+        this.ttl = ttl;
+    }
+
+    public void evict(String keyPrefix) {
+        synchronized (this) {
+            writes.incrementAndGet();
+            recent.keySet().removeIf(key -> key.startsWith(keyPrefix));
+        }
+        // The next callers load again instead of waiting for a result read before the write
+        inFlight.keySet().removeIf(key -> key.startsWith(keyPrefix));
+    }
+
+    public byte[] load(String key, Callable<byte[]> loader) throws Exception {
+        if (!ttl.isZero()) {
+            CachedBytes cached = recent.get(key);
+            if (cached != null && System.nanoTime() - cached.loadedAt < ttl.toNanos()) {
+                return cached.value;
+            }
+        }
+
+        CompletableFuture<byte[]> created = new CompletableFuture<>();
+        CompletableFuture<byte[]> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            return await(existing);
+        }
+
+        try {
+            long writesBefore = writes.get();
+            byte[] value = loader.call();
+            if (!ttl.isZero()) {
+                synchronized (this) {
+                    if (writes.get() == writesBefore) {
+                        if (recent.size() >= MAX_ENTRIES) {
+                            recent.clear();
+                        }
+                        recent.put(key, new CachedBytes(value, System.nanoTime()));
+                    }
+                }
+            }
+            created.complete(value);
+            return value;
+        } catch (Exception e) {
+            created.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, created);
+        }
+    }
+
+    private byte[] await(CompletableFuture<byte[]> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            // Followers see the same failure as the leader, e.g. a missing id
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private record CachedBytes(byte[] value, long loadedAt) {
+    }
+}
@@ -0,0 +1,58 @@
+package fr.fullstack.shopapp.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UrlPathHelper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Only lets the requests carrying the admin token in the X-Admin-Token header reach the admin
+ * endpoints, which expose the recordings, the SQL and the traces. Without a configured token they
+ * are all rejected.
+ */
+@Component
+public class AdminTokenFilter extends OncePerRequestFilter {
+    public static final String HEADER = "X-Admin-Token";
+
+    private static final String PATH = "/api/v1/admin";
+
+    private final byte[] token;
+
+    // Decoded, without the ;parameters the handler mappings ignore
+    private final UrlPathHelper urlPathHelper = new UrlPathHelper();
+
+    public AdminTokenFilter(@Value("${shopapp.admin.token:}") String token) {
+        this.token = token.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (token.length == 0) {
+            response.sendError(HttpStatus.FORBIDDEN.value(), "The admin endpoints are disabled");
+            return;
+        }
+        String header = request.getHeader(HEADER);
+        // Compared in constant time
+        if (header == null || !MessageDigest.isEqual(token, header.getBytes(StandardCharsets.UTF_8))) {
+            response.sendError(HttpStatus.UNAUTHORIZED.value());
+            return;
+        }
+        chain.doFilter(request, response);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = urlPathHelper.getPathWithinApplication(request);
+        return !path.equals(PATH) && !path.startsWith(PATH + "/");
+    }
+}
@@ -0,0 +1,60 @@
+package fr.fullstack.shopapp.config;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import fr.fullstack.shopapp.util.MediaTypes;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.ContentNegotiationConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+/**
+ * Lets clients pick a compact binary encoding, either with the Accept header
+ * (application/cbor, application/x-jackson-smile) or with the format query parameter.
+ * The CBOR and Smile message converters are registered by Spring MVC as soon as the
+ * matching Jackson data formats are on the classpath; JSON stays the default. With @EnableWebMvc
+ * their mappers ignore the Jackson settings of Spring Boot, so they are replaced by mappers built
+ * from its Jackson2ObjectMapperBuilder, the same as the ones of ResponseSerializer.
+ */
+@Configuration
+public class ContentNegotiationConfig implements WebMvcConfigurer {
+    private final ObjectProvider<Jackson2ObjectMapperBuilder> builders;
+
+    public ContentNegotiationConfig(ObjectProvider<Jackson2ObjectMapperBuilder> builders) {
+        this.builders = builders;
+    }
+
+    @Override
+    public void configureContentNegotiation(ContentNegotiationConfigurer configurer) {
+        configurer
+                .favorParameter(true)
+                .parameterName("format")
+                .defaultContentType(MediaType.APPLICATION_JSON)
+                .mediaType("json", MediaType.APPLICATION_JSON)
+                .mediaType("ndjson", MediaType.APPLICATION_NDJSON)
+                .mediaType("cbor", MediaType.APPLICATION_CBOR)
+                .mediaType("smile", MediaTypes.APPLICATION_SMILE);
+    }
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        // A new builder for each mapper: the builder bean is a prototype, and factory() changes it
+        for (HttpMessageConverter<?> converter : converters) {
+            if (converter instanceof MappingJackson2CborHttpMessageConverter cbor) {
+                cbor.setObjectMapper(builders.getObject().factory(new CBORFactory()).build());
+            } else if (converter instanceof MappingJackson2SmileHttpMessageConverter smile) {
+                smile.setObjectMapper(builders.getObject().factory(new SmileFactory()).build());
+            } else if (converter instanceof MappingJackson2HttpMessageConverter json) {
+                json.setObjectMapper(builders.getObject().build());
+            }
+        }
+    }
+}
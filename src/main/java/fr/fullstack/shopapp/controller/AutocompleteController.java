@@ -0,0 +1,86 @@
+package fr.fullstack.shopapp.controller;
+
+import fr.fullstack.shopapp.autocomplete.AutocompleteService;
+import fr.fullstack.shopapp.autocomplete.Suggestion;
+import fr.fullstack.shopapp.model.Locale;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+import java.util.Optional;
+
+@RestController
+@RequestMapping("/api/v1/autocomplete")
+@Tag(name = "Autocomplete", description = "Search-as-you-type on shop and product names")
+public class AutocompleteController {
+    @Value("${shopapp.autocomplete.max-limit:50}")
+    private int maxLimit;
+
+    @Autowired
+    private AutocompleteService service;
+
+    @Operation(
+            summary = "Suggest products",
+            description = "Products with a word of their name in the locale starting with the prefix, "
+                    + "products of the largest shops first"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Suggestions"),
+            @ApiResponse(responseCode = "400", description = "Unknown locale or invalid limit"),
+            @ApiResponse(responseCode = "503", description = "Index still loading")
+    })
+    @GetMapping("/products")
+    public ResponseEntity<List<Suggestion>> suggestProducts(
+            @Parameter(description = "Start of a word of the name") @RequestParam String prefix,
+            @Parameter(description = "Locale of the names, FR or EN") @RequestParam(defaultValue = "FR") String locale,
+            @Parameter(description = "Number of suggestions") @RequestParam(defaultValue = "10") int limit) {
+        checkLimit(limit);
+        Locale productLocale;
+        try {
+            productLocale = Locale.valueOf(locale);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Locale must be FR or EN");
+        }
+        return ResponseEntity.ok(loaded(service.suggestProducts(prefix, productLocale, limit)));
+    }
+
+    @Operation(
+            summary = "Suggest shops",
+            description = "Shops with a word of their name starting with the prefix, the largest shops first"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Suggestions"),
+            @ApiResponse(responseCode = "400", description = "Invalid limit"),
+            @ApiResponse(responseCode = "503", description = "Index still loading")
+    })
+    @GetMapping("/shops")
+    public ResponseEntity<List<Suggestion>> suggestShops(
+            @Parameter(description = "Start of a word of the name") @RequestParam String prefix,
+            @Parameter(description = "Number of suggestions") @RequestParam(defaultValue = "10") int limit) {
+        checkLimit(limit);
+        return ResponseEntity.ok(loaded(service.suggestShops(prefix, limit)));
+    }
+
+    private void checkLimit(int limit) {
+        if (limit < 1 || limit > maxLimit) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Limit must be between 1 and " + maxLimit);
+        }
+    }
+
+    private List<Suggestion> loaded(Optional<List<Suggestion>> suggestions) {
+        return suggestions.orElseThrow(() -> new ResponseStatusException(
+                HttpStatus.SERVICE_UNAVAILABLE, "The autocomplete index is loading"));
+    }
+}
@@ -0,0 +1,53 @@
+package fr.fullstack.shopapp.controller;
+
+import fr.fullstack.shopapp.dto.BatchRequest;
+import fr.fullstack.shopapp.dto.BatchResponse;
+import fr.fullstack.shopapp.service.BatchService;
+import fr.fullstack.shopapp.util.ErrorValidation;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.Errors;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+@RestController
+@RequestMapping("/api/v1/batch")
+@Tag(name = "Batch", description = "API for running many operations in one request")
+public class BatchController {
+
+    @Autowired
+    private BatchService service;
+
+    @Operation(
+            summary = "Run a batch of operations",
+            description = "Run creations, updates and deletions of shops, products and categories in order. "
+                    + "An operation can reference the entity of an earlier one with {\"$ref\": \"name\"}. "
+                    + "Atomic batches (the default) run in one transaction and stop at the first failure."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Batch run, see the status of each operation",
+                    content = {@Content(mediaType = "application/json",
+                            schema = @Schema(implementation = BatchResponse.class))}),
+            @ApiResponse(responseCode = "400", description = "Invalid batch")
+    })
+    @PostMapping
+    public ResponseEntity<BatchResponse> runBatch(@Valid @RequestBody BatchRequest request, Errors errors) {
+        if (errors.hasErrors()) {
+            throw new ResponseStatusException(
+                    HttpStatus.BAD_REQUEST, ErrorValidation.getErrorValidationMessage(errors));
+        }
+
+        return ResponseEntity.ok(service.execute(request));
+    }
+}
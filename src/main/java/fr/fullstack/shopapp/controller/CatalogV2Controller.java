@@ -0,0 +1,99 @@
+package fr.fullstack.shopapp.controller;
+
+import fr.fullstack.shopapp.exception.ResourceNotFoundException;
+import fr.fullstack.shopapp.model.Category;
+import fr.fullstack.shopapp.model.Product;
+import fr.fullstack.shopapp.model.Shop;
+import fr.fullstack.shopapp.reactive.ReactiveCatalogRepository;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springdoc.core.annotations.ParameterObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Optional;
+
+/**
+ * Read-only v2 of the catalog endpoints, on the non-blocking driver: no request thread waits for the
+ * database. Lists are streamed with application/x-ndjson, the next rows being read as the client
+ * consumes the previous ones; with application/json they are collected into an array.
+ */
+@RestController
+@RequestMapping(
+        value = "/api/v2",
+        produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE}
+)
+@Tag(name = "Catalog v2", description = "Non-blocking read APIs for shops, products and categories")
+public class CatalogV2Controller {
+
+    @Autowired
+    private ReactiveCatalogRepository repository;
+
+    @Operation(summary = "Get categories", description = "Stream categories, ordered by id")
+    @GetMapping("/categories")
+    public Flux<Category> getCategories(@ParameterObject Pageable pageable) {
+        return repository.findCategories(pageable);
+    }
+
+    @Operation(summary = "Get a category by id", description = "Retrieve a category by id")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Category found"),
+            @ApiResponse(responseCode = "404", description = "Category not found")
+    })
+    @GetMapping("/categories/{id}")
+    public Mono<Category> getCategoryById(@PathVariable long id) {
+        return repository.findCategory(id)
+                .switchIfEmpty(Mono.error(
+                        () -> new ResourceNotFoundException("Category with id " + id + " not found")));
+    }
+
+    @Operation(summary = "Get a product by id", description = "Retrieve a product by id")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Product found"),
+            @ApiResponse(responseCode = "404", description = "Product not found")
+    })
+    @GetMapping("/products/{id}")
+    public Mono<Product> getProductById(@PathVariable long id) {
+        return repository.findProduct(id)
+                .switchIfEmpty(Mono.error(
+                        () -> new ResourceNotFoundException("Product with id " + id + " not found")));
+    }
+
+    @Operation(summary = "Get products", description = "Stream products, of a shop and/or a category, ordered by id")
+    @GetMapping("/products")
+    public Flux<Product> getProducts(
+            @ParameterObject Pageable pageable,
+            @Parameter(description = "Id of the shop") @RequestParam(required = false) Optional<Long> shopId,
+            @Parameter(description = "Id of the category") @RequestParam(required = false) Optional<Long> categoryId) {
+        return repository.findProducts(shopId.orElse(null), categoryId.orElse(null), pageable);
+    }
+
+    @Operation(summary = "Get a shop by id", description = "Retrieve a shop by id")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Shop found"),
+            @ApiResponse(responseCode = "404", description = "Shop not found")
+    })
+    @GetMapping("/shops/{id}")
+    public Mono<Shop> getShopById(@PathVariable long id) {
+        return repository.findShop(id)
+                .switchIfEmpty(Mono.error(
+                        () -> new ResourceNotFoundException("Shop with id " + id + " not found")));
+    }
+
+    @Operation(summary = "Get shops", description = "Stream shops, ordered by id")
+    @GetMapping("/shops")
+    public Flux<Shop> getShops(@ParameterObject Pageable pageable) {
+        return repository.findShops(pageable);
+    }
+}
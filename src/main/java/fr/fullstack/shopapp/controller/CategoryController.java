@@ -1,9 +1,14 @@
 package fr.fullstack.shopapp.controller;
 
+import fr.fullstack.shopapp.dto.CategoryAssignmentResult;
+import fr.fullstack.shopapp.dto.PageResponse;
+import fr.fullstack.shopapp.dto.ProductSelection;
 import fr.fullstack.shopapp.model.Category;
+import fr.fullstack.shopapp.service.CategoryAssignmentService;
 import fr.fullstack.shopapp.service.CategoryService;
 import fr.fullstack.shopapp.util.ErrorValidation;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -12,7 +17,6 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import org.springdoc.core.annotations.ParameterObject;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -24,6 +28,7 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
 
@@ -32,9 +37,35 @@ import org.springframework.web.server.ResponseStatusException;
 @Tag(name = "Category Management", description = "APIs for managing categories")
 public class CategoryController {
 
+    @Autowired
+    private CategoryAssignmentService assignmentService;
+
     @Autowired
     private CategoryService service;
 
+    @Operation(
+            summary = "Attach a category to products",
+            description = "Attach a category to the listed products, or to the products of a shop matching the "
+                    + "filters. Products already in the category are left as they are."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Category attached",
+                    content = {@Content(mediaType = "application/json",
+                            schema = @Schema(implementation = CategoryAssignmentResult.class))}),
+            @ApiResponse(responseCode = "400", description = "Invalid selection"),
+            @ApiResponse(responseCode = "404", description = "Category or shop not found")
+    })
+    @PostMapping("/{id}/products/attach")
+    public ResponseEntity<CategoryAssignmentResult> attachProducts(
+            @PathVariable long id, @Valid @RequestBody ProductSelection selection, Errors errors) {
+        if (errors.hasErrors()) {
+            throw new ResponseStatusException(
+                    HttpStatus.BAD_REQUEST, ErrorValidation.getErrorValidationMessage(errors));
+        }
+
+        return ResponseEntity.ok(assignmentService.attach(id, selection));
+    }
+
     @Operation(summary = "Create a category", description = "Create a new category")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Category created successfully",
@@ -43,7 +74,7 @@ public class CategoryController {
             @ApiResponse(responseCode = "400", description = "Invalid input")
     })
     @PostMapping
-    public ResponseEntity<Category> createCategory(@Valid @RequestBody Category category, Errors errors) throws Exception {
+    public ResponseEntity<Category> createCategory(@Valid @RequestBody Category category, Errors errors) {
         if (errors.hasErrors()) {
             throw new ResponseStatusException(
                     HttpStatus.BAD_REQUEST, ErrorValidation.getErrorValidationMessage(errors));
@@ -55,24 +86,49 @@ public class CategoryController {
     @Operation(summary = "Delete a category by id", description = "Delete a category")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "204", description = "Category deleted successfully"),
-            @ApiResponse(responseCode = "400", description = "Invalid id")
+            @ApiResponse(responseCode = "404", description = "Category not found")
     })
     @DeleteMapping("/{id}")
-    public HttpStatus deleteCategory(@PathVariable long id) throws Exception {
+    public HttpStatus deleteCategory(@PathVariable long id) {
             service.deleteCategoryById(id);
             return HttpStatus.NO_CONTENT;
     }
 
+    @Operation(
+            summary = "Detach a category from products",
+            description = "Detach a category from the listed products, or from the products of a shop matching "
+                    + "the filters."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Category detached",
+                    content = {@Content(mediaType = "application/json",
+                            schema = @Schema(implementation = CategoryAssignmentResult.class))}),
+            @ApiResponse(responseCode = "400", description = "Invalid selection"),
+            @ApiResponse(responseCode = "404", description = "Category or shop not found")
+    })
+    @PostMapping("/{id}/products/detach")
+    public ResponseEntity<CategoryAssignmentResult> detachProducts(
+            @PathVariable long id, @Valid @RequestBody ProductSelection selection, Errors errors) {
+        if (errors.hasErrors()) {
+            throw new ResponseStatusException(
+                    HttpStatus.BAD_REQUEST, ErrorValidation.getErrorValidationMessage(errors));
+        }
+
+        return ResponseEntity.ok(assignmentService.detach(id, selection));
+    }
+
     @Operation(summary = "Get categories", description = "Get categories with pagination")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Categories retrieved successfully",
                     content = {@Content(mediaType = "application/json",
-                            schema = @Schema(implementation = Page.class))})
+                            schema = @Schema(implementation = PageResponse.class))})
     })
     @GetMapping
-    public ResponseEntity<Page<Category>> getAllCategories(
-            @ParameterObject Pageable pageable) {
-        return ResponseEntity.ok(service.getCategoryList(pageable));
+    public ResponseEntity<PageResponse<Category>> getAllCategories(
+            @ParameterObject Pageable pageable,
+            @Parameter(description = "Include the total number of categories")
+            @RequestParam(defaultValue = "true") boolean withTotal) {
+        return ResponseEntity.ok(service.getCategoryList(withTotal, pageable));
     }
 
     @Operation(summary = "Get a category by id", description = "Retrieve a category by id")
@@ -83,7 +139,7 @@ public class CategoryController {
             @ApiResponse(responseCode = "404", description = "Category not found")
     })
     @GetMapping("/{id}")
-    public ResponseEntity<Category> getCategoryById(@PathVariable long id) throws Exception {
+    public ResponseEntity<Category> getCategoryById(@PathVariable long id) {
         return ResponseEntity.ok().body(service.getCategoryById(id));
     }
 
@@ -95,7 +151,7 @@ public class CategoryController {
             @ApiResponse(responseCode = "400", description = "Invalid input")
     })
     @PutMapping
-    public ResponseEntity<Category> updateCategory(@Valid @RequestBody Category category, Errors errors) throws Exception {
+    public ResponseEntity<Category> updateCategory(@Valid @RequestBody Category category, Errors errors) {
         if (errors.hasErrors()) {
             throw new ResponseStatusException(
                     HttpStatus.BAD_REQUEST, ErrorValidation.getErrorValidationMessage(errors));
@@ -0,0 +1,37 @@
+package fr.fullstack.shopapp.controller;
+
+import fr.fullstack.shopapp.service.ChangeFeedService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Optional;
+
+@RestController
+@RequestMapping("/api/v1/changes")
+@Tag(name = "Change Feed", description = "Server-Sent Events feed of shop, product and category changes")
+public class ChangeFeedController {
+    @Autowired
+    private ChangeFeedService service;
+
+    @Operation(
+            summary = "Subscribe to changes",
+            description = "Stream changes as Server-Sent Events, optionally only those of one shop. "
+                    + "Reconnecting with the Last-Event-ID header resumes after the last received event"
+    )
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribe(
+            @Parameter(description = "Id of the shop") @RequestParam Optional<Long> shopId,
+            @Parameter(description = "Id of the last received event")
+            @RequestHeader("Last-Event-ID") Optional<Long> lastEventId) {
+        return service.subscribe(shopId, lastEventId);
+    }
+}
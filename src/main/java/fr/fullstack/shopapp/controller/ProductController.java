@@ -1,6 +1,18 @@
 package fr.fullstack.shopapp.controller;
 
+import fr.fullstack.shopapp.cache.ListPageCache;
+import fr.fullstack.shopapp.cache.ResponseSerializer;
+import fr.fullstack.shopapp.cache.SingleFlightCache;
+import fr.fullstack.shopapp.dto.MultiGetResponse;
+import fr.fullstack.shopapp.dto.PriceAdjustmentRequest;
+import fr.fullstack.shopapp.dto.SearchResponse;
+import fr.fullstack.shopapp.model.CategoryMatch;
+import fr.fullstack.shopapp.model.PriceAdjustment;
 import fr.fullstack.shopapp.model.Product;
+import fr.fullstack.shopapp.projection.FieldSet;
+import fr.fullstack.shopapp.projection.ProductProjection;
+import fr.fullstack.shopapp.service.PriceAdjustmentService;
+import fr.fullstack.shopapp.service.ProductSearchService;
 import fr.fullstack.shopapp.service.ProductService;
 import fr.fullstack.shopapp.util.ErrorValidation;
 import io.swagger.v3.oas.annotations.Operation;
@@ -10,12 +22,14 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import org.springdoc.core.annotations.ParameterObject;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.Errors;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -29,16 +43,60 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api/v1/products")
 @Tag(name = "Product Management", description = "APIs for managing products")
 public class ProductController {
 
+    @Autowired
+    private ListPageCache listPageCache;
+
+    @Value("${shopapp.multi-get.max-ids:100}")
+    private int maxIds;
+
+    @Autowired
+    private PriceAdjustmentService priceAdjustmentService;
+
+    @Autowired
+    private ProductSearchService productSearchService;
+
+    @Autowired
+    private ResponseSerializer serializer;
+
     @Autowired
     private ProductService service;
 
+    @Autowired
+    private SingleFlightCache singleFlightCache;
+
+    @Operation(
+            summary = "Adjust the price of many products",
+            description = "Add an amount or a percentage to the price of the products of a shop and/or a category, "
+                    + "optionally within a price range. With dryRun, only count the matching products."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Prices adjusted, or products counted",
+                    content = {@Content(mediaType = "application/json",
+                            schema = @Schema(implementation = PriceAdjustment.class))}),
+            @ApiResponse(responseCode = "400", description = "Invalid input"),
+            @ApiResponse(responseCode = "404", description = "Shop or category not found")
+    })
+    @PostMapping("/price-adjustments")
+    public ResponseEntity<PriceAdjustment> adjustPrices(
+            @Valid @RequestBody PriceAdjustmentRequest request, Errors errors) {
+        if (errors.hasErrors()) {
+            throw new ResponseStatusException(
+                    HttpStatus.BAD_REQUEST, ErrorValidation.getErrorValidationMessage(errors));
+        }
+
+        return ResponseEntity.ok(priceAdjustmentService.adjustPrices(request));
+    }
+
     @Operation(summary = "Create a product", description = "Create a new product")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Product created successfully",
@@ -47,7 +105,7 @@ public class ProductController {
             @ApiResponse(responseCode = "400", description = "Invalid input")
     })
     @PostMapping
-    public ResponseEntity<Product> createProduct(@Valid @RequestBody Product product, Errors errors) throws Exception {
+    public ResponseEntity<Product> createProduct(@Valid @RequestBody Product product, Errors errors) {
         if (errors.hasErrors()) {
             throw new ResponseStatusException(
                     HttpStatus.BAD_REQUEST, ErrorValidation.getErrorValidationMessage(errors));
@@ -58,37 +116,151 @@ public class ProductController {
 
     @Operation(summary = "Delete a product by id", description = "Delete a product")
     @DeleteMapping("/{id}")
-    public HttpStatus deleteProduct(@PathVariable long id) throws Exception {
+    public HttpStatus deleteProduct(@PathVariable long id) {
         service.deleteProductById(id);
+        singleFlightCache.evict("product:" + id + ":");
         return HttpStatus.NO_CONTENT;
     }
 
+    @Operation(summary = "Get a price adjustment", description = "Audit record of a bulk price change")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Price adjustment found",
+                    content = {@Content(mediaType = "application/json",
+                            schema = @Schema(implementation = PriceAdjustment.class))}),
+            @ApiResponse(responseCode = "404", description = "Price adjustment not found")
+    })
+    @GetMapping("/price-adjustments/{adjustmentId}")
+    public ResponseEntity<PriceAdjustment> getPriceAdjustment(@PathVariable long adjustmentId) {
+        return ResponseEntity.ok(priceAdjustmentService.getPriceAdjustment(adjustmentId));
+    }
+
+    @Operation(
+            summary = "Get products by ids",
+            description = "Get several products in one call, in the order of the ids, with the ids that were not found"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Products retrieved successfully",
+                    content = {@Content(mediaType = "application/json",
+                            schema = @Schema(implementation = MultiGetResponse.class))}),
+            @ApiResponse(responseCode = "400", description = "Too many ids")
+    })
+    @GetMapping(params = "ids")
+    public ResponseEntity<MultiGetResponse<Product>> getProductsByIds(
+            @Parameter(description = "Comma-separated ids of the products") @RequestParam List<Long> ids) {
+        if (ids.size() > maxIds) {
+            throw new ResponseStatusException(
+                    HttpStatus.BAD_REQUEST, "At most " + maxIds + " ids can be requested at once");
+        }
+
+        return ResponseEntity.ok(service.getProductsByIds(ids));
+    }
+
     @Operation(summary = "Get a product by id", description = "Get a product by id")
     @GetMapping("/{id}")
-    public ResponseEntity<Product> getProductById(@PathVariable long id) throws Exception {
-        return ResponseEntity.ok().body(service.getProductById(id));
+    public ResponseEntity<byte[]> getProductById(
+            @PathVariable long id,
+            @Parameter(description = "Comma-separated fields to return, e.g. id,price,shop.name")
+            @RequestParam Optional<String> fields,
+            HttpServletRequest request) throws Exception {
+        // Concurrent reads of the same product share one database load and one serialization
+        MediaType mediaType = serializer.negotiate(request);
+        if (fields.isPresent()) {
+            FieldSet fieldSet = ProductProjection.parse(fields.get());
+            byte[] body = singleFlightCache.load(
+                    "product:" + id + ":" + mediaType + ":" + fieldSet,
+                    () -> serializer.write(service.getProductFields(id, fieldSet), mediaType)
+            );
+            return ResponseEntity.ok().contentType(mediaType).body(body);
+        }
+
+        byte[] body = singleFlightCache.load(
+                "product:" + id + ":" + mediaType, () -> serializer.write(service.getProductById(id), mediaType)
+        );
+        return ResponseEntity.ok().contentType(mediaType).body(body);
     }
 
     @Operation(
             summary = "Get products",
-            description = "Get products with pagination, optionally filtered by shop/category"
+            description = "Get products with pagination, optionally filtered by shop and by categories"
     )
     @GetMapping
-    public ResponseEntity<Page<Product>> getProductsOfShop(
+    public ResponseEntity<?> getProductsOfShop(
             @ParameterObject Pageable pageable,
             @Parameter(description = "Id of the shop") @RequestParam Optional<Long> shopId,
-            @Parameter(description = "Id of the category") @RequestParam Optional<Long> categoryId) {
-        return ResponseEntity.ok(service.getShopProductList(shopId, categoryId, pageable));
+            @Parameter(description = "Comma-separated ids of the categories")
+            @RequestParam(defaultValue = "") List<Long> categoryId,
+            @Parameter(description = "Whether the products must be in all the categories or in any of them")
+            @RequestParam(defaultValue = "ANY") CategoryMatch categoryMatch,
+            @Parameter(description = "Include the total number of products")
+            @RequestParam(defaultValue = "true") boolean withTotal,
+            @Parameter(description = "Comma-separated fields to return, e.g. id,price,shop.name")
+            @RequestParam Optional<String> fields,
+            HttpServletRequest request) throws Exception {
+        if (fields.isPresent()) {
+            return ResponseEntity.ok(service.getShopProductFieldsList(
+                    shopId, categoryId, categoryMatch, withTotal, pageable, ProductProjection.parse(fields.get())
+            ));
+        }
+
+        // Same categories in any order and a single category with any match are the same filter
+        List<Long> categoryIds = categoryId.stream().distinct().sorted().toList();
+        String filters = "shopId=" + shopId.map(String::valueOf).orElse("")
+                + ",categoryIds=" + categoryIds
+                + ",categoryMatch=" + (categoryIds.size() > 1 ? categoryMatch : CategoryMatch.ANY)
+                + ",withTotal=" + withTotal;
+        Set<String> tags = new HashSet<String>();
+        tags.add(shopId.map(ListPageCache::productsOfShop).orElse(ListPageCache.TAG_ALL_SHOPS_PRODUCTS));
+        if (!categoryIds.isEmpty()) {
+            tags.add(ListPageCache.TAG_CATEGORY_PRODUCTS);
+        }
+        if (pageable.getSort().isSorted()) {
+            tags.add(ListPageCache.TAG_SORTED_PRODUCTS);
+        }
+
+        MediaType mediaType = serializer.negotiate(request);
+        byte[] body = listPageCache.load(
+                ListPageCache.PRODUCTS, filters, tags, pageable, mediaType,
+                () -> service.getShopProductList(shopId, categoryIds, categoryMatch, withTotal, pageable)
+        );
+        return ResponseEntity.ok().contentType(mediaType).body(body);
+    }
+
+    @Operation(
+            summary = "Search products",
+            description = "Full-text search on the name and description of the products in a locale, best matches "
+                    + "first, optionally filtered by shop, category and price"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Matching products"),
+            @ApiResponse(responseCode = "400", description = "Empty query, unknown locale or invalid cursor")
+    })
+    @GetMapping("/search")
+    public ResponseEntity<SearchResponse<Product>> searchProducts(
+            @Parameter(description = "Words to search, with the web search syntax (quotes, or, -)")
+            @RequestParam String q,
+            @Parameter(description = "Locale of the searched texts, FR or EN")
+            @RequestParam(defaultValue = "FR") String locale,
+            @Parameter(description = "Id of the shop") @RequestParam Optional<Long> shopId,
+            @Parameter(description = "Id of the category") @RequestParam Optional<Long> categoryId,
+            @Parameter(description = "Minimum price") @RequestParam Optional<Float> minPrice,
+            @Parameter(description = "Maximum price") @RequestParam Optional<Float> maxPrice,
+            @Parameter(description = "Number of products") @RequestParam(defaultValue = "20") int size,
+            @Parameter(description = "nextCursor of the previous page") @RequestParam Optional<String> cursor) {
+        return ResponseEntity.ok(productSearchService.searchProducts(
+                q, locale, shopId, categoryId, minPrice, maxPrice, size, cursor
+        ));
     }
 
     @Operation(summary = "Update a product", description = "Update a product")
     @PutMapping
-    public ResponseEntity<Product> updateProduct(@Valid @RequestBody Product product, Errors errors) throws Exception {
+    public ResponseEntity<Product> updateProduct(@Valid @RequestBody Product product, Errors errors) {
         if (errors.hasErrors()) {
             throw new ResponseStatusException(
                     HttpStatus.BAD_REQUEST, ErrorValidation.getErrorValidationMessage(errors));
         }
 
-        return ResponseEntity.ok().body(service.updateProduct(product));
+        Product updatedProduct = service.updateProduct(product);
+        singleFlightCache.evict("product:" + updatedProduct.getId() + ":");
+        return ResponseEntity.ok().body(updatedProduct);
     }
 }
@@ -0,0 +1,110 @@
+package fr.fullstack.shopapp.controller;
+
+import fr.fullstack.shopapp.profiling.ProfilingService;
+import fr.fullstack.shopapp.profiling.ProfilingSession;
+import fr.fullstack.shopapp.profiling.ProfilingSummary;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@RestController
+@RequestMapping("/api/v1/admin/profiling")
+@Tag(name = "Profiling", description = "APIs for recording the application with Java Flight Recorder")
+public class ProfilingController {
+    @Autowired
+    private ProfilingService profilingService;
+
+    @Operation(summary = "Get the recording", description = "Download the JFR file of the last finished recording")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Recording found"),
+            @ApiResponse(responseCode = "404", description = "No finished recording")
+    })
+    @GetMapping(value = "/recording", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<Resource> getRecording() {
+        Path file = profilingService.getRecording().orElseThrow(
+                () -> new ResponseStatusException(HttpStatus.NOT_FOUND, "No finished recording"));
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(file.getFileName().toString()).build().toString())
+                .body(new FileSystemResource(file));
+    }
+
+    @Operation(summary = "Get the recording session", description = "Get the running recording, or the last one")
+    @GetMapping
+    public ResponseEntity<ProfilingSession> getSession() {
+        return ResponseEntity.ok(profilingService.getSession().orElseThrow(
+                () -> new ResponseStatusException(HttpStatus.NOT_FOUND, "No recording")));
+    }
+
+    @Operation(
+            summary = "Get the top frames",
+            description = "Methods of the application with the most CPU samples and sampled allocated bytes, "
+                    + "for the running recording or the last one"
+    )
+    @GetMapping("/summary")
+    public ResponseEntity<ProfilingSummary> getSummary(
+            @Parameter(description = "Number of frames of each list")
+            @RequestParam(defaultValue = "20") int limit) {
+        if (limit < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Limit must be positive");
+        }
+        return ResponseEntity.ok(profilingService.getSummary(limit).orElseThrow(
+                () -> new ResponseStatusException(HttpStatus.NOT_FOUND, "No recording")));
+    }
+
+    @Operation(summary = "Start a recording", description = "Record for the given duration, capped by the settings")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Recording started"),
+            @ApiResponse(responseCode = "409", description = "A recording is already running")
+    })
+    @PostMapping
+    public ResponseEntity<ProfilingSession> start(
+            @Parameter(description = "Duration of the recording, in seconds")
+            @RequestParam(defaultValue = "60") long durationSeconds) {
+        if (durationSeconds < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Duration must be positive");
+        }
+        ProfilingSession session = profilingService.start(Duration.ofSeconds(durationSeconds)).orElseThrow(
+                () -> new ResponseStatusException(HttpStatus.CONFLICT, "A recording is already running"));
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(session);
+    }
+
+    @Operation(summary = "Stop the recording", description = "End the running recording before its duration")
+    @DeleteMapping
+    public ResponseEntity<ProfilingSession> stop() {
+        return ResponseEntity.ok(profilingService.stop().orElseThrow(
+                () -> new ResponseStatusException(HttpStatus.NOT_FOUND, "No running recording")));
+    }
+
+    @Operation(
+            summary = "Stream the recording events",
+            description = "Server-Sent Events of the JDBC statements, lock contentions, socket I/O and GCs "
+                    + "over their thresholds, until the end of the recording"
+    )
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribe() {
+        return profilingService.subscribe().orElseThrow(
+                () -> new ResponseStatusException(HttpStatus.NOT_FOUND, "No running recording"));
+    }
+}
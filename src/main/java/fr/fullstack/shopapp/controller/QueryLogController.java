@@ -0,0 +1,42 @@
+package fr.fullstack.shopapp.controller;
+
+import fr.fullstack.shopapp.querylog.QueryLogListener;
+import fr.fullstack.shopapp.querylog.QueryLogSettings;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+@RestController
+@RequestMapping("/api/v1/admin/query-log")
+@Tag(name = "Query Log", description = "APIs for tuning the slow query log at runtime")
+public class QueryLogController {
+    @Autowired
+    private QueryLogListener listener;
+
+    @Operation(summary = "Get the query log settings", description = "Get the current query log settings")
+    @GetMapping
+    public ResponseEntity<QueryLogSettings> getSettings() {
+        return ResponseEntity.ok(listener.getSettings());
+    }
+
+    @Operation(summary = "Update the query log settings", description = "Enable or disable the query log, "
+            + "change the slow query threshold or the sampling rate of the other statements")
+    @PutMapping
+    public ResponseEntity<QueryLogSettings> updateSettings(@RequestBody QueryLogSettings settings) {
+        if (settings.getThresholdMs() < 0 || settings.getSampleRate() < 0 || settings.getSampleRate() > 1) {
+            throw new ResponseStatusException(
+                    HttpStatus.BAD_REQUEST, "Threshold must be positive and sample rate between 0 and 1");
+        }
+
+        listener.setSettings(settings);
+        return ResponseEntity.ok(settings);
+    }
+}
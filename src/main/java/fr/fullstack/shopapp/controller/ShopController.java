@@ -1,6 +1,14 @@
 package fr.fullstack.shopapp.controller;
 
+import fr.fullstack.shopapp.cache.ListPageCache;
+import fr.fullstack.shopapp.cache.ResponseSerializer;
+import fr.fullstack.shopapp.cache.SingleFlightCache;
+import fr.fullstack.shopapp.dto.MultiGetResponse;
+import fr.fullstack.shopapp.dto.PageResponse;
 import fr.fullstack.shopapp.model.Shop;
+import fr.fullstack.shopapp.model.ShopDeletionJob;
+import fr.fullstack.shopapp.projection.FieldSet;
+import fr.fullstack.shopapp.projection.ShopProjection;
 import fr.fullstack.shopapp.service.ShopService;
 import fr.fullstack.shopapp.util.ErrorValidation;
 import io.swagger.v3.oas.annotations.Operation;
@@ -10,12 +18,14 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import org.springdoc.core.annotations.ParameterObject;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.Errors;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -29,16 +39,32 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.net.URI;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api/v1/shops")
 @Tag(name = "Shop Management", description = "APIs for managing shops")
 public class ShopController {
     // TODO ADD PLAIN TEXT SEARCH FOR SHOP
+    @Autowired
+    private ListPageCache listPageCache;
+
+    @Value("${shopapp.multi-get.max-ids:100}")
+    private int maxIds;
+
+    @Autowired
+    private ResponseSerializer serializer;
+
     @Autowired
     private ShopService service;
 
+    @Autowired
+    private SingleFlightCache singleFlightCache;
+
     @Operation(summary = "Create a shop", description = "Create a new shop")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Shop created successfully",
@@ -47,7 +73,7 @@ public class ShopController {
             @ApiResponse(responseCode = "400", description = "Invalid input")
     })
     @PostMapping
-    public ResponseEntity<Shop> createShop(@Valid @RequestBody Shop shop, Errors errors) throws Exception {
+    public ResponseEntity<Shop> createShop(@Valid @RequestBody Shop shop, Errors errors) {
         if (errors.hasErrors()) {
             throw new ResponseStatusException(
                     HttpStatus.BAD_REQUEST, ErrorValidation.getErrorValidationMessage(errors));
@@ -56,34 +82,105 @@ public class ShopController {
         return ResponseEntity.ok(service.createShop(shop));
     }
 
-    @Operation(summary = "Delete a shop by id", description = "Delete a shop")
+    @Operation(
+            summary = "Delete a shop by id",
+            description = "Hide a shop right away and purge it in the background, the returned job tracks the purge"
+    )
     @ApiResponses(value = {
-            @ApiResponse(responseCode = "204", description = "Shop deleted successfully"),
-            @ApiResponse(responseCode = "400", description = "Invalid id supplied")
+            @ApiResponse(responseCode = "202", description = "Shop deletion accepted",
+                    content = {@Content(mediaType = "application/json",
+                            schema = @Schema(implementation = ShopDeletionJob.class))}),
+            @ApiResponse(responseCode = "404", description = "Shop not found")
     })
     @DeleteMapping("/{id}")
-    public HttpStatus deleteShop(@PathVariable long id) throws Exception {
-        service.deleteShopById(id);
-        return HttpStatus.NO_CONTENT;
+    public ResponseEntity<ShopDeletionJob> deleteShop(@PathVariable long id) {
+        ShopDeletionJob job = service.deleteShopById(id);
+        singleFlightCache.evict("shop:" + id + ":");
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/v1/shops/deletions/" + job.getId()))
+                .body(job);
     }
 
     @Operation(summary = "Get all shops", description = "Get shops with pagination with optional filtering and sorting")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Shops retrieved successfully",
                     content = {@Content(mediaType = "application/json",
-                    schema = @Schema(implementation = Page.class))})
+                    schema = @Schema(implementation = PageResponse.class))})
     })
     @GetMapping
-    public ResponseEntity<Page<Shop>> getAllShops(
+    public ResponseEntity<?> getAllShops(
             @ParameterObject Pageable pageable,
             @Parameter(description = "Sort shops by field") @RequestParam Optional<String> sortBy,
             @Parameter(description = "Filter shops based on vacation status") @RequestParam Optional<Boolean> inVacations,
             @Parameter(description = "Filter shops created after a date (YYYY-MM-DD)") @RequestParam Optional<String> createdAfter,
-            @Parameter(description = "Filter shops created before a date (YYYY-MM-DD)") @RequestParam Optional<String> createdBefore) {
+            @Parameter(description = "Filter shops created before a date (YYYY-MM-DD)") @RequestParam Optional<String> createdBefore,
+            @Parameter(description = "Include the total number of shops")
+            @RequestParam(defaultValue = "true") boolean withTotal,
+            @Parameter(description = "Comma-separated fields to return, e.g. id,name")
+            @RequestParam Optional<String> fields,
+            HttpServletRequest request) throws Exception {
+        if (fields.isPresent()) {
+            return ResponseEntity.ok(service.getShopFieldsList(
+                    sortBy, inVacations, createdAfter, createdBefore, withTotal, pageable,
+                    ShopProjection.parse(fields.get())
+            ));
+        }
 
-        return ResponseEntity.ok(
-                service.getShopList(sortBy, inVacations, createdAfter, createdBefore, pageable)
+        String filters = "sortBy=" + sortBy.orElse("")
+                + ",inVacations=" + inVacations.map(String::valueOf).orElse("")
+                + ",createdAfter=" + createdAfter.orElse("")
+                + ",createdBefore=" + createdBefore.orElse("")
+                + ",withTotal=" + withTotal;
+        Set<String> tags = new HashSet<String>();
+        if (sortBy.isPresent() || inVacations.isPresent() || createdAfter.isPresent() || createdBefore.isPresent()
+                || pageable.getSort().isSorted()) {
+            tags.add(ListPageCache.TAG_SORTED_SHOPS);
+        }
+        // Any other sortBy sorts on the number of products, see ShopService
+        if (sortBy.filter(field -> !field.equals("name") && !field.equals("createdAt")).isPresent()
+                || pageable.getSort().getOrderFor("nbProducts") != null) {
+            tags.add(ListPageCache.TAG_NB_PRODUCTS_SHOPS);
+        }
+
+        MediaType mediaType = serializer.negotiate(request);
+        byte[] body = listPageCache.load(
+                ListPageCache.SHOPS, filters, tags, pageable, mediaType,
+                () -> service.getShopList(sortBy, inVacations, createdAfter, createdBefore, withTotal, pageable)
         );
+        return ResponseEntity.ok().contentType(mediaType).body(body);
+    }
+
+    @Operation(summary = "Get a shop deletion job", description = "Get the progress of a shop deletion")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Deletion job found",
+                    content = {@Content(mediaType = "application/json",
+                            schema = @Schema(implementation = ShopDeletionJob.class))}),
+            @ApiResponse(responseCode = "404", description = "Deletion job not found")
+    })
+    @GetMapping("/deletions/{jobId}")
+    public ResponseEntity<ShopDeletionJob> getDeletionJob(@PathVariable long jobId) {
+        return ResponseEntity.ok(service.getDeletionJob(jobId));
+    }
+
+    @Operation(
+            summary = "Get shops by ids",
+            description = "Get several shops in one call, in the order of the ids, with the ids that were not found"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Shops retrieved successfully",
+                    content = {@Content(mediaType = "application/json",
+                            schema = @Schema(implementation = MultiGetResponse.class))}),
+            @ApiResponse(responseCode = "400", description = "Too many ids")
+    })
+    @GetMapping(params = "ids")
+    public ResponseEntity<MultiGetResponse<Shop>> getShopsByIds(
+            @Parameter(description = "Comma-separated ids of the shops") @RequestParam List<Long> ids) {
+        if (ids.size() > maxIds) {
+            throw new ResponseStatusException(
+                    HttpStatus.BAD_REQUEST, "At most " + maxIds + " ids can be requested at once");
+        }
+
+        return ResponseEntity.ok(service.getShopsByIds(ids));
     }
 
     @Operation(summary = "Get a shop by id", description = "Get a shop by id")
@@ -94,8 +191,26 @@ public class ShopController {
             @ApiResponse(responseCode = "404", description = "Shop not found")
     })
     @GetMapping("/{id}")
-    public ResponseEntity<Shop> getShopById(@PathVariable long id) throws Exception {
-        return ResponseEntity.ok().body(service.getShopById(id));
+    public ResponseEntity<byte[]> getShopById(
+            @PathVariable long id,
+            @Parameter(description = "Comma-separated fields to return, e.g. id,name")
+            @RequestParam Optional<String> fields,
+            HttpServletRequest request) throws Exception {
+        // Concurrent reads of the same shop share one database load and one serialization
+        MediaType mediaType = serializer.negotiate(request);
+        if (fields.isPresent()) {
+            FieldSet fieldSet = ShopProjection.parse(fields.get());
+            byte[] body = singleFlightCache.load(
+                    "shop:" + id + ":" + mediaType + ":" + fieldSet,
+                    () -> serializer.write(service.getShopFields(id, fieldSet), mediaType)
+            );
+            return ResponseEntity.ok().contentType(mediaType).body(body);
+        }
+
+        byte[] body = singleFlightCache.load(
+                "shop:" + id + ":" + mediaType, () -> serializer.write(service.getShopById(id), mediaType)
+        );
+        return ResponseEntity.ok().contentType(mediaType).body(body);
     }
 
     @Operation(summary = "Update a shop", description = "Update a shop")
@@ -106,12 +221,14 @@ public class ShopController {
             @ApiResponse(responseCode = "400", description = "Invalid input")
     })
     @PutMapping
-    public ResponseEntity<Shop> updateShop(@Valid @RequestBody Shop shop, Errors errors) throws Exception {
+    public ResponseEntity<Shop> updateShop(@Valid @RequestBody Shop shop, Errors errors) {
         if (errors.hasErrors()) {
             throw new ResponseStatusException(
                     HttpStatus.BAD_REQUEST, ErrorValidation.getErrorValidationMessage(errors));
         }
 
-        return ResponseEntity.ok().body(service.updateShop(shop));
+        Shop updatedShop = service.updateShop(shop);
+        singleFlightCache.evict("shop:" + updatedShop.getId() + ":");
+        return ResponseEntity.ok().body(updatedShop);
     }
 }
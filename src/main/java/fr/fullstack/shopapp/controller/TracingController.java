@@ -0,0 +1,66 @@
+package fr.fullstack.shopapp.controller;
+
+import fr.fullstack.shopapp.tracing.InMemorySpanExporter;
+import fr.fullstack.shopapp.tracing.TracingSampler;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/v1/admin/tracing")
+@Tag(name = "Tracing", description = "APIs for tuning the tracing and reading recent traces")
+public class TracingController {
+    @Autowired
+    private InMemorySpanExporter inMemorySpanExporter;
+
+    @Autowired
+    private TracingSampler sampler;
+
+    @Operation(summary = "Clear the recent spans", description = "Drop the spans kept in memory")
+    @DeleteMapping("/traces")
+    public HttpStatus clearTraces() {
+        inMemorySpanExporter.clear();
+        return HttpStatus.NO_CONTENT;
+    }
+
+    @Operation(summary = "Get the tracing settings", description = "Get the ratio of the sampled requests")
+    @GetMapping
+    public ResponseEntity<Map<String, Double>> getSettings() {
+        return ResponseEntity.ok(Map.of("sampleRate", sampler.getSampleRate()));
+    }
+
+    @Operation(summary = "Get a recent trace", description = "Spans of a trace still kept in memory, in start order")
+    @GetMapping("/traces/{traceId}")
+    public ResponseEntity<List<Map<String, Object>>> getTrace(@PathVariable String traceId) {
+        List<Map<String, Object>> spans = inMemorySpanExporter.findTrace(traceId);
+        if (spans.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Trace " + traceId + " not found");
+        }
+        return ResponseEntity.ok(spans);
+    }
+
+    @Operation(summary = "Update the tracing settings", description = "Change the ratio of the sampled requests")
+    @PutMapping
+    public ResponseEntity<Map<String, Double>> updateSettings(@RequestBody Map<String, Double> settings) {
+        Double sampleRate = settings.get("sampleRate");
+        if (sampleRate == null || sampleRate < 0 || sampleRate > 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Sample rate must be between 0 and 1");
+        }
+
+        sampler.setSampleRate(sampleRate);
+        return ResponseEntity.ok(Map.of("sampleRate", sampleRate));
+    }
+}
@@ -0,0 +1,78 @@
+package fr.fullstack.shopapp.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.validation.constraints.NotNull;
+
+/**
+ * One operation of a batch. The body and the id can point to the entity created or updated by an
+ * earlier operation with {"$ref": "name"}, where name is the ref of that operation.
+ */
+public class BatchOperation {
+    public enum Method {
+        POST, PUT, DELETE
+    }
+
+    public enum Resource {
+        @JsonProperty("categories")
+        CATEGORIES,
+        @JsonProperty("products")
+        PRODUCTS,
+        @JsonProperty("shops")
+        SHOPS
+    }
+
+    private ObjectNode body;
+
+    // Number or reference, required by DELETE, overrides the id of the body for PUT
+    private JsonNode id;
+
+    @NotNull(message = "Method may not be null")
+    private Method method;
+
+    private String ref;
+
+    @NotNull(message = "Resource may not be null")
+    private Resource resource;
+
+    public ObjectNode getBody() {
+        return body;
+    }
+
+    public JsonNode getId() {
+        return id;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public String getRef() {
+        return ref;
+    }
+
+    public Resource getResource() {
+        return resource;
+    }
+
+    public void setBody(ObjectNode body) {
+        this.body = body;
+    }
+
+    public void setId(JsonNode id) {
+        this.id = id;
+    }
+
+    public void setMethod(Method method) {
+        this.method = method;
+    }
+
+    public void setRef(String ref) {
+        this.ref = ref;
+    }
+
+    public void setResource(Resource resource) {
+        this.resource = resource;
+    }
+}
@@ -0,0 +1,33 @@
+package fr.fullstack.shopapp.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BatchRequest {
+    // All the operations in one transaction, stopping at the first failure
+    private boolean atomic = true;
+
+    @NotNull(message = "Operations may not be null")
+    @Size(min = 1, message = "At least one operation must be provided")
+    private List<@Valid BatchOperation> operations = new ArrayList<BatchOperation>();
+
+    public boolean getAtomic() {
+        return atomic;
+    }
+
+    public List<BatchOperation> getOperations() {
+        return operations;
+    }
+
+    public void setAtomic(boolean atomic) {
+        this.atomic = atomic;
+    }
+
+    public void setOperations(List<BatchOperation> operations) {
+        this.operations = operations;
+    }
+}
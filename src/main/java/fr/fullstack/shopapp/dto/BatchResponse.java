@@ -0,0 +1,23 @@
+package fr.fullstack.shopapp.dto;
+
+import java.util.List;
+
+public class BatchResponse {
+    // Every operation is committed
+    private final boolean committed;
+
+    private final List<BatchResult> results;
+
+    public BatchResponse(boolean committed, List<BatchResult> results) {
+        this.committed = committed;
+        this.results = results;
+    }
+
+    public boolean getCommitted() {
+        return committed;
+    }
+
+    public List<BatchResult> getResults() {
+        return results;
+    }
+}
@@ -0,0 +1,71 @@
+package fr.fullstack.shopapp.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchResult {
+    private Object body;
+
+    private String error;
+
+    private final Long id;
+
+    private final int index;
+
+    private final String ref;
+
+    private int status;
+
+    public BatchResult(int index, String ref, int status, Long id, Object body, String error) {
+        this.index = index;
+        this.ref = ref;
+        this.status = status;
+        this.id = id;
+        this.body = body;
+        this.error = error;
+    }
+
+    public static BatchResult failure(int index, String ref, int status, String error) {
+        return new BatchResult(index, ref, status, null, null, error);
+    }
+
+    public static BatchResult success(int index, String ref, int status, Long id, Object body) {
+        return new BatchResult(index, ref, status, id, body, null);
+    }
+
+    public Object getBody() {
+        return body;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public String getRef() {
+        return ref;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public void setBody(Object body) {
+        this.body = body;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+}
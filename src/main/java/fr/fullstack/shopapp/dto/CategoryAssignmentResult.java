@@ -0,0 +1,21 @@
+package fr.fullstack.shopapp.dto;
+
+public class CategoryAssignmentResult {
+    private final long categoryId;
+
+    // Links actually added or removed, links already in the requested state are not counted
+    private final int products;
+
+    public CategoryAssignmentResult(long categoryId, int products) {
+        this.categoryId = categoryId;
+        this.products = products;
+    }
+
+    public long getCategoryId() {
+        return categoryId;
+    }
+
+    public int getProducts() {
+        return products;
+    }
+}
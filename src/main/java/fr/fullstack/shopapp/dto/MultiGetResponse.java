@@ -0,0 +1,43 @@
+package fr.fullstack.shopapp.dto;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result of a lookup by several ids: the found items in the order of the requested ids,
+ * and the ids that do not exist.
+ */
+public class MultiGetResponse<T> {
+    private final List<T> items;
+
+    private final List<Long> missingIds;
+
+    public MultiGetResponse(List<T> items, List<Long> missingIds) {
+        this.items = items;
+        this.missingIds = missingIds;
+    }
+
+    public static <T> MultiGetResponse<T> inRequestOrder(List<Long> ids, Map<Long, T> found) {
+        List<T> items = new ArrayList<T>(found.size());
+        List<Long> missingIds = new ArrayList<Long>();
+        for (Long id : new LinkedHashSet<Long>(ids)) {
+            T item = found.get(id);
+            if (item != null) {
+                items.add(item);
+            } else {
+                missingIds.add(id);
+            }
+        }
+        return new MultiGetResponse<T>(items, missingIds);
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public List<Long> getMissingIds() {
+        return missingIds;
+    }
+}
@@ -0,0 +1,61 @@
+package fr.fullstack.shopapp.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import org.springframework.data.domain.Slice;
+
+import java.util.List;
+
+/**
+ * Compact page envelope returned by the list endpoints.
+ * totalElements is only present when the caller asked for it.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PageResponse<T> {
+    private final List<T> content;
+
+    private final boolean hasNext;
+
+    private final int page;
+
+    private final int size;
+
+    private final Long totalElements;
+
+    public PageResponse(List<T> content, int page, int size, boolean hasNext, Long totalElements) {
+        this.content = content;
+        this.page = page;
+        this.size = size;
+        this.hasNext = hasNext;
+        this.totalElements = totalElements;
+    }
+
+    public static <T> PageResponse<T> of(Slice<T> slice) {
+        return of(slice, null);
+    }
+
+    public static <T> PageResponse<T> of(Slice<T> slice, Long totalElements) {
+        return new PageResponse<T>(
+                slice.getContent(), slice.getNumber(), slice.getSize(), slice.hasNext(), totalElements
+        );
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    public boolean getHasNext() {
+        return hasNext;
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public Long getTotalElements() {
+        return totalElements;
+    }
+}
@@ -0,0 +1,97 @@
+package fr.fullstack.shopapp.dto;
+
+import fr.fullstack.shopapp.model.PriceAdjustmentType;
+import jakarta.validation.constraints.AssertTrue;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.PositiveOrZero;
+
+/**
+ * Products of a shop and/or a category, optionally within a price range, and the change applied to
+ * their price. Prices never go below 0 and are rounded to the cent.
+ */
+public class PriceAdjustmentRequest {
+    private Long categoryId;
+
+    // Only count the matching products
+    private boolean dryRun;
+
+    @PositiveOrZero(message = "Max price must be positive")
+    private Float maxPrice;
+
+    @PositiveOrZero(message = "Min price must be positive")
+    private Float minPrice;
+
+    private Long shopId;
+
+    @NotNull(message = "Type may not be null")
+    private PriceAdjustmentType type;
+
+    @NotNull(message = "Value may not be null")
+    private Float value;
+
+    public Long getCategoryId() {
+        return categoryId;
+    }
+
+    public boolean getDryRun() {
+        return dryRun;
+    }
+
+    public Float getMaxPrice() {
+        return maxPrice;
+    }
+
+    public Float getMinPrice() {
+        return minPrice;
+    }
+
+    public Long getShopId() {
+        return shopId;
+    }
+
+    public PriceAdjustmentType getType() {
+        return type;
+    }
+
+    public Float getValue() {
+        return value;
+    }
+
+    @AssertTrue(message = "A shopId or a categoryId must be provided")
+    public boolean isScoped() {
+        return shopId != null || categoryId != null;
+    }
+
+    @AssertTrue(message = "A percentage may not be lower than -100")
+    public boolean isValidPercentage() {
+        return type != PriceAdjustmentType.PERCENT || value == null || value >= -100;
+    }
+
+    public void setCategoryId(Long categoryId) {
+        this.categoryId = categoryId;
+    }
+
+    public void setDryRun(boolean dryRun) {
+        this.dryRun = dryRun;
+    }
+
+    public void setMaxPrice(Float maxPrice) {
+        this.maxPrice = maxPrice;
+    }
+
+    public void setMinPrice(Float minPrice) {
+        this.minPrice = minPrice;
+    }
+
+    public void setShopId(Long shopId) {
+        this.shopId = shopId;
+    }
+
+    public void setType(PriceAdjustmentType type) {
+        this.type = type;
+    }
+
+    public void setValue(Float value) {
+        this.value = value;
+    }
+}
@@ -0,0 +1,71 @@
+package fr.fullstack.shopapp.dto;
+
+import jakarta.validation.constraints.AssertTrue;
+import jakarta.validation.constraints.PositiveOrZero;
+
+import java.util.List;
+
+/**
+ * Products targeted by a bulk operation: either a list of ids, or the products of a shop matching
+ * the optional filters.
+ */
+public class ProductSelection {
+    // Products of the shop already in this category
+    private Long categoryId;
+
+    @PositiveOrZero(message = "Max price must be positive")
+    private Float maxPrice;
+
+    @PositiveOrZero(message = "Min price must be positive")
+    private Float minPrice;
+
+    private List<Long> productIds;
+
+    private Long shopId;
+
+    public Long getCategoryId() {
+        return categoryId;
+    }
+
+    public Float getMaxPrice() {
+        return maxPrice;
+    }
+
+    public Float getMinPrice() {
+        return minPrice;
+    }
+
+    public List<Long> getProductIds() {
+        return productIds;
+    }
+
+    public Long getShopId() {
+        return shopId;
+    }
+
+    @AssertTrue(message = "Either productIds, or a shopId with optional filters, must be provided")
+    public boolean isValidSelection() {
+        return (productIds == null) != (shopId == null)
+                && (shopId != null || (categoryId == null && minPrice == null && maxPrice == null));
+    }
+
+    public void setCategoryId(Long categoryId) {
+        this.categoryId = categoryId;
+    }
+
+    public void setMaxPrice(Float maxPrice) {
+        this.maxPrice = maxPrice;
+    }
+
+    public void setMinPrice(Float minPrice) {
+        this.minPrice = minPrice;
+    }
+
+    public void setProductIds(List<Long> productIds) {
+        this.productIds = productIds;
+    }
+
+    public void setShopId(Long shopId) {
+        this.shopId = shopId;
+    }
+}
@@ -0,0 +1,29 @@
+package fr.fullstack.shopapp.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * Page of ranked search results. nextCursor, absent on the last page, is passed back as the
+ * cursor parameter to get the next page.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SearchResponse<T> {
+    private final List<T> content;
+
+    private final String nextCursor;
+
+    public SearchResponse(List<T> content, String nextCursor) {
+        this.content = content;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
@@ -1,9 +1,17 @@
 package fr.fullstack.shopapp.exception;
 
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.DataBinder;
 import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.InitBinder;
 
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 @ControllerAdvice
 public class GlobalExceptionHandler {
     /**
@@ -13,4 +21,31 @@ public class GlobalExceptionHandler {
     private void activateDirectFieldAccess(DataBinder dataBinder) {
         dataBinder.initDirectFieldAccess();
     }
+
+    @ExceptionHandler(InvalidRequestException.class)
+    public ResponseEntity<Map<String, Object>> handleInvalidRequest(
+            InvalidRequestException e, HttpServletRequest request) {
+        return errorResponse(HttpStatus.BAD_REQUEST, e, request);
+    }
+
+    @ExceptionHandler(ResourceNotFoundException.class)
+    public ResponseEntity<Map<String, Object>> handleNotFound(
+            ResourceNotFoundException e, HttpServletRequest request) {
+        return errorResponse(HttpStatus.NOT_FOUND, e, request);
+    }
+
+    /**
+     * Same body as the default Spring Boot error response, written directly
+     * instead of forwarding to the /error page.
+     */
+    private ResponseEntity<Map<String, Object>> errorResponse(
+            HttpStatus status, ShopAppException e, HttpServletRequest request) {
+        Map<String, Object> body = new LinkedHashMap<String, Object>();
+        body.put("timestamp", Instant.now());
+        body.put("status", status.value());
+        body.put("error", status.getReasonPhrase());
+        body.put("message", e.getMessage());
+        body.put("path", request.getRequestURI());
+        return ResponseEntity.status(status).body(body);
+    }
 }
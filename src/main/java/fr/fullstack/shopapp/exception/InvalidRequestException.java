@@ -0,0 +1,7 @@
+package fr.fullstack.shopapp.exception;
+
+public class InvalidRequestException extends ShopAppException {
+    public InvalidRequestException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package fr.fullstack.shopapp.exception;
+
+public class ResourceNotFoundException extends ShopAppException {
+    public ResourceNotFoundException(String message) {
+        super(message);
+    }
+}
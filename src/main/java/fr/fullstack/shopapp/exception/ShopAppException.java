@@ -0,0 +1,12 @@
+package fr.fullstack.shopapp.exception;
+
+/**
+ * Base class of the expected business errors. These exceptions do not fill in a stack trace:
+ * they are raised for client mistakes (unknown id, invalid input) and only their message is
+ * ever reported, so capturing the stack would be wasted work.
+ */
+public abstract class ShopAppException extends RuntimeException {
+    protected ShopAppException(String message) {
+        super(message, null, false, false);
+    }
+}
@@ -0,0 +1,407 @@
+package fr.fullstack.shopapp.invalidation;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.fullstack.shopapp.cache.SingleFlightCache;
+import fr.fullstack.shopapp.service.CatalogChangedEvent;
+import fr.fullstack.shopapp.service.CatalogChangesMissedEvent;
+import fr.fullstack.shopapp.service.ProductsChangedEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Carries the catalog changes between the instances over Postgres LISTEN/NOTIFY.
+ * The changes of a transaction are sent with pg_notify just before it commits, so they are only
+ * delivered if it commits. Every instance listens on a connection of its own and publishes the
+ * changes of the other instances as local events, which evict its caches like its own writes.
+ * Messages are numbered per instance: a number still missing after the gap timeout, or a lost
+ * connection, means changes may have been missed, and a CatalogChangesMissedEvent is published once
+ * listening again. The numbers taken by a transaction that then failed to commit are announced in a
+ * message of their own, so that the receivers do not wait for them.
+ */
+@Component
+public class InvalidationBus {
+    private static final Logger LOGGER = LoggerFactory.getLogger(InvalidationBus.class);
+
+    // Messages stay well below the 8000 bytes limit of a NOTIFY payload
+    private static final int MAX_CHANGES = 40;
+
+    private static final int MAX_PRODUCT_IDS = 300;
+
+    private final ApplicationEventPublisher applicationEventPublisher;
+
+    private final String channel;
+
+    private Connection connection;
+
+    private final boolean enabled;
+
+    private final long gapTimeoutMs;
+
+    private final long heartbeatMs;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Last time the listener was known to have received everything
+    private volatile Instant lastAlive = Instant.now();
+
+    private Thread listener;
+
+    private final MeterRegistry meterRegistry;
+
+    // Set when changes may have been missed, cleared by the next flush
+    private Instant missedSince;
+
+    private final String node = UUID.randomUUID().toString();
+
+    private final ObjectMapper objectMapper;
+
+    private final String password;
+
+    private final long reconnectDelayMs;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final SequenceTracker sequences = new SequenceTracker();
+
+    private final SingleFlightCache singleFlightCache;
+
+    // Announces the numbers of the transactions that did not commit, outside of them
+    private final ExecutorService skipSender = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "invalidation-skip-sender");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String url;
+
+    private final String username;
+
+    public InvalidationBus(
+            ApplicationEventPublisher applicationEventPublisher,
+            JdbcTemplate jdbcTemplate,
+            MeterRegistry meterRegistry,
+            ObjectMapper objectMapper,
+            SingleFlightCache singleFlightCache,
+            @Value("${shopapp.invalidation.enabled:true}") boolean enabled,
+            @Value("${shopapp.invalidation.channel:catalog_invalidation}") String channel,
+            @Value("${shopapp.invalidation.gap-timeout:2s}") Duration gapTimeout,
+            @Value("${shopapp.invalidation.heartbeat:10s}") Duration heartbeat,
+            @Value("${shopapp.invalidation.reconnect-delay:1s}") Duration reconnectDelay,
+            @Value("${spring.datasource.url}") String url,
+            @Value("${spring.datasource.username}") String username,
+            @Value("${spring.datasource.password}") String password
+    ) {
+        this.applicationEventPublisher = applicationEventPublisher;
+        this.jdbcTemplate = jdbcTemplate;
+        this.meterRegistry = meterRegistry;
+        this.objectMapper = objectMapper;
+        this.singleFlightCache = singleFlightCache;
+        this.enabled = enabled;
+        this.channel = channel;
+        this.gapTimeoutMs = gapTimeout.toMillis();
+        this.heartbeatMs = heartbeat.toMillis();
+        this.reconnectDelayMs = reconnectDelay.toMillis();
+        this.url = url;
+        this.username = username;
+        this.password = password;
+    }
+
+    @EventListener
+    public void onCatalogChanged(CatalogChangedEvent event) {
+        Changes changes = transactionChanges();
+        if (changes != null) {
+            changes.events.add(event);
+        }
+    }
+
+    @EventListener
+    public void onProductsChanged(ProductsChangedEvent event) {
+        Changes changes = transactionChanges();
+        if (changes != null) {
+            for (long id : event.productIds()) {
+                changes.productIds.add(id);
+            }
+        }
+    }
+
+    /**
+     * Starts listening before the caches and read models load at ApplicationReadyEvent, so that
+     * no change committed after their load is missed.
+     */
+    @EventListener(ContextRefreshedEvent.class)
+    public synchronized void start() {
+        if (!enabled || listener != null) {
+            return;
+        }
+
+        try {
+            connect();
+        } catch (SQLException e) {
+            LOGGER.warn("Could not listen to the invalidation channel {}, retrying in the background", channel, e);
+            close();
+            missedSince = lastAlive;
+        }
+        listener = new Thread(this::listen, "invalidation-listener");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (listener != null) {
+            listener.interrupt();
+        }
+        skipSender.shutdown();
+    }
+
+    private void apply(InvalidationMessage message) {
+        // The by-id responses are evicted by the controllers and services that write, not by listeners
+        for (CatalogChangedEvent change : message.changes()) {
+            switch (change.entityType()) {
+                case PRODUCT:
+                    singleFlightCache.evict("product:" + change.entityId() + ":");
+                    break;
+                case SHOP:
+                    singleFlightCache.evict("shop:" + change.entityId() + ":");
+                    break;
+                default:
+                    break;
+            }
+            applicationEventPublisher.publishEvent(change);
+        }
+        if (message.productIds().length > 0) {
+            singleFlightCache.evict("product:");
+            applicationEventPublisher.publishEvent(new ProductsChangedEvent(message.productIds()));
+        }
+    }
+
+    private void close() {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                LOGGER.debug("Could not close the invalidation connection", e);
+            }
+            connection = null;
+        }
+    }
+
+    private void connect() throws SQLException {
+        connection = DriverManager.getConnection(url, username, password);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("LISTEN " + channel);
+        }
+        lastAlive = Instant.now();
+    }
+
+    private void flush(Instant since, String cause) {
+        LOGGER.warn("Catalog changes of other instances may have been missed since {} ({}), flushing", since, cause);
+        meterRegistry.counter("shopapp.invalidation.flushes", "cause", cause).increment();
+        sequences.clear();
+        singleFlightCache.evict("");
+        applicationEventPublisher.publishEvent(new CatalogChangesMissedEvent(since));
+    }
+
+    private void listen() {
+        long lastHeartbeat = System.currentTimeMillis();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                if (connection == null) {
+                    Thread.sleep(reconnectDelayMs);
+                    connect();
+                    lastHeartbeat = System.currentTimeMillis();
+                }
+                // Listening again: what was committed meanwhile is flushed
+                if (missedSince != null) {
+                    flush(missedSince, "reconnect");
+                    missedSince = null;
+                }
+
+                PGNotification[] notifications = connection.unwrap(PGConnection.class)
+                        .getNotifications((int) Math.min(heartbeatMs, 500));
+                long now = System.currentTimeMillis();
+                if (notifications != null) {
+                    for (PGNotification notification : notifications) {
+                        receive(notification.getParameter(), now);
+                    }
+                }
+
+                // A connection lost without a reset only shows when used
+                if (now - lastHeartbeat >= heartbeatMs) {
+                    try (Statement statement = connection.createStatement()) {
+                        statement.setQueryTimeout((int) Math.max(1, heartbeatMs / 1000));
+                        statement.execute("SELECT 1");
+                    }
+                    lastHeartbeat = now;
+                    sequences.removeIdle(now, Duration.ofHours(1).toMillis());
+                }
+
+                long oldestMissing = sequences.oldestMissing();
+                if (oldestMissing < 0) {
+                    lastAlive = Instant.ofEpochMilli(now);
+                } else if (now - oldestMissing >= gapTimeoutMs) {
+                    flush(lastAlive, "gap");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (SQLException e) {
+                LOGGER.warn("Lost the invalidation channel {}, reconnecting", channel, e);
+                close();
+                if (missedSince == null) {
+                    missedSince = lastAlive;
+                }
+            } catch (RuntimeException e) {
+                LOGGER.error("Could not apply an invalidation message", e);
+            }
+        }
+        close();
+    }
+
+    private List<InvalidationMessage> messages(Changes changes) {
+        List<InvalidationMessage> messages = new ArrayList<InvalidationMessage>();
+        List<CatalogChangedEvent> events = changes.events;
+        for (int i = 0; i < events.size(); i += MAX_CHANGES) {
+            messages.add(new InvalidationMessage(
+                    node,
+                    sequence.incrementAndGet(),
+                    events.subList(i, Math.min(i + MAX_CHANGES, events.size())),
+                    new long[0],
+                    new long[0]
+            ));
+        }
+        long[] productIds = changes.productIds.stream().mapToLong(Long::longValue).toArray();
+        for (int i = 0; i < productIds.length; i += MAX_PRODUCT_IDS) {
+            messages.add(new InvalidationMessage(
+                    node,
+                    sequence.incrementAndGet(),
+                    List.of(),
+                    Arrays.copyOfRange(productIds, i, Math.min(i + MAX_PRODUCT_IDS, productIds.length)),
+                    new long[0]
+            ));
+        }
+        for (InvalidationMessage message : messages) {
+            changes.sequences.add(message.sequence());
+        }
+        return messages;
+    }
+
+    private void receive(String payload, long now) {
+        InvalidationMessage message;
+        try {
+            message = objectMapper.readValue(payload, InvalidationMessage.class);
+        } catch (JsonProcessingException e) {
+            LOGGER.warn("Ignoring an invalid invalidation message: {}", payload, e);
+            return;
+        }
+        if (message.node().equals(node)) {
+            // Our own changes, already applied by the local listeners
+            return;
+        }
+
+        meterRegistry.counter("shopapp.invalidation.messages", "direction", "received").increment();
+        if (!sequences.receive(message.node(), message.sequence(), now)) {
+            flush(lastAlive, "gap");
+        }
+        if (message.skipped() != null) {
+            sequences.skip(message.node(), message.skipped());
+        }
+        apply(message);
+    }
+
+    private void send(Changes changes) {
+        for (InvalidationMessage message : messages(changes)) {
+            sendMessage(message);
+        }
+    }
+
+    private void sendMessage(InvalidationMessage message) {
+        try {
+            jdbcTemplate.queryForObject(
+                    "SELECT pg_notify(?, ?)", String.class, channel, objectMapper.writeValueAsString(message)
+            );
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize an invalidation message", e);
+        }
+        meterRegistry.counter("shopapp.invalidation.messages", "direction", "sent").increment();
+    }
+
+    // On a thread of its own, where no transaction is bound: the notification is sent right away
+    private void sendSkipped(List<Long> skipped) {
+        long[] numbers = skipped.stream().mapToLong(Long::longValue).toArray();
+        skipSender.execute(() -> {
+            try {
+                sendMessage(new InvalidationMessage(node, sequence.incrementAndGet(), List.of(), new long[0], numbers));
+            } catch (RuntimeException e) {
+                // The receivers flush once the gap timeout expires
+                LOGGER.warn("Could not announce the skipped invalidation messages {}", skipped, e);
+            }
+        });
+    }
+
+    // Changes of the current transaction, null outside of a transaction: the changes of the other
+    // instances are published from the listener thread, without one, and must not be sent back
+    private Changes transactionChanges() {
+        if (!enabled || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+
+        Changes changes = (Changes) TransactionSynchronizationManager.getResource(this);
+        if (changes == null) {
+            changes = new Changes();
+            TransactionSynchronizationManager.bindResource(this, changes);
+            TransactionSynchronizationManager.registerSynchronization(changes);
+        }
+        return changes;
+    }
+
+    private class Changes implements TransactionSynchronization {
+        private final List<CatalogChangedEvent> events = new ArrayList<CatalogChangedEvent>();
+
+        private final List<Long> productIds = new ArrayList<Long>();
+
+        // Numbers of the messages sent in the transaction
+        private final List<Long> sequences = new ArrayList<Long>();
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(InvalidationBus.this);
+            // Also when the outcome is unknown: a number announced after its message was delivered is ignored
+            if (status != STATUS_COMMITTED && !sequences.isEmpty()) {
+                sendSkipped(sequences);
+            }
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            // On the connection of the transaction: the notifications are delivered when it commits
+            send(this);
+        }
+    }
+}
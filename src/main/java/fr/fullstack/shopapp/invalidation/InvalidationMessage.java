@@ -0,0 +1,19 @@
+package fr.fullstack.shopapp.invalidation;
+
+import fr.fullstack.shopapp.service.CatalogChangedEvent;
+
+import java.util.List;
+
+/**
+ * Payload of one NOTIFY: changes of a committed transaction, numbered per instance so that the
+ * receivers can tell when they missed one. Skipped lists the numbers of the messages of transactions
+ * that did not commit, which will never come.
+ */
+record InvalidationMessage(
+        String node,
+        long sequence,
+        List<CatalogChangedEvent> changes,
+        long[] productIds,
+        long[] skipped
+) {
+}
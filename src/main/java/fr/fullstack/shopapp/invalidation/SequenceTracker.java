@@ -0,0 +1,106 @@
+package fr.fullstack.shopapp.invalidation;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Sequence numbers received from each instance, and the ones still missing. Transactions of one
+ * instance can commit in another order than they were numbered, so a missing number may still come.
+ * Only used from the listener thread.
+ */
+class SequenceTracker {
+    // A hole that large is not a reordering
+    private static final int MAX_MISSING = 1000;
+
+    private final Map<String, Node> nodes = new HashMap<String, Node>();
+
+    /**
+     * Forgets every instance, after a flush.
+     */
+    void clear() {
+        nodes.clear();
+    }
+
+    /**
+     * Time at which the oldest missing number was found missing, or -1 when none is missing.
+     */
+    long oldestMissing() {
+        long oldest = -1;
+        for (Node node : nodes.values()) {
+            for (long noticedAt : node.missing.values()) {
+                if (oldest < 0 || noticedAt < oldest) {
+                    oldest = noticedAt;
+                }
+            }
+        }
+        return oldest;
+    }
+
+    /**
+     * Records a received number, and returns false when it reveals too many missing ones to wait for.
+     */
+    boolean receive(String node, long sequence, long now) {
+        Node state = nodes.get(node);
+        if (state == null) {
+            // First message heard from the instance, the earlier ones predate the listener
+            nodes.put(node, new Node(sequence, now));
+            return true;
+        }
+
+        state.lastReceivedAt = now;
+        if (sequence <= state.last) {
+            state.missing.remove(sequence);
+            return true;
+        }
+        if (sequence - state.last - 1 + state.missing.size() > MAX_MISSING) {
+            return false;
+        }
+        for (long missing = state.last + 1; missing < sequence; missing++) {
+            state.missing.put(missing, now);
+        }
+        state.last = sequence;
+        return true;
+    }
+
+    /**
+     * Stops waiting for numbers the instance announced it will never send. Announced in a message
+     * numbered after them, so they are already missing or received.
+     */
+    void skip(String node, long[] skipped) {
+        Node state = nodes.get(node);
+        if (state == null) {
+            return;
+        }
+        for (long sequence : skipped) {
+            state.missing.remove(sequence);
+        }
+    }
+
+    /**
+     * Forgets the instances not heard of for a while, which have likely been stopped.
+     */
+    void removeIdle(long now, long idleMs) {
+        Iterator<Node> iterator = nodes.values().iterator();
+        while (iterator.hasNext()) {
+            Node node = iterator.next();
+            if (node.missing.isEmpty() && now - node.lastReceivedAt > idleMs) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static class Node {
+        private long last;
+
+        private long lastReceivedAt;
+
+        // Missing numbers, with the time they were found missing
+        private final Map<Long, Long> missing = new HashMap<Long, Long>();
+
+        Node(long last, long lastReceivedAt) {
+            this.last = last;
+            this.lastReceivedAt = lastReceivedAt;
+        }
+    }
+}
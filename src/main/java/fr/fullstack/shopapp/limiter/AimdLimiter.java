@@ -0,0 +1,75 @@
+package fr.fullstack.shopapp.limiter;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Concurrency limit that adapts to observed latency: it grows by one slot per "limit" fast
+ * responses (additive increase) and shrinks by 10% when a response exceeds the latency target
+ * (multiplicative decrease), at most once per target interval.
+ */
+public class AimdLimiter {
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private static final int MIN_LIMIT = 1;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private long lastDecreaseAt = System.nanoTime();
+
+    private final long latencyTargetNanos;
+
+    private volatile double limit;
+
+    private final int maxLimit;
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    public AimdLimiter(int initialLimit, int maxLimit, Duration latencyTarget) {
+        this.limit = Math.min(initialLimit, maxLimit);
+        this.maxLimit = maxLimit;
+        this.latencyTargetNanos = latencyTarget.toNanos();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public void release(long latencyNanos) {
+        int current = inFlight.getAndDecrement();
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (latencyNanos > latencyTargetNanos) {
+                if (now - lastDecreaseAt > latencyTargetNanos) {
+                    limit = Math.max(MIN_LIMIT, limit * BACKOFF_RATIO);
+                    lastDecreaseAt = now;
+                }
+            } else if (current * 2 >= limit) {
+                // Only grow while the current limit is actually used
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+        }
+    }
+
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+}
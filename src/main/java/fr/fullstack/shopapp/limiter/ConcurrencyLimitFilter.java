@@ -0,0 +1,80 @@
+package fr.fullstack.shopapp.limiter;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Rejects requests with a 503 as soon as their endpoint class is at its concurrency limit,
+ * instead of letting them queue for a database connection. Expensive endpoints get a small
+ * limit so that cheap by-id reads always find a free connection.
+ */
+@Component
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+    private static final String RETRY_AFTER_SECONDS = "1";
+
+    private final boolean enabled;
+
+    private final Map<EndpointClass, AimdLimiter> limiters = new EnumMap<>(EndpointClass.class);
+
+    public ConcurrencyLimitFilter(Environment environment, MeterRegistry registry) {
+        this.enabled = environment.getProperty("shopapp.limiter.enabled", Boolean.class, true);
+        for (EndpointClass endpointClass : EndpointClass.values()) {
+            String prefix = "shopapp.limiter." + endpointClass.getKey() + ".";
+            AimdLimiter limiter = new AimdLimiter(
+                    environment.getProperty(prefix + "initial-limit", Integer.class, 20),
+                    environment.getProperty(prefix + "max-limit", Integer.class, 100),
+                    environment.getProperty(prefix + "latency-target", Duration.class, Duration.ofMillis(200))
+            );
+            limiters.put(endpointClass, limiter);
+
+            Gauge.builder("shopapp.limiter.limit", limiter, AimdLimiter::getLimit)
+                    .tag("class", endpointClass.getKey())
+                    .register(registry);
+            Gauge.builder("shopapp.limiter.in-flight", limiter, AimdLimiter::getInFlight)
+                    .tag("class", endpointClass.getKey())
+                    .register(registry);
+            FunctionCounter.builder("shopapp.limiter.rejected", limiter, AimdLimiter::getRejected)
+                    .tag("class", endpointClass.getKey())
+                    .register(registry);
+        }
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        EndpointClass endpointClass = enabled ? EndpointClass.of(request) : null;
+        if (endpointClass == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        AimdLimiter limiter = limiters.get(endpointClass);
+        if (!limiter.tryAcquire()) {
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS);
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            limiter.release(System.nanoTime() - start);
+        }
+    }
+}
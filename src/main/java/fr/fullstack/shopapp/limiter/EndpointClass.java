@@ -0,0 +1,68 @@
+package fr.fullstack.shopapp.limiter;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+import java.util.regex.Pattern;
+
+/**
+ * Groups the API endpoints by cost, each class getting its own concurrency limit.
+ */
+public enum EndpointClass {
+    CHEAP("cheap"), STANDARD("standard"), EXPENSIVE("expensive");
+
+    private static final Pattern BULK_ASSIGNMENT =
+            Pattern.compile("^/api/v1/categories/\\d+/products/(attach|detach)$");
+
+    private static final Pattern BY_ID = Pattern.compile("^/api/v1/(shops|products|categories)/\\d+$");
+
+    private final String key;
+
+    EndpointClass(String key) {
+        this.key = key;
+    }
+
+    /**
+     * Returns the class of the request, or null when the request is not limited.
+     */
+    public static EndpointClass of(HttpServletRequest request) {
+        String path = request.getRequestURI();
+        if (!path.startsWith("/api/v1/")) {
+            return null;
+        }
+
+        // A batch runs up to shopapp.batch.max-operations writes, bulk changes can touch a whole shop
+        if (path.equals("/api/v1/batch") || path.equals("/api/v1/products/price-adjustments")
+                || BULK_ASSIGNMENT.matcher(path).matches()) {
+            return EXPENSIVE;
+        }
+
+        if (!"GET".equals(request.getMethod())) {
+            return STANDARD;
+        }
+
+        // Autocomplete is served from memory
+        if (BY_ID.matcher(path).matches() || path.startsWith("/api/v1/autocomplete/")) {
+            return CHEAP;
+        }
+
+        // Any sort other than name or createdAt falls back to the nbProducts sort
+        String sortBy = request.getParameter("sortBy");
+        if (path.equals("/api/v1/shops") && sortBy != null
+                && !sortBy.equals("name") && !sortBy.equals("createdAt")) {
+            return EXPENSIVE;
+        }
+
+        // Category filters join the product categories, the search ranks every matching localization
+        String categoryId = request.getParameter("categoryId");
+        if (path.equals("/api/v1/products") && categoryId != null && !categoryId.isEmpty()
+                || path.equals("/api/v1/products/search")) {
+            return EXPENSIVE;
+        }
+
+        return STANDARD;
+    }
+
+    public String getKey() {
+        return key;
+    }
+}
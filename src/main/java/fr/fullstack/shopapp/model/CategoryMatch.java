@@ -0,0 +1,8 @@
+package fr.fullstack.shopapp.model;
+
+/**
+ * Whether a product filtered on several categories must be in all of them or in any of them.
+ */
+public enum CategoryMatch {
+    ALL, ANY
+}
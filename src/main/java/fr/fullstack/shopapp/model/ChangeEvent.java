@@ -0,0 +1,78 @@
+package fr.fullstack.shopapp.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.Instant;
+
+/**
+ * Outbox row written in the same transaction as the change it describes.
+ * Ids come from an identity column, so they are consecutive unless a transaction rolls back.
+ */
+@Entity
+@Table(name = "change_events", indexes = @Index(name = "idx_change_events_created_at", columnList = "created_at"))
+public class ChangeEvent {
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Instant createdAt;
+
+    @Column(nullable = false)
+    private long entityId;
+
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    private ChangeEntityType entityType;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private long id;
+
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    private ChangeOperation operation;
+
+    @Column
+    private Long shopId;
+
+    protected ChangeEvent() {
+    }
+
+    public ChangeEvent(ChangeEntityType entityType, ChangeOperation operation, long entityId, Long shopId) {
+        this.entityType = entityType;
+        this.operation = operation;
+        this.entityId = entityId;
+        this.shopId = shopId;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public long getEntityId() {
+        return entityId;
+    }
+
+    public ChangeEntityType getEntityType() {
+        return entityType;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public ChangeOperation getOperation() {
+        return operation;
+    }
+
+    public Long getShopId() {
+        return shopId;
+    }
+}
@@ -0,0 +1,5 @@
+package fr.fullstack.shopapp.model;
+
+public enum ChangeOperation {
+    CREATED, UPDATED, DELETED
+}
@@ -0,0 +1,147 @@
+package fr.fullstack.shopapp.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.Instant;
+
+/**
+ * Audit record of a bulk price change: its criteria, how many products matched and how far the
+ * chunked update went. The service updates the counters with plain SQL, see PriceAdjustmentService.
+ */
+@Entity
+@Table(name = "price_adjustments")
+public class PriceAdjustment {
+    @Column(name = "category_id")
+    private Long categoryId;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Instant createdAt;
+
+    @Column(length = 1000)
+    private String error;
+
+    @Column(name = "finished_at")
+    private Instant finishedAt;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private long id;
+
+    // Cursor of the chunked update, products are updated in id order
+    @Column(name = "last_product_id", nullable = false)
+    private long lastProductId;
+
+    @Column(name = "max_price")
+    private Float maxPrice;
+
+    @Column(name = "min_price")
+    private Float minPrice;
+
+    @Column(name = "products_matched", nullable = false)
+    private long productsMatched;
+
+    @Column(name = "products_updated", nullable = false)
+    private long productsUpdated;
+
+    @Column(name = "shop_id")
+    private Long shopId;
+
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    private PriceAdjustmentStatus status;
+
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    private PriceAdjustmentType type;
+
+    @Column(nullable = false)
+    private float value;
+
+    protected PriceAdjustment() {
+    }
+
+    public PriceAdjustment(
+            Long shopId,
+            Long categoryId,
+            Float minPrice,
+            Float maxPrice,
+            PriceAdjustmentType type,
+            float value,
+            long productsMatched,
+            PriceAdjustmentStatus status
+    ) {
+        this.shopId = shopId;
+        this.categoryId = categoryId;
+        this.minPrice = minPrice;
+        this.maxPrice = maxPrice;
+        this.type = type;
+        this.value = value;
+        this.productsMatched = productsMatched;
+        this.status = status;
+    }
+
+    public Long getCategoryId() {
+        return categoryId;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getLastProductId() {
+        return lastProductId;
+    }
+
+    public Float getMaxPrice() {
+        return maxPrice;
+    }
+
+    public Float getMinPrice() {
+        return minPrice;
+    }
+
+    public long getProductsMatched() {
+        return productsMatched;
+    }
+
+    public long getProductsUpdated() {
+        return productsUpdated;
+    }
+
+    public Long getShopId() {
+        return shopId;
+    }
+
+    public PriceAdjustmentStatus getStatus() {
+        return status;
+    }
+
+    public PriceAdjustmentType getType() {
+        return type;
+    }
+
+    public float getValue() {
+        return value;
+    }
+}
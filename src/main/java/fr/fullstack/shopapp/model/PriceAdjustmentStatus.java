@@ -0,0 +1,9 @@
+package fr.fullstack.shopapp.model;
+
+public enum PriceAdjustmentStatus {
+    // Only counted, never stored
+    DRY_RUN,
+    RUNNING,
+    COMPLETED,
+    FAILED
+}
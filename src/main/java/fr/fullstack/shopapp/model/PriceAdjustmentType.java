@@ -0,0 +1,8 @@
+package fr.fullstack.shopapp.model;
+
+public enum PriceAdjustmentType {
+    // Amount added to the price, negative for a discount
+    AMOUNT,
+    // Percentage of the price added to it, negative for a discount
+    PERCENT
+}
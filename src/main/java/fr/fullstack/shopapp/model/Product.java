@@ -2,38 +2,66 @@ package fr.fullstack.shopapp.model;
 
 import jakarta.persistence.CascadeType;
 import jakarta.persistence.Column;
+import jakarta.persistence.ConstraintMode;
 import jakarta.persistence.Entity;
+import jakarta.persistence.ForeignKey;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.JoinTable;
 import jakarta.persistence.ManyToMany;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.OneToMany;
 import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.PositiveOrZero;
 import jakarta.validation.constraints.Size;
+import org.hibernate.annotations.BatchSize;
+
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Stored in a table hash-partitioned on shop_id (see sql/create_tables.sql).
+ * The partitioned table has no primary key on id alone, so the join tables
+ * pointing to products are mapped without foreign keys, checked by triggers instead.
+ */
 @Entity
-@Table(name = "products")
+@Table(
+        name = "products",
+        indexes = @Index(name = "idx_products_id", columnList = "id"),
+        uniqueConstraints = @UniqueConstraint(name = "uk_products_shop_id_id", columnNames = {"shop_id", "id"})
+)
 public class Product {
+    @BatchSize(size = 100)
     @ManyToMany
     @JoinTable(
             name = "products_categories",
-            joinColumns = @JoinColumn(name = "product_id"),
-            inverseJoinColumns = @JoinColumn(name = "category_id"))
+            joinColumns = @JoinColumn(
+                    name = "product_id", foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT)),
+            inverseJoinColumns = @JoinColumn(name = "category_id"),
+            uniqueConstraints = @UniqueConstraint(
+                    name = "uk_products_categories", columnNames = {"product_id", "category_id"}),
+            // The unique constraint indexes the categories of a product, this one the products of a category
+            indexes = @Index(name = "idx_products_categories_category_id_product_id",
+                    columnList = "category_id, product_id"))
     private List<Category> categories = new ArrayList<Category>();
 
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO)
     private long id;
 
+    @BatchSize(size = 100)
     @OneToMany(cascade = {CascadeType.ALL}, orphanRemoval = true)
+    @JoinTable(
+            name = "products_localized_product",
+            joinColumns = @JoinColumn(
+                    name = "product_id", foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT)),
+            inverseJoinColumns = @JoinColumn(name = "localized_product_id"))
     @Size(min = 1, message = "At least one name and one description must be provided")
     private List<@Valid LocalizedProduct> localizedProduct = new ArrayList<LocalizedProduct>();
 
@@ -42,7 +70,9 @@ public class Product {
     @NotNull(message = "Price may not be null")
     private float price;
 
+    // Partition key
     @ManyToOne
+    @JoinColumn(name = "shop_id")
     private Shop shop;
 
     public List<Category> getCategories() {
@@ -2,6 +2,8 @@ package fr.fullstack.shopapp.model;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.ColumnDefault;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.Formula;
 
@@ -34,6 +36,12 @@ public class Shop {
     @JsonFormat(pattern = "yyyy-MM-dd")
     private LocalDate createdAt;
 
+    // Set when the shop is deleted, the row itself is removed once its products are detached
+    @Column(nullable = false)
+    @ColumnDefault("false")
+    @JsonIgnore
+    private boolean deleted;
+
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO)
     private long id;
@@ -52,6 +60,7 @@ public class Shop {
     @Formula(value = "(SELECT COUNT(*) FROM products p WHERE p.shop_id = id)")
     private Long nbProducts;
 
+    @BatchSize(size = 100)
     @OneToMany(cascade = {CascadeType.ALL})
     private List<@Valid OpeningHoursShop> openingHours = new ArrayList<OpeningHoursShop>();
 
@@ -63,6 +72,10 @@ public class Shop {
         return createdAt;
     }
 
+    public boolean getDeleted() {
+        return deleted;
+    }
+
     public long getId() {
         return id;
     }
@@ -87,6 +100,14 @@ public class Shop {
         return this.products;
     }
 
+    public void setCreatedAt(LocalDate createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public void setDeleted(boolean deleted) {
+        this.deleted = deleted;
+    }
+
     public void setId(long id) {
         this.id = id;
     }
@@ -0,0 +1,101 @@
+package fr.fullstack.shopapp.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.Instant;
+
+/**
+ * Background purge of a deleted shop.
+ * The worker updates the row with plain SQL, see ShopDeletionService.
+ */
+@Entity
+@Table(name = "shop_deletion_jobs", indexes = @Index(name = "idx_shop_deletion_jobs_status", columnList = "status"))
+public class ShopDeletionJob {
+    // Runs started, failed jobs are retried until shopapp.shop-purge.max-attempts
+    @Column(nullable = false)
+    @ColumnDefault("0")
+    private int attempts;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Instant createdAt;
+
+    @Column(length = 1000)
+    private String error;
+
+    @Column(name = "finished_at")
+    private Instant finishedAt;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private long id;
+
+    @Column(nullable = false)
+    private long productsDetached;
+
+    @Column(nullable = false)
+    private long shopId;
+
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    private ShopDeletionStatus status;
+
+    @UpdateTimestamp
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+
+    protected ShopDeletionJob() {
+    }
+
+    public ShopDeletionJob(long shopId) {
+        this.shopId = shopId;
+        this.status = ShopDeletionStatus.PENDING;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getProductsDetached() {
+        return productsDetached;
+    }
+
+    public long getShopId() {
+        return shopId;
+    }
+
+    public ShopDeletionStatus getStatus() {
+        return status;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+}
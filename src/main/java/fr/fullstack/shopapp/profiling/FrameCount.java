@@ -0,0 +1,23 @@
+package fr.fullstack.shopapp.profiling;
+
+/**
+ * Samples or sampled bytes attributed to a method of the application.
+ */
+public class FrameCount {
+    private final long count;
+
+    private final String frame;
+
+    public FrameCount(String frame, long count) {
+        this.frame = frame;
+        this.count = count;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public String getFrame() {
+        return frame;
+    }
+}
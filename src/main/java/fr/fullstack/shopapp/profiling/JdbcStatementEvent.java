@@ -0,0 +1,36 @@
+package fr.fullstack.shopapp.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * JFR event of a JDBC statement, disabled unless a recording enables it.
+ */
+@Name(JdbcStatementEvent.NAME)
+@Label("JDBC Statement")
+@Category({"Shop App", "JDBC"})
+@Description("Statement executed through the application DataSource")
+@Enabled(false)
+@StackTrace(false)
+@Threshold("10 ms")
+public class JdbcStatementEvent extends Event {
+    public static final String NAME = "fr.fullstack.shopapp.JdbcStatement";
+
+    @Label("Batch Size")
+    int batchSize;
+
+    @Label("Repository Method")
+    String caller;
+
+    @Label("SQL")
+    String sql;
+
+    @Label("Success")
+    boolean success;
+}
@@ -0,0 +1,61 @@
+package fr.fullstack.shopapp.profiling;
+
+import fr.fullstack.shopapp.querylog.RepositoryMethodTracker;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Emits a {@link JdbcStatementEvent} per statement while a recording enables it. Outside of a
+ * recording the cost is one event allocation and an enabled check.
+ */
+@Component
+public class JfrQueryListener implements QueryExecutionListener {
+    private static final String EVENT = JfrQueryListener.class.getName();
+
+    private static final int MAX_STATEMENT_LENGTH = 2000;
+
+    @Override
+    public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        JdbcStatementEvent event = execInfo.getCustomValue(EVENT, JdbcStatementEvent.class);
+        if (event == null) {
+            return;
+        }
+
+        event.end();
+        // Below the threshold the statement is not even built
+        if (event.shouldCommit()) {
+            event.batchSize = execInfo.getBatchSize();
+            event.caller = RepositoryMethodTracker.currentMethod();
+            event.sql = statement(queryInfoList);
+            event.success = execInfo.isSuccess();
+            event.commit();
+        }
+    }
+
+    @Override
+    public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        JdbcStatementEvent event = new JdbcStatementEvent();
+        if (event.isEnabled()) {
+            event.begin();
+            execInfo.addCustomValue(EVENT, event);
+        }
+    }
+
+    private String statement(List<QueryInfo> queryInfoList) {
+        StringBuilder statement = new StringBuilder();
+        for (QueryInfo queryInfo : queryInfoList) {
+            if (statement.length() > 0) {
+                statement.append("; ");
+            }
+            statement.append(queryInfo.getQuery());
+            if (statement.length() > MAX_STATEMENT_LENGTH) {
+                return statement.substring(0, MAX_STATEMENT_LENGTH);
+            }
+        }
+        return statement.toString();
+    }
+}
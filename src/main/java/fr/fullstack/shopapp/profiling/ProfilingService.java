@@ -0,0 +1,365 @@
+package fr.fullstack.shopapp.profiling;
+
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.Configuration;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.ValueDescriptor;
+import jdk.jfr.consumer.RecordedClass;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs one Java Flight Recorder session at a time, for a bounded duration. The settings start from
+ * the JDK default profile, made for production, and only refine the events looked at here: CPU and
+ * allocation samples, lock contention, socket I/O and the JDBC statements of the application.
+ * Samples are aggregated as they are read, the other events are sent to the live stream.
+ */
+@Service
+public class ProfilingService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProfilingService.class);
+
+    private static final String APPLICATION_PACKAGE = "fr.fullstack.shopapp.";
+
+    private static final String PROFILING_PACKAGE = "fr.fullstack.shopapp.profiling.";
+
+    // Fields every event has, already in the record
+    private static final Set<String> COMMON_FIELDS = Set.of("duration", "eventThread", "stackTrace", "startTime");
+
+    // Events of the default profile carrying the environment, the system properties or command lines
+    private static final List<String> ENVIRONMENT_EVENTS = List.of(
+            "jdk.InitialEnvironmentVariable",
+            "jdk.InitialSystemProperty",
+            "jdk.JVMInformation",
+            "jdk.ProcessStart",
+            "jdk.SystemProcess"
+    );
+
+    private static final Set<String> STREAMED_EVENTS = Set.of(
+            JdbcStatementEvent.NAME,
+            "jdk.GarbageCollection",
+            "jdk.JavaMonitorEnter",
+            "jdk.SocketRead",
+            "jdk.SocketWrite",
+            "jdk.ThreadPark"
+    );
+
+    private static final long SUBSCRIBER_GRACE_MS = 5000;
+
+    @Value("${shopapp.profiling.allocation-throttle:150/s}")
+    private String allocationThrottle;
+
+    private volatile ProfilingSession current;
+
+    private final Map<String, String> defaultSettings;
+
+    @Value("${shopapp.profiling.directory:${java.io.tmpdir}}")
+    private Path directory;
+
+    @Value("${shopapp.profiling.execution-sample-period:20 ms}")
+    private String executionSamplePeriod;
+
+    @Value("${shopapp.profiling.jdbc-threshold:10 ms}")
+    private String jdbcThreshold;
+
+    private volatile ProfilingSession last;
+
+    private long lastId;
+
+    @Value("${shopapp.profiling.lock-threshold:10 ms}")
+    private String lockThreshold;
+
+    @Value("${shopapp.profiling.max-duration:5m}")
+    private Duration maxDuration;
+
+    @Value("${shopapp.profiling.max-size:100MB}")
+    private DataSize maxSize;
+
+    @Value("${shopapp.profiling.max-streamed-events-per-second:50}")
+    private int maxStreamedEventsPerSecond;
+
+    private final TaskScheduler taskScheduler;
+
+    public ProfilingService(TaskScheduler taskScheduler) {
+        this.taskScheduler = taskScheduler;
+        try {
+            this.defaultSettings = Configuration.getConfiguration("default").getSettings();
+        } catch (IOException | ParseException e) {
+            throw new IllegalStateException("The default JFR configuration cannot be read", e);
+        }
+        FlightRecorder.register(JdbcStatementEvent.class);
+    }
+
+    public Optional<ProfilingSession> getSession() {
+        ProfilingSession session = current;
+        return Optional.ofNullable(session != null ? session : last);
+    }
+
+    /**
+     * Returns the file of the last finished recording.
+     */
+    public Optional<Path> getRecording() {
+        ProfilingSession session = last;
+        if (session == null || session.getState() != ProfilingState.COMPLETED || !Files.exists(session.file)) {
+            return Optional.empty();
+        }
+        return Optional.of(session.file);
+    }
+
+    public Optional<ProfilingSummary> getSummary(int limit) {
+        return getSession().map(session -> new ProfilingSummary(
+                session,
+                session.executionSamples.sum(),
+                top(session.cpuSamples, limit),
+                session.allocationSamples.sum(),
+                top(session.allocatedBytes, limit)
+        ));
+    }
+
+    /**
+     * Starts a recording, or returns empty when one is already running.
+     */
+    public synchronized Optional<ProfilingSession> start(Duration duration) {
+        if (current != null) {
+            return Optional.empty();
+        }
+
+        // Only the last recording is kept on disk
+        if (last != null) {
+            deleteFile(last);
+        }
+
+        long id = ++lastId;
+        Instant startedAt = Instant.now();
+        Duration boxed = duration.compareTo(maxDuration) > 0 ? maxDuration : duration;
+        RecordingStream stream = new RecordingStream();
+        stream.setSettings(settings());
+        stream.setMaxSize(maxSize.toBytes());
+        ProfilingSession session = new ProfilingSession(
+                id, stream, directory.resolve("shopapp-" + id + ".jfr"), startedAt, startedAt.plus(boxed)
+        );
+
+        stream.onEvent("jdk.ExecutionSample", event -> {
+            session.executionSamples.increment();
+            count(session.cpuSamples, event, 1);
+        });
+        stream.onEvent("jdk.ObjectAllocationSample", event -> {
+            session.allocationSamples.increment();
+            count(session.allocatedBytes, event, event.getLong("weight"));
+        });
+        for (String name : STREAMED_EVENTS) {
+            stream.onEvent(name, event -> publish(session, event));
+        }
+        stream.startAsync();
+
+        current = session;
+        session.timeout = taskScheduler.schedule(() -> finish(session), session.getEndsAt());
+        LOGGER.info("Profiling session {} started for {}", session.getId(), boxed);
+        return Optional.of(session);
+    }
+
+    /**
+     * Ends the running recording before its time, or returns empty when none is running.
+     */
+    public Optional<ProfilingSession> stop() {
+        ProfilingSession session = current;
+        if (session == null) {
+            return Optional.empty();
+        }
+        finish(session);
+        return Optional.of(session);
+    }
+
+    @PreDestroy
+    public void stopOnShutdown() {
+        stop();
+    }
+
+    /**
+     * Streams the events of the running recording, or returns empty when none is running.
+     */
+    public Optional<SseEmitter> subscribe() {
+        ProfilingSession session = current;
+        if (session == null) {
+            return Optional.empty();
+        }
+
+        long remaining = Duration.between(Instant.now(), session.getEndsAt()).toMillis();
+        SseEmitter emitter = new SseEmitter(Math.max(remaining, 0) + SUBSCRIBER_GRACE_MS);
+        emitter.onCompletion(() -> session.subscribers.remove(emitter));
+        emitter.onError(e -> session.subscribers.remove(emitter));
+        emitter.onTimeout(emitter::complete);
+        session.subscribers.add(emitter);
+        // The session may have finished before the emitter was added
+        if (session.getState() != ProfilingState.RUNNING) {
+            emitter.complete();
+        }
+        return Optional.of(emitter);
+    }
+
+    /**
+     * Method of the application closest to the top of the stack, skipping the generated proxies.
+     */
+    private String applicationFrame(RecordedStackTrace stackTrace) {
+        if (stackTrace == null) {
+            return null;
+        }
+        for (RecordedFrame frame : stackTrace.getFrames()) {
+            if (!frame.isJavaFrame()) {
+                continue;
+            }
+            String type = frame.getMethod().getType().getName();
+            if (type.startsWith(APPLICATION_PACKAGE) && !type.startsWith(PROFILING_PACKAGE) && !type.contains("$$")) {
+                return type + "." + frame.getMethod().getName();
+            }
+        }
+        return null;
+    }
+
+    private void count(Map<String, LongAdder> counts, RecordedEvent event, long value) {
+        String frame = applicationFrame(event.getStackTrace());
+        if (frame != null) {
+            counts.computeIfAbsent(frame, key -> new LongAdder()).add(value);
+        }
+    }
+
+    private void deleteFile(ProfilingSession session) {
+        try {
+            Files.deleteIfExists(session.file);
+        } catch (IOException e) {
+            LOGGER.warn("Recording {} cannot be deleted", session.file, e);
+        }
+    }
+
+    private synchronized void finish(ProfilingSession session) {
+        if (current != session) {
+            return;
+        }
+
+        session.timeout.cancel(false);
+        try {
+            session.stream.dump(session.file);
+            session.complete(Files.size(session.file));
+            LOGGER.info("Profiling session {} written to {}", session.getId(), session.file);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Profiling session {} failed", session.getId(), e);
+            session.fail(String.valueOf(e.getMessage()));
+        } finally {
+            session.stream.close();
+            for (SseEmitter emitter : session.subscribers) {
+                emitter.complete();
+            }
+            last = session;
+            current = null;
+        }
+    }
+
+    private void publish(ProfilingSession session, RecordedEvent event) {
+        if (session.subscribers.isEmpty()) {
+            return;
+        }
+        // Events over the rate are dropped from the stream, they stay in the recording
+        long window = System.currentTimeMillis() / 1000;
+        if (window != session.streamWindow) {
+            session.streamWindow = window;
+            session.streamedInWindow = 0;
+        }
+        if (session.streamedInWindow++ >= maxStreamedEventsPerSecond) {
+            return;
+        }
+
+        Map<String, Object> record = toRecord(event);
+        for (SseEmitter emitter : session.subscribers) {
+            try {
+                emitter.send(SseEmitter.event().name(event.getEventType().getName()).data(record));
+            } catch (IOException | IllegalStateException e) {
+                session.subscribers.remove(emitter);
+                emitter.completeWithError(e);
+            }
+        }
+    }
+
+    private Map<String, String> settings() {
+        Map<String, String> settings = new HashMap<String, String>(defaultSettings);
+        settings.put("jdk.ExecutionSample#enabled", "true");
+        settings.put("jdk.ExecutionSample#period", executionSamplePeriod);
+        settings.put("jdk.NativeMethodSample#enabled", "false");
+        settings.put("jdk.ObjectAllocationSample#enabled", "true");
+        settings.put("jdk.ObjectAllocationSample#throttle", allocationThrottle);
+        settings.put("jdk.JavaMonitorEnter#enabled", "true");
+        settings.put("jdk.JavaMonitorEnter#threshold", lockThreshold);
+        settings.put("jdk.ThreadPark#enabled", "true");
+        settings.put("jdk.ThreadPark#threshold", lockThreshold);
+        settings.put("jdk.SocketRead#enabled", "true");
+        settings.put("jdk.SocketRead#threshold", jdbcThreshold);
+        settings.put("jdk.SocketWrite#enabled", "true");
+        settings.put("jdk.SocketWrite#threshold", jdbcThreshold);
+        settings.put(JdbcStatementEvent.NAME + "#enabled", "true");
+        settings.put(JdbcStatementEvent.NAME + "#threshold", jdbcThreshold);
+        // Walks the heap when the recording is dumped
+        settings.put("jdk.OldObjectSample#enabled", "false");
+        // They would write the datasource password in the downloadable recording
+        for (String event : ENVIRONMENT_EVENTS) {
+            settings.put(event + "#enabled", "false");
+        }
+        return settings;
+    }
+
+    private Map<String, Object> toRecord(RecordedEvent event) {
+        Map<String, Object> record = new LinkedHashMap<String, Object>();
+        record.put("type", event.getEventType().getName());
+        record.put("startTime", event.getStartTime());
+        record.put("durationMs", event.getDuration().toNanos() / 1_000_000.0);
+        if (event.getThread() != null) {
+            record.put("thread", event.getThread().getJavaName());
+        }
+        for (ValueDescriptor field : event.getFields()) {
+            if (COMMON_FIELDS.contains(field.getName())) {
+                continue;
+            }
+            Object value = event.getValue(field.getName());
+            if (value instanceof RecordedClass recordedClass) {
+                record.put(field.getName(), recordedClass.getName());
+            } else if (value instanceof String || value instanceof Number || value instanceof Boolean) {
+                record.put(field.getName(), value);
+            }
+        }
+        String frame = applicationFrame(event.getStackTrace());
+        if (frame != null) {
+            record.put("frame", frame);
+        }
+        return record;
+    }
+
+    private List<FrameCount> top(Map<String, LongAdder> counts, int limit) {
+        List<FrameCount> frames = new ArrayList<FrameCount>();
+        for (Map.Entry<String, LongAdder> entry : counts.entrySet()) {
+            frames.add(new FrameCount(entry.getKey(), entry.getValue().sum()));
+        }
+        frames.sort((a, b) -> Long.compare(b.getCount(), a.getCount()));
+        return frames.size() > limit ? frames.subList(0, limit) : frames;
+    }
+}
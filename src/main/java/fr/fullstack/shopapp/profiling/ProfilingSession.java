@@ -0,0 +1,101 @@
+package fr.fullstack.shopapp.profiling;
+
+import jdk.jfr.consumer.RecordingStream;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A time-boxed recording, with the aggregates of its samples and the clients of its live stream.
+ */
+public class ProfilingSession {
+    final Map<String, LongAdder> allocatedBytes = new ConcurrentHashMap<String, LongAdder>();
+
+    final LongAdder allocationSamples = new LongAdder();
+
+    final Map<String, LongAdder> cpuSamples = new ConcurrentHashMap<String, LongAdder>();
+
+    private final Instant endsAt;
+
+    private volatile String error;
+
+    final LongAdder executionSamples = new LongAdder();
+
+    final Path file;
+
+    private volatile Instant finishedAt;
+
+    private final long id;
+
+    private volatile long recordingSize;
+
+    private final Instant startedAt;
+
+    private volatile ProfilingState state = ProfilingState.RUNNING;
+
+    final RecordingStream stream;
+
+    // Only touched by the thread dispatching the events of the stream
+    long streamedInWindow;
+
+    long streamWindow;
+
+    final List<SseEmitter> subscribers = new CopyOnWriteArrayList<SseEmitter>();
+
+    volatile ScheduledFuture<?> timeout;
+
+    ProfilingSession(long id, RecordingStream stream, Path file, Instant startedAt, Instant endsAt) {
+        this.id = id;
+        this.stream = stream;
+        this.file = file;
+        this.startedAt = startedAt;
+        this.endsAt = endsAt;
+    }
+
+    public Instant getEndsAt() {
+        return endsAt;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getRecordingSize() {
+        return recordingSize;
+    }
+
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public ProfilingState getState() {
+        return state;
+    }
+
+    void complete(long recordingSize) {
+        this.recordingSize = recordingSize;
+        this.finishedAt = Instant.now();
+        this.state = ProfilingState.COMPLETED;
+    }
+
+    void fail(String error) {
+        this.error = error;
+        this.finishedAt = Instant.now();
+        this.state = ProfilingState.FAILED;
+    }
+}
@@ -0,0 +1,5 @@
+package fr.fullstack.shopapp.profiling;
+
+public enum ProfilingState {
+    RUNNING, COMPLETED, FAILED
+}
@@ -0,0 +1,52 @@
+package fr.fullstack.shopapp.profiling;
+
+import java.util.List;
+
+/**
+ * Top frames of fr.fullstack.shopapp in the CPU and allocation samples of a recording.
+ */
+public class ProfilingSummary {
+    private final List<FrameCount> allocatedBytes;
+
+    private final long allocationSamples;
+
+    private final List<FrameCount> cpuSamples;
+
+    private final long executionSamples;
+
+    private final ProfilingSession session;
+
+    public ProfilingSummary(
+            ProfilingSession session,
+            long executionSamples,
+            List<FrameCount> cpuSamples,
+            long allocationSamples,
+            List<FrameCount> allocatedBytes
+    ) {
+        this.session = session;
+        this.executionSamples = executionSamples;
+        this.cpuSamples = cpuSamples;
+        this.allocationSamples = allocationSamples;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    public List<FrameCount> getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public long getAllocationSamples() {
+        return allocationSamples;
+    }
+
+    public List<FrameCount> getCpuSamples() {
+        return cpuSamples;
+    }
+
+    public long getExecutionSamples() {
+        return executionSamples;
+    }
+
+    public ProfilingSession getSession() {
+        return session;
+    }
+}
@@ -0,0 +1,100 @@
+package fr.fullstack.shopapp.projection;
+
+import fr.fullstack.shopapp.exception.InvalidRequestException;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Fields requested with the fields parameter, e.g. "name,price,shop.name".
+ * A nested field ("shop.name") selects the object and some of its fields, the object alone selects
+ * all of them. The id is always part of the set.
+ */
+public final class FieldSet {
+    private final Set<String> fields;
+
+    private final Map<String, FieldSet> nested;
+
+    private FieldSet(Set<String> fields, Map<String, FieldSet> nested) {
+        this.fields = fields;
+        this.nested = nested;
+    }
+
+    /**
+     * Parses the parameter against the fields of the resource and of its nested objects.
+     */
+    public static FieldSet parse(String value, Set<String> allowed, Map<String, Set<String>> allowedNested) {
+        Set<String> fields = new LinkedHashSet<String>();
+        fields.add("id");
+        Map<String, Set<String>> nestedFields = new HashMap<String, Set<String>>();
+        for (String field : value.split(",")) {
+            field = field.trim();
+            if (field.isEmpty()) {
+                continue;
+            }
+
+            int dot = field.indexOf('.');
+            String name = dot < 0 ? field : field.substring(0, dot);
+            if (!allowed.contains(name)) {
+                throw new InvalidRequestException("Unknown field " + name + ", expected one of " + allowed);
+            }
+            fields.add(name);
+            if (!allowedNested.containsKey(name)) {
+                if (dot >= 0) {
+                    throw new InvalidRequestException("Field " + name + " has no nested fields");
+                }
+                continue;
+            }
+
+            Set<String> selected = nestedFields.computeIfAbsent(name, key -> new LinkedHashSet<String>());
+            if (dot < 0) {
+                selected.addAll(allowedNested.get(name));
+            } else if (allowedNested.get(name).contains(field.substring(dot + 1))) {
+                selected.add(field.substring(dot + 1));
+            } else {
+                throw new InvalidRequestException(
+                        "Unknown field " + field + ", expected one of " + allowedNested.get(name));
+            }
+        }
+
+        Map<String, FieldSet> nested = new HashMap<String, FieldSet>();
+        nestedFields.forEach((name, selected) -> {
+            Set<String> nestedSet = new LinkedHashSet<String>();
+            nestedSet.add("id");
+            nestedSet.addAll(selected);
+            nested.put(name, new FieldSet(nestedSet, Collections.emptyMap()));
+        });
+        return new FieldSet(fields, nested);
+    }
+
+    public boolean contains(String field) {
+        return fields.contains(field);
+    }
+
+    public Set<String> getFields() {
+        return fields;
+    }
+
+    public FieldSet getNested(String field) {
+        return nested.get(field);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder value = new StringBuilder();
+        for (String field : fields) {
+            FieldSet nestedSet = nested.get(field);
+            if (nestedSet == null) {
+                value.append(field).append(',');
+                continue;
+            }
+            for (String nestedField : nestedSet.fields) {
+                value.append(field).append('.').append(nestedField).append(',');
+            }
+        }
+        return value.substring(0, value.length() - 1);
+    }
+}
@@ -0,0 +1,118 @@
+package fr.fullstack.shopapp.projection;
+
+import fr.fullstack.shopapp.model.Category;
+import fr.fullstack.shopapp.model.LocalizedProduct;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TypedQuery;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Loads products with only the requested fields. The shop is only joined when it is asked for, then
+ * loaded with its own field set, and each requested collection costs one query for the whole page.
+ */
+@Component
+public class ProductProjection {
+    public static final Set<String> FIELDS = Set.of("categories", "id", "localizedProducts", "price", "shop");
+
+    @PersistenceContext
+    private EntityManager em;
+
+    @Autowired
+    private ShopProjection shopProjection;
+
+    public static FieldSet parse(String fields) {
+        return FieldSet.parse(fields, FIELDS, Map.of("shop", ShopProjection.FIELDS));
+    }
+
+    public long count(String where, Map<String, Object> parameters) {
+        TypedQuery<Long> query = em.createQuery("SELECT COUNT(p) FROM Product p " + where, Long.class);
+        parameters.forEach(query::setParameter);
+        return query.getSingleResult();
+    }
+
+    public Slice<Map<String, Object>> findPage(
+            String where,
+            Map<String, Object> parameters,
+            FieldSet fields,
+            Pageable pageable
+    ) {
+        if (pageable.isUnpaged()) {
+            return Projections.slice(find(where, parameters, fields, 0, -1), pageable);
+        }
+        return Projections.slice(
+                find(where, parameters, fields, pageable.getOffset(), pageable.getPageSize() + 1), pageable
+        );
+    }
+
+    private List<Map<String, Object>> find(
+            String where,
+            Map<String, Object> parameters,
+            FieldSet fields,
+            long offset,
+            int limit
+    ) {
+        StringBuilder jpql = new StringBuilder("SELECT p.id AS id");
+        if (fields.contains("price")) {
+            jpql.append(", p.price AS price");
+        }
+        if (fields.contains("shop")) {
+            jpql.append(", s.id AS shopId FROM Product p LEFT JOIN p.shop s ");
+        } else {
+            jpql.append(" FROM Product p ");
+        }
+        jpql.append(where).append(" ORDER BY p.id ASC");
+
+        TypedQuery<Tuple> query = em.createQuery(jpql.toString(), Tuple.class);
+        parameters.forEach(query::setParameter);
+        query.setFirstResult((int) offset);
+        if (limit >= 0) {
+            query.setMaxResults(limit);
+        }
+        List<Tuple> tuples = query.getResultList();
+        Map<Long, Map<String, Object>> products = Projections.rows(tuples, fields);
+        if (products.isEmpty()) {
+            return List.of();
+        }
+
+        if (fields.contains("shop")) {
+            Map<Long, Long> shopIds = new HashMap<Long, Long>();
+            for (Tuple tuple : tuples) {
+                if (tuple.get("shopId") != null) {
+                    shopIds.put((Long) tuple.get("id"), (Long) tuple.get("shopId"));
+                }
+            }
+            Map<Long, Map<String, Object>> shops = shopProjection.findByIds(
+                    Set.copyOf(shopIds.values()), fields.getNested("shop")
+            );
+            shopIds.forEach((productId, shopId) -> products.get(productId).put("shop", shops.get(shopId)));
+        }
+
+        if (fields.contains("categories")) {
+            List<Object[]> categories = em.createQuery(
+                            "SELECT p.id, c FROM Product p JOIN p.categories c WHERE p.id IN :ids", Object[].class)
+                    .setParameter("ids", products.keySet())
+                    .getResultList();
+            Projections.addToLists(products, "categories", categories, Category.class);
+        }
+
+        if (fields.contains("localizedProducts")) {
+            List<Object[]> localizedProducts = em.createQuery(
+                            "SELECT p.id, l FROM Product p JOIN p.localizedProduct l WHERE p.id IN :ids",
+                            Object[].class)
+                    .setParameter("ids", products.keySet())
+                    .getResultList();
+            Projections.addToLists(products, "localizedProducts", localizedProducts, LocalizedProduct.class);
+        }
+        return List.copyOf(products.values());
+    }
+}
@@ -0,0 +1,69 @@
+package fr.fullstack.shopapp.projection;
+
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TupleElement;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+final class Projections {
+    private Projections() {
+    }
+
+    /**
+     * Fills a list field of the rows from (id, element) pairs. Rows without elements get an empty list.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> void addToLists(
+            Map<Long, Map<String, Object>> rows,
+            String field,
+            List<Object[]> pairs,
+            Class<T> type
+    ) {
+        for (Map<String, Object> row : rows.values()) {
+            row.put(field, new ArrayList<T>());
+        }
+        for (Object[] pair : pairs) {
+            Map<String, Object> row = rows.get((Long) pair[0]);
+            if (row != null) {
+                ((List<T>) row.get(field)).add(type.cast(pair[1]));
+            }
+        }
+    }
+
+    /**
+     * One map per tuple, keyed by id, with the fields in the requested order. The fields that are
+     * not columns are left null until they are loaded.
+     */
+    static Map<Long, Map<String, Object>> rows(List<Tuple> tuples, FieldSet fields) {
+        Map<Long, Map<String, Object>> rows = new LinkedHashMap<Long, Map<String, Object>>();
+        for (Tuple tuple : tuples) {
+            Set<String> columns = new HashSet<String>();
+            for (TupleElement<?> element : tuple.getElements()) {
+                columns.add(element.getAlias());
+            }
+
+            Map<String, Object> row = new LinkedHashMap<String, Object>();
+            for (String field : fields.getFields()) {
+                row.put(field, columns.contains(field) ? tuple.get(field) : null);
+            }
+            rows.put((Long) tuple.get("id"), row);
+        }
+        return rows;
+    }
+
+    // The query asked for one more row than the page size to know if there is a next page
+    static <T> Slice<T> slice(List<T> rows, Pageable pageable) {
+        if (pageable.isUnpaged() || rows.size() <= pageable.getPageSize()) {
+            return new SliceImpl<T>(rows, pageable, false);
+        }
+        return new SliceImpl<T>(rows.subList(0, pageable.getPageSize()), pageable, true);
+    }
+}
@@ -0,0 +1,105 @@
+package fr.fullstack.shopapp.projection;
+
+import fr.fullstack.shopapp.model.OpeningHoursShop;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TypedQuery;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Loads shops with only the requested fields: the select list is built from the field set, and
+ * the opening hours are only queried when they are asked for.
+ */
+@Component
+public class ShopProjection {
+    public static final Set<String> FIELDS = Set.of(
+            "createdAt", "id", "inVacations", "name", "nbProducts", "openingHours"
+    );
+
+    private static final List<String> COLUMNS = List.of("createdAt", "inVacations", "name", "nbProducts");
+
+    @PersistenceContext
+    private EntityManager em;
+
+    public static FieldSet parse(String fields) {
+        return FieldSet.parse(fields, FIELDS, Map.of());
+    }
+
+    public long count(String where, Map<String, Object> parameters) {
+        TypedQuery<Long> query = em.createQuery("SELECT COUNT(s) FROM Shop s " + where, Long.class);
+        parameters.forEach(query::setParameter);
+        return query.getSingleResult();
+    }
+
+    public Map<Long, Map<String, Object>> findByIds(Collection<Long> ids, FieldSet fields) {
+        Map<Long, Map<String, Object>> shops = new LinkedHashMap<Long, Map<String, Object>>();
+        if (ids.isEmpty()) {
+            return shops;
+        }
+
+        for (Map<String, Object> shop : find(
+                "WHERE s.id IN :ids AND s.deleted = false", Map.of("ids", ids), "", fields, 0, -1
+        )) {
+            shops.put((Long) shop.get("id"), shop);
+        }
+        return shops;
+    }
+
+    public Slice<Map<String, Object>> findPage(
+            String where,
+            Map<String, Object> parameters,
+            String orderBy,
+            FieldSet fields,
+            Pageable pageable
+    ) {
+        if (pageable.isUnpaged()) {
+            return Projections.slice(find(where, parameters, orderBy, fields, 0, -1), pageable);
+        }
+        return Projections.slice(
+                find(where, parameters, orderBy, fields, pageable.getOffset(), pageable.getPageSize() + 1), pageable
+        );
+    }
+
+    private List<Map<String, Object>> find(
+            String where,
+            Map<String, Object> parameters,
+            String orderBy,
+            FieldSet fields,
+            long offset,
+            int limit
+    ) {
+        StringBuilder jpql = new StringBuilder("SELECT s.id AS id");
+        for (String column : COLUMNS) {
+            if (fields.contains(column)) {
+                jpql.append(", s.").append(column).append(" AS ").append(column);
+            }
+        }
+        jpql.append(" FROM Shop s ").append(where).append(' ').append(orderBy);
+
+        TypedQuery<Tuple> query = em.createQuery(jpql.toString(), Tuple.class);
+        parameters.forEach(query::setParameter);
+        query.setFirstResult((int) offset);
+        if (limit >= 0) {
+            query.setMaxResults(limit);
+        }
+        Map<Long, Map<String, Object>> shops = Projections.rows(query.getResultList(), fields);
+
+        if (fields.contains("openingHours") && !shops.isEmpty()) {
+            List<Object[]> openingHours = em.createQuery(
+                            "SELECT s.id, o FROM Shop s JOIN s.openingHours o WHERE s.id IN :ids", Object[].class)
+                    .setParameter("ids", shops.keySet())
+                    .getResultList();
+            Projections.addToLists(shops, "openingHours", openingHours, OpeningHoursShop.class);
+        }
+        return List.copyOf(shops.values());
+    }
+}
@@ -0,0 +1,71 @@
+package fr.fullstack.shopapp.querylog;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded buffer between the threads running statements and the log output. Request threads
+ * only enqueue; a single background thread formats and writes. When the buffer is full the
+ * entry is dropped and counted rather than slowing the request down.
+ */
+@Component
+public class AsyncQueryLogWriter {
+    private static final int CAPACITY = 8192;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("fr.fullstack.shopapp.querylog");
+
+    private final BlockingQueue<QueryLogEntry> buffer = new ArrayBlockingQueue<>(CAPACITY);
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private Thread writerThread;
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public void offer(QueryLogEntry entry) {
+        if (!buffer.offer(entry)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        writerThread = new Thread(this::drain, "query-log-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        writerThread.interrupt();
+    }
+
+    private void drain() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                write(buffer.take());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write(QueryLogEntry entry) {
+        LOGGER.info("{} {}ms{} caller={} queries={} parameters={}",
+                entry.slow() ? "SLOW" : "SAMPLED",
+                entry.elapsedMs(),
+                entry.success() ? "" : " FAILED",
+                entry.caller(),
+                entry.queries(),
+                entry.parameters());
+    }
+}
@@ -0,0 +1,46 @@
+package fr.fullstack.shopapp.querylog;
+
+import fr.fullstack.shopapp.profiling.JfrQueryListener;
+import fr.fullstack.shopapp.tracing.TracingQueryListener;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+
+/**
+ * Wraps the application DataSource in a proxy reporting every statement to the query log, to the
+ * tracing and to the flight recorder.
+ */
+@Component
+public class QueryLogDataSourcePostProcessor implements BeanPostProcessor {
+    private final ObjectProvider<JfrQueryListener> jfrListener;
+
+    private final ObjectProvider<QueryLogListener> listener;
+
+    private final ObjectProvider<TracingQueryListener> tracingListener;
+
+    public QueryLogDataSourcePostProcessor(
+            ObjectProvider<JfrQueryListener> jfrListener,
+            ObjectProvider<QueryLogListener> listener,
+            ObjectProvider<TracingQueryListener> tracingListener
+    ) {
+        this.jfrListener = jfrListener;
+        this.listener = listener;
+        this.tracingListener = tracingListener;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof DataSource dataSource) {
+            return ProxyDataSourceBuilder.create(dataSource)
+                    .name(beanName)
+                    .listener(listener.getObject())
+                    .listener(tracingListener.getObject())
+                    .listener(jfrListener.getObject())
+                    .build();
+        }
+        return bean;
+    }
+}
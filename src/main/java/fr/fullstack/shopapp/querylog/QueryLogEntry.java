@@ -0,0 +1,15 @@
+package fr.fullstack.shopapp.querylog;
+
+import java.time.Instant;
+import java.util.List;
+
+public record QueryLogEntry(
+        Instant executedAt,
+        long elapsedMs,
+        boolean slow,
+        boolean success,
+        String caller,
+        List<String> queries,
+        List<String> parameters
+) {
+}
@@ -0,0 +1,99 @@
+package fr.fullstack.shopapp.querylog;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.proxy.ParameterSetOperation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides, after each statement, whether it goes to the query log: always when it ran longer
+ * than the threshold, otherwise with the configured sampling probability.
+ */
+@Component
+public class QueryLogListener implements QueryExecutionListener {
+    private static final String QUERY_LOG_PACKAGE = QueryLogListener.class.getPackageName();
+
+    private static final StackWalker STACK_WALKER = StackWalker.getInstance();
+
+    private volatile QueryLogSettings settings;
+
+    @Autowired
+    private AsyncQueryLogWriter writer;
+
+    public QueryLogListener(
+            @Value("${shopapp.query-log.enabled:true}") boolean enabled,
+            @Value("${shopapp.query-log.threshold:200ms}") Duration threshold,
+            @Value("${shopapp.query-log.sample-rate:0}") double sampleRate) {
+        this.settings = new QueryLogSettings(enabled, threshold.toMillis(), sampleRate);
+    }
+
+    @Override
+    public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        QueryLogSettings current = settings;
+        if (!current.getEnabled()) {
+            return;
+        }
+
+        boolean slow = execInfo.getElapsedTime() >= current.getThresholdMs();
+        if (!slow && ThreadLocalRandom.current().nextDouble() >= current.getSampleRate()) {
+            return;
+        }
+
+        List<String> queries = new ArrayList<>(queryInfoList.size());
+        List<String> parameters = new ArrayList<>();
+        for (QueryInfo queryInfo : queryInfoList) {
+            queries.add(queryInfo.getQuery());
+            for (List<ParameterSetOperation> operations : queryInfo.getParametersList()) {
+                List<Object> values = new ArrayList<>(operations.size());
+                for (ParameterSetOperation operation : operations) {
+                    Object[] args = operation.getArgs();
+                    values.add(args.length > 1 ? args[1] : null);
+                }
+                parameters.add(values.toString());
+            }
+        }
+
+        writer.offer(new QueryLogEntry(
+                Instant.now(), execInfo.getElapsedTime(), slow, execInfo.isSuccess(), caller(), queries, parameters
+        ));
+    }
+
+    @Override
+    public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+    }
+
+    public QueryLogSettings getSettings() {
+        return settings;
+    }
+
+    public void setSettings(QueryLogSettings settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * The repository method when the statement comes from one, otherwise the closest
+     * application frame (lazy loads, flushes).
+     */
+    private String caller() {
+        String repositoryMethod = RepositoryMethodTracker.currentMethod();
+        if (repositoryMethod != null) {
+            return repositoryMethod;
+        }
+
+        return STACK_WALKER.walk(frames -> frames
+                .filter(frame -> frame.getClassName().startsWith("fr.fullstack.shopapp.")
+                        && !frame.getClassName().startsWith(QUERY_LOG_PACKAGE))
+                .findFirst()
+                .map(frame -> frame.getClassName() + "." + frame.getMethodName())
+                .orElse("unknown"));
+    }
+}
@@ -0,0 +1,45 @@
+package fr.fullstack.shopapp.querylog;
+
+/**
+ * Query log settings, changeable at runtime through the admin endpoint.
+ */
+public class QueryLogSettings {
+    private boolean enabled;
+
+    private double sampleRate;
+
+    private long thresholdMs;
+
+    public QueryLogSettings() {
+    }
+
+    public QueryLogSettings(boolean enabled, long thresholdMs, double sampleRate) {
+        this.enabled = enabled;
+        this.thresholdMs = thresholdMs;
+        this.sampleRate = sampleRate;
+    }
+
+    public boolean getEnabled() {
+        return enabled;
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    public long getThresholdMs() {
+        return thresholdMs;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public void setSampleRate(double sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    public void setThresholdMs(long thresholdMs) {
+        this.thresholdMs = thresholdMs;
+    }
+}
@@ -0,0 +1,44 @@
+package fr.fullstack.shopapp.querylog;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+import org.springframework.stereotype.Component;
+
+/**
+ * Remembers which repository method is running on the current thread, so that the
+ * query log can tell which method issued a statement.
+ */
+@Component
+public class RepositoryMethodTracker implements BeanPostProcessor {
+    private static final ThreadLocal<String> CURRENT_METHOD = new ThreadLocal<>();
+
+    public static String currentMethod() {
+        return CURRENT_METHOD.get();
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        // Customizers must be registered before the factory bean creates the repository
+        if (bean instanceof RepositoryFactoryBeanSupport<?, ?, ?> factoryBean) {
+            factoryBean.addRepositoryFactoryCustomizer(factory -> factory.addRepositoryProxyPostProcessor(
+                    (proxyFactory, repositoryInformation) -> proxyFactory.addAdvice(
+                            trackingInterceptor(repositoryInformation.getRepositoryInterface().getSimpleName())
+                    )
+            ));
+        }
+        return bean;
+    }
+
+    private static MethodInterceptor trackingInterceptor(String repositoryName) {
+        return invocation -> {
+            String previous = CURRENT_METHOD.get();
+            CURRENT_METHOD.set(repositoryName + "." + invocation.getMethod().getName());
+            try {
+                return invocation.proceed();
+            } finally {
+                CURRENT_METHOD.set(previous);
+            }
+        };
+    }
+}
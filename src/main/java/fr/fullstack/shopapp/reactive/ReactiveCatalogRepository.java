@@ -0,0 +1,297 @@
+package fr.fullstack.shopapp.reactive;
+
+import fr.fullstack.shopapp.model.Category;
+import fr.fullstack.shopapp.model.LocalizedProduct;
+import fr.fullstack.shopapp.model.OpeningHoursShop;
+import fr.fullstack.shopapp.model.Product;
+import fr.fullstack.shopapp.model.Shop;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Readable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Pageable;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * Reads the catalog through the non-blocking Postgres driver, into the same model classes as the
+ * JPA repositories. Lists are streamed: rows are read a group at a time as the subscriber asks for
+ * them, and their collections are loaded with one query per group of rows instead of one per row.
+ * The queries of a request run one after another, and none waits for a connection while another
+ * is held: requests holding a connection while waiting for more would exhaust the pool together.
+ */
+@Component
+public class ReactiveCatalogRepository {
+    private static final String CATEGORIES = "SELECT c.id, c.name FROM categories c";
+
+    private static final String PRODUCTS = "SELECT p.id, p.price, p.shop_id FROM products p";
+
+    // Same as the nbProducts formula of Shop
+    private static final String SHOPS = "SELECT s.id, s.created_at, s.in_vacations, s.name, "
+            + "(SELECT COUNT(*) FROM products p WHERE p.shop_id = s.id) AS nb_products "
+            + "FROM shops s WHERE s.deleted = false";
+
+    // Products of a shop being deleted are hidden until the purge detaches them
+    private static final String SHOP_NOT_DELETED =
+            "NOT EXISTS (SELECT 1 FROM shops s WHERE s.id = p.shop_id AND s.deleted)";
+
+    private final DatabaseClient client;
+
+    @Value("${shopapp.v2.fetch-size:250}")
+    private int fetchSize;
+
+    @Value("${shopapp.v2.group-size:100}")
+    private int groupSize;
+
+    public ReactiveCatalogRepository(ConnectionFactory connectionFactory) {
+        this.client = DatabaseClient.create(connectionFactory);
+    }
+
+    public Flux<Category> findCategories(Pageable pageable) {
+        return client.sql(CATEGORIES + " ORDER BY c.id" + limit(pageable))
+                .filter(statement -> statement.fetchSize(fetchSize))
+                .map(this::toCategory)
+                .all();
+    }
+
+    public Mono<Category> findCategory(long id) {
+        return client.sql(CATEGORIES + " WHERE c.id = :id")
+                .bind("id", id)
+                .map(this::toCategory)
+                .one();
+    }
+
+    public Mono<Product> findProduct(long id) {
+        return client.sql(PRODUCTS + " WHERE p.id = :id AND " + SHOP_NOT_DELETED)
+                .bind("id", id)
+                .map(this::toProduct)
+                .all()
+                .collectList()
+                .flatMapMany(this::withProductRelations)
+                .next();
+    }
+
+    public Flux<Product> findProducts(Long shopId, Long categoryId, Pageable pageable) {
+        StringBuilder where = new StringBuilder(" WHERE ").append(SHOP_NOT_DELETED);
+        if (shopId != null) {
+            where.append(" AND p.shop_id = :shopId");
+        }
+        if (categoryId != null) {
+            where.append(" AND p.id IN (SELECT pc.product_id FROM products_categories pc ")
+                    .append("WHERE pc.category_id = :categoryId)");
+        }
+
+        return readInGroups(pageable, Product::getId, (afterId, offset, limit) -> {
+            String sql = PRODUCTS + where + (afterId != null ? " AND p.id > :afterId" : "")
+                    + " ORDER BY p.id LIMIT " + limit + " OFFSET " + offset;
+            DatabaseClient.GenericExecuteSpec spec = client.sql(sql);
+            if (afterId != null) {
+                spec = spec.bind("afterId", afterId);
+            }
+            if (shopId != null) {
+                spec = spec.bind("shopId", shopId);
+            }
+            if (categoryId != null) {
+                spec = spec.bind("categoryId", categoryId);
+            }
+            return spec.map(this::toProduct)
+                    .all()
+                    .collectList()
+                    .flatMap(products -> withProductRelations(products).collectList());
+        });
+    }
+
+    public Mono<Shop> findShop(long id) {
+        return client.sql(SHOPS + " AND s.id = :id")
+                .bind("id", id)
+                .map(this::toShop)
+                .all()
+                .collectList()
+                .flatMapMany(this::withOpeningHours)
+                .next();
+    }
+
+    public Flux<Shop> findShops(Pageable pageable) {
+        return readInGroups(pageable, Shop::getId, (afterId, offset, limit) -> {
+            String sql = SHOPS + (afterId != null ? " AND s.id > :afterId" : "")
+                    + " ORDER BY s.id LIMIT " + limit + " OFFSET " + offset;
+            DatabaseClient.GenericExecuteSpec spec = client.sql(sql);
+            if (afterId != null) {
+                spec = spec.bind("afterId", afterId);
+            }
+            return spec.map(this::toShop)
+                    .all()
+                    .collectList()
+                    .flatMap(shops -> withOpeningHours(shops).collectList());
+        });
+    }
+
+    private Mono<Map<Long, Shop>> findShopsByIds(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return Mono.just(Map.of());
+        }
+        return client.sql(SHOPS + " AND s.id = ANY(:ids)")
+                .bind("ids", ids.toArray(new Long[0]))
+                .map(this::toShop)
+                .all()
+                .collectList()
+                .flatMapMany(this::withOpeningHours)
+                .collectMap(Shop::getId);
+    }
+
+    private String limit(Pageable pageable) {
+        if (pageable.isUnpaged()) {
+            return "";
+        }
+        return " LIMIT " + pageable.getPageSize() + " OFFSET " + pageable.getOffset();
+    }
+
+    /**
+     * Reads the rows of the page a group at a time, each group with a query of its own starting after
+     * the last id of the previous group, only once the subscriber asked for more rows.
+     */
+    private <T> Flux<T> readInGroups(Pageable pageable, ToLongFunction<T> idOf, GroupReader<T> reader) {
+        long size = pageable.isPaged() ? pageable.getPageSize() : Long.MAX_VALUE;
+        long offset = pageable.isPaged() ? pageable.getOffset() : 0;
+        return readGroup(reader, null, offset, size)
+                .expand(group -> {
+                    if (group.rows().size() < group.limit() || group.remaining() == 0) {
+                        return Mono.empty();
+                    }
+                    long lastId = idOf.applyAsLong(group.rows().get(group.rows().size() - 1));
+                    return readGroup(reader, lastId, 0, group.remaining());
+                })
+                .concatMapIterable(Group::rows, 1);
+    }
+
+    private <T> Mono<Group<T>> readGroup(GroupReader<T> reader, Long afterId, long offset, long remaining) {
+        int limit = (int) Math.min(groupSize, remaining);
+        return reader.read(afterId, offset, limit)
+                .map(rows -> new Group<T>(rows, limit, remaining - rows.size()));
+    }
+
+    private Category toCategory(Readable row) {
+        Category category = new Category();
+        category.setId(row.get("id", Long.class));
+        category.setName(row.get("name", String.class));
+        return category;
+    }
+
+    private Product toProduct(Readable row) {
+        Product product = new Product();
+        product.setId(row.get("id", Long.class));
+        product.setPrice(row.get("price", Float.class));
+        Long shopId = row.get("shop_id", Long.class);
+        if (shopId != null) {
+            // Placeholder replaced by the loaded shop
+            Shop shop = new Shop();
+            shop.setId(shopId);
+            product.setShop(shop);
+        }
+        return product;
+    }
+
+    private Shop toShop(Readable row) {
+        Shop shop = new Shop();
+        shop.setId(row.get("id", Long.class));
+        shop.setCreatedAt(row.get("created_at", LocalDate.class));
+        shop.setInVacations(row.get("in_vacations", Boolean.class));
+        shop.setName(row.get("name", String.class));
+        shop.setNbProducts(row.get("nb_products", Long.class));
+        return shop;
+    }
+
+    private Flux<Shop> withOpeningHours(List<Shop> shops) {
+        if (shops.isEmpty()) {
+            return Flux.empty();
+        }
+        Map<Long, Shop> byId = new HashMap<Long, Shop>();
+        for (Shop shop : shops) {
+            shop.setOpeningHours(new ArrayList<OpeningHoursShop>());
+            byId.put(shop.getId(), shop);
+        }
+        return client.sql("SELECT so.shop_id, o.id, o.day, o.open_at, o.close_at FROM shops_opening_hours so "
+                        + "JOIN opening_hours o ON o.id = so.opening_hours_id WHERE so.shop_id = ANY(:ids)")
+                .bind("ids", byId.keySet().toArray(new Long[0]))
+                .map(row -> {
+                    OpeningHoursShop hours = new OpeningHoursShop();
+                    hours.setId(row.get("id", Long.class));
+                    hours.setDay(row.get("day", Integer.class));
+                    hours.setOpenAt(row.get("open_at", LocalTime.class));
+                    hours.setCloseAt(row.get("close_at", LocalTime.class));
+                    byId.get(row.get("shop_id", Long.class)).getOpeningHours().add(hours);
+                    return hours;
+                })
+                .all()
+                .thenMany(Flux.fromIterable(shops));
+    }
+
+    private Flux<Product> withProductRelations(List<Product> products) {
+        Map<Long, Product> byId = new HashMap<Long, Product>();
+        List<Long> shopIds = new ArrayList<Long>();
+        for (Product product : products) {
+            product.setCategories(new ArrayList<Category>());
+            product.setLocalizedProducts(new ArrayList<LocalizedProduct>());
+            byId.put(product.getId(), product);
+            if (product.getShop() != null && !shopIds.contains(product.getShop().getId())) {
+                shopIds.add(product.getShop().getId());
+            }
+        }
+        Long[] ids = byId.keySet().toArray(new Long[0]);
+
+        Mono<Void> categories = client.sql("SELECT pc.product_id, c.id, c.name FROM products_categories pc "
+                        + "JOIN categories c ON c.id = pc.category_id WHERE pc.product_id = ANY(:ids)")
+                .bind("ids", ids)
+                .map(row -> {
+                    Category category = toCategory(row);
+                    byId.get(row.get("product_id", Long.class)).getCategories().add(category);
+                    return category;
+                })
+                .all()
+                .then();
+        Mono<Void> localizedProducts = client.sql("SELECT pl.product_id, l.id, l.locale, l.name, l.description "
+                        + "FROM products_localized_product pl "
+                        + "JOIN localized_product l ON l.id = pl.localized_product_id WHERE pl.product_id = ANY(:ids)")
+                .bind("ids", ids)
+                .map(row -> {
+                    LocalizedProduct localizedProduct = new LocalizedProduct();
+                    localizedProduct.setId(row.get("id", Long.class));
+                    localizedProduct.setLocale(row.get("locale", String.class));
+                    localizedProduct.setName(row.get("name", String.class));
+                    localizedProduct.setDescription(row.get("description", String.class));
+                    byId.get(row.get("product_id", Long.class)).getLocalizedProducts().add(localizedProduct);
+                    return localizedProduct;
+                })
+                .all()
+                .then();
+        Mono<Void> shops = findShopsByIds(shopIds)
+                .doOnNext(loaded -> {
+                    for (Product product : products) {
+                        if (product.getShop() != null) {
+                            product.setShop(loaded.get(product.getShop().getId()));
+                        }
+                    }
+                })
+                .then();
+
+        return categories.then(localizedProducts).then(shops).thenMany(Flux.fromIterable(products));
+    }
+
+    @FunctionalInterface
+    private interface GroupReader<T> {
+        // Rows after afterId when set, with their collections
+        Mono<List<T>> read(Long afterId, long offset, int limit);
+    }
+
+    private record Group<T>(List<T> rows, int limit, long remaining) {
+    }
+}
@@ -0,0 +1,820 @@
+package fr.fullstack.shopapp.readmodel;
+
+import fr.fullstack.shopapp.model.Category;
+import fr.fullstack.shopapp.model.CategoryMatch;
+import fr.fullstack.shopapp.model.ChangeEvent;
+import fr.fullstack.shopapp.model.LocalizedProduct;
+import fr.fullstack.shopapp.model.OpeningHoursShop;
+import fr.fullstack.shopapp.model.Product;
+import fr.fullstack.shopapp.model.Shop;
+import fr.fullstack.shopapp.repository.CategoryRepository;
+import fr.fullstack.shopapp.repository.ChangeEventRepository;
+import fr.fullstack.shopapp.repository.ProductRepository;
+import fr.fullstack.shopapp.repository.ShopRepository;
+import fr.fullstack.shopapp.service.CatalogChangedEvent;
+import fr.fullstack.shopapp.service.CatalogChangesMissedEvent;
+import fr.fullstack.shopapp.service.ProductsChangedEvent;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.hibernate.Hibernate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Optional in-memory copy of the catalog serving the by-id and list reads.
+ * Entities are stored in slot tables with primitive id to slot maps, and the products of each shop
+ * and category are int posting lists of product slots kept in id order. Postgres stays the source
+ * of truth: the model is loaded once at startup, then every committed change is re-read from the
+ * database by a single writer thread. Until the load is over the services keep querying Postgres.
+ * When a snapshot path is set, the model is periodically written to a snapshot that the next
+ * instances map at startup and bring current from the change_events outbox.
+ */
+@Component
+public class CatalogReadModel {
+    private static final IntList EMPTY = new IntList(1);
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CatalogReadModel.class);
+
+    private final int batchSize;
+
+    private EntityTable<Category> categories = new EntityTable<Category>(0);
+
+    private final CategoryRepository categoryRepository;
+
+    private final ChangeEventRepository changeEventRepository;
+
+    private final boolean enabled;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Duration outboxRetention;
+
+    private final ProductRepository productRepository;
+
+    private EntityTable<Product> products = new EntityTable<Product>(0);
+
+    private volatile boolean ready;
+
+    private final ShopRepository shopRepository;
+
+    private EntityTable<Shop> shops = new EntityTable<Shop>(0);
+
+    private final Duration snapshotOverlap;
+
+    private final Path snapshotPath;
+
+    private final AtomicBoolean snapshotQueued = new AtomicBoolean();
+
+    private final TransactionTemplate transactionTemplate;
+
+    // Loads and applies the changes, so the tables only have one writer
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "catalog-read-model");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public CatalogReadModel(
+            CategoryRepository categoryRepository,
+            ChangeEventRepository changeEventRepository,
+            Environment environment,
+            MeterRegistry registry,
+            ProductRepository productRepository,
+            ShopRepository shopRepository,
+            PlatformTransactionManager transactionManager
+    ) {
+        this.categoryRepository = categoryRepository;
+        this.changeEventRepository = changeEventRepository;
+        this.productRepository = productRepository;
+        this.shopRepository = shopRepository;
+        this.enabled = environment.getProperty("shopapp.read-model.enabled", Boolean.class, false);
+        this.batchSize = environment.getProperty("shopapp.read-model.load-batch-size", Integer.class, 1000);
+        String path = environment.getProperty("shopapp.read-model.snapshot.path", "");
+        this.snapshotPath = path.isBlank() ? null : Path.of(path);
+        this.snapshotOverlap = environment.getProperty(
+                "shopapp.read-model.snapshot.overlap", Duration.class, Duration.ofMinutes(1)
+        );
+        this.outboxRetention = environment.getProperty(
+                "shopapp.change-feed.retention", Duration.class, Duration.ofDays(7)
+        );
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+
+        Gauge.builder(
+                "shopapp.read-model.products",
+                this,
+                model -> model.ready ? model.countProducts(null, List.of(), CategoryMatch.ANY) : 0
+        ).register(registry);
+        Gauge.builder("shopapp.read-model.index-bytes", this, model -> model.ready ? model.estimatedIndexBytes() : 0)
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    public boolean canServe(Pageable pageable) {
+        return ready && pageable.getSort().isUnsorted();
+    }
+
+    public long countCategories() {
+        return read(() -> (long) categories.live());
+    }
+
+    public long countProducts(Long shopId, List<Long> categoryIds, CategoryMatch categoryMatch) {
+        return read(() -> {
+            IntList list = productList(shopId, categoryIds, categoryMatch);
+            if (list == null) {
+                return 0L;
+            }
+            if (shopId == null || categoryIds.isEmpty()) {
+                return (long) list.size();
+            }
+
+            IntPredicate filter = productFilter(shopId, categoryIds, categoryMatch);
+            long count = 0;
+            for (int i = 0; i < list.size(); i++) {
+                if (filter.test(list.get(i))) {
+                    count++;
+                }
+            }
+            return count;
+        });
+    }
+
+    public long countShops(Predicate<Shop> filter) {
+        return read(() -> {
+            long count = 0;
+            for (int i = 0; i < shops.order().size(); i++) {
+                if (filter.test(shops.get(shops.order().get(i)))) {
+                    count++;
+                }
+            }
+            return count;
+        });
+    }
+
+    /**
+     * Estimated size of the slot tables, maps and posting lists, without the entities themselves.
+     */
+    public long estimatedIndexBytes() {
+        return read(() -> categories.estimatedBytes() + products.estimatedBytes() + shops.estimatedBytes());
+    }
+
+    public Slice<Category> findCategories(Pageable pageable) {
+        return read(() -> page(categories.order(), categories, slot -> true, pageable));
+    }
+
+    public Optional<Category> findCategory(long id) {
+        return ready ? read(() -> Optional.ofNullable(categories.find(id))) : Optional.empty();
+    }
+
+    public Optional<Product> findProduct(long id) {
+        return ready ? read(() -> Optional.ofNullable(products.find(id))) : Optional.empty();
+    }
+
+    /**
+     * Products in id order, optionally of a shop and of all or any of the categories.
+     */
+    public Slice<Product> findProducts(
+            Long shopId,
+            List<Long> categoryIds,
+            CategoryMatch categoryMatch,
+            Pageable pageable
+    ) {
+        return read(() -> {
+            IntList list = productList(shopId, categoryIds, categoryMatch);
+            if (list == null) {
+                return new SliceImpl<Product>(List.of(), pageable, false);
+            }
+            return page(list, products, productFilter(shopId, categoryIds, categoryMatch), pageable);
+        });
+    }
+
+    public Optional<Shop> findShop(long id) {
+        return ready ? read(() -> Optional.ofNullable(shops.find(id))) : Optional.empty();
+    }
+
+    /**
+     * Shops matching the filter, in id order or in the given order.
+     */
+    public Slice<Shop> findShops(Predicate<Shop> filter, Comparator<Shop> order, Pageable pageable) {
+        return read(() -> {
+            if (order == null) {
+                return page(shops.order(), shops, slot -> filter.test(shops.get(slot)), pageable);
+            }
+
+            List<Shop> matches = new ArrayList<Shop>();
+            for (int i = 0; i < shops.order().size(); i++) {
+                Shop shop = shops.get(shops.order().get(i));
+                if (filter.test(shop)) {
+                    matches.add(shop);
+                }
+            }
+            matches.sort(order.thenComparingLong(Shop::getId));
+            if (pageable.isUnpaged()) {
+                return new SliceImpl<Shop>(matches, pageable, false);
+            }
+
+            int from = (int) Math.min(pageable.getOffset(), matches.size());
+            int to = Math.min(from + pageable.getPageSize(), matches.size());
+            return new SliceImpl<Shop>(new ArrayList<Shop>(matches.subList(from, to)), pageable, to < matches.size());
+        });
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCatalogChanged(CatalogChangedEvent event) {
+        if (enabled) {
+            writer.execute(() -> apply(event));
+        }
+    }
+
+    @EventListener
+    public void onChangesMissed(CatalogChangesMissedEvent event) {
+        // Behind the load when it is not over yet: re-reading changes it already has is harmless
+        if (enabled) {
+            writer.execute(() -> {
+                try {
+                    catchUp(event.since().minus(snapshotOverlap));
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Could not catch up the catalog read model since {}", event.since(), e);
+                }
+            });
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductsChanged(ProductsChangedEvent event) {
+        if (enabled) {
+            writer.execute(() -> {
+                List<Long> ids = new ArrayList<Long>(event.productIds().length);
+                for (long id : event.productIds()) {
+                    ids.add(id);
+                }
+                try {
+                    for (int i = 0; i < ids.size(); i += batchSize) {
+                        applyProducts(ids.subList(i, Math.min(i + batchSize, ids.size())));
+                    }
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Could not apply {} product changes to the catalog read model", ids.size(), e);
+                }
+            });
+        }
+    }
+
+    @Scheduled(
+            initialDelayString = "${shopapp.read-model.snapshot.interval-ms:600000}",
+            fixedDelayString = "${shopapp.read-model.snapshot.interval-ms:600000}"
+    )
+    public void scheduleSnapshot() {
+        // Written by the writer thread, which reads the tables without blocking the readers
+        if (ready && snapshotPath != null && snapshotQueued.compareAndSet(false, true)) {
+            writer.execute(this::writeSnapshot);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (enabled) {
+            writer.execute(this::load);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        writer.shutdownNow();
+    }
+
+    private void apply(CatalogChangedEvent event) {
+        try {
+            switch (event.entityType()) {
+                case CATEGORY:
+                    applyCategory(event.entityId());
+                    break;
+                case PRODUCT:
+                    applyProduct(event.entityId());
+                    break;
+                case SHOP:
+                    applyShop(event.entityId());
+                    break;
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warn("Could not apply {} to the catalog read model", event, e);
+        }
+    }
+
+    private void applyCategory(long id) {
+        Category category = transactionTemplate.execute(status -> categoryRepository.findById(id).orElse(null));
+        write(() -> {
+            if (category == null) {
+                removeCategory(id);
+                return;
+            }
+
+            int slot = categories.indexOf(id);
+            categories.put(id, category);
+            if (slot == LongIntHashMap.MISSING) {
+                return;
+            }
+            IntList categoryProducts = categories.postings(slot);
+            for (int i = 0; i < categoryProducts.size(); i++) {
+                Product product = products.get(categoryProducts.get(i));
+                List<Category> productCategories = new ArrayList<Category>(product.getCategories());
+                productCategories.replaceAll(current -> current.getId() == id ? category : current);
+                replaceProduct(categoryProducts.get(i), product.getShop(), productCategories);
+            }
+        });
+    }
+
+    private void applyProduct(long id) {
+        applyProducts(List.of(id));
+    }
+
+    private void applyProducts(List<Long> ids) {
+        Map<Long, Product> loaded = transactionTemplate.execute(status -> {
+            Map<Long, Product> copies = new HashMap<Long, Product>();
+            for (Product product : productRepository.findByIdIn(ids)) {
+                copies.put(product.getId(), copyProduct(product));
+            }
+            return copies;
+        });
+        write(() -> {
+            for (long id : ids) {
+                int slot = products.indexOf(id);
+                if (slot != LongIntHashMap.MISSING) {
+                    unlinkProduct(slot);
+                }
+                Product product = loaded.get(id);
+                if (product == null) {
+                    products.remove(id);
+                } else {
+                    linkProduct(products.put(id, product));
+                }
+            }
+        });
+    }
+
+    private void applyShop(long id) {
+        Shop shop = transactionTemplate.execute(status -> shopRepository.findByIdAndDeletedFalse(id)
+                .map(this::initializeShop)
+                .orElse(null));
+        write(() -> {
+            if (shop == null) {
+                removeShop(id);
+                return;
+            }
+
+            Shop current = shops.find(id);
+            shop.setNbProducts(current != null ? current.getNbProducts() : 0);
+            int slot = shops.put(id, shop);
+            if (current == null) {
+                return;
+            }
+            IntList shopProducts = shops.postings(slot);
+            for (int i = 0; i < shopProducts.size(); i++) {
+                replaceProduct(shopProducts.get(i), shop, products.get(shopProducts.get(i)).getCategories());
+            }
+        });
+    }
+
+    private void catchUp(Instant since) {
+        Set<Long> categoryIds = new LinkedHashSet<Long>();
+        Set<Long> productIds = new LinkedHashSet<Long>();
+        Set<Long> shopIds = new LinkedHashSet<Long>();
+        long lastId = 0;
+        List<ChangeEvent> events;
+        do {
+            events = changeEventRepository.findByCreatedAtGreaterThanEqualAndIdGreaterThanOrderByIdAsc(
+                    since, lastId, PageRequest.of(0, batchSize)
+            );
+            for (ChangeEvent event : events) {
+                switch (event.getEntityType()) {
+                    case CATEGORY:
+                        categoryIds.add(event.getEntityId());
+                        break;
+                    case PRODUCT:
+                        productIds.add(event.getEntityId());
+                        break;
+                    case SHOP:
+                        shopIds.add(event.getEntityId());
+                        break;
+                }
+                lastId = event.getId();
+            }
+        } while (events.size() == batchSize);
+
+        // Products point to the shops and categories, so they come last
+        categoryIds.forEach(this::applyCategory);
+        shopIds.forEach(this::applyShop);
+        List<Long> ids = new ArrayList<Long>(productIds);
+        for (int i = 0; i < ids.size(); i += batchSize) {
+            applyProducts(ids.subList(i, Math.min(i + batchSize, ids.size())));
+        }
+        LOGGER.info(
+                "Catalog read model caught up from {}: {} categories, {} shops, {} products changed",
+                since, categoryIds.size(), shopIds.size(), productIds.size()
+        );
+    }
+
+    // Called in the loading transaction: detaches the product from its persistence context and shares
+    // the shop and category instances of the model
+    private Product copyProduct(Product product) {
+        Product copy = new Product();
+        copy.setId(product.getId());
+        copy.setPrice(product.getPrice());
+        if (product.getShop() != null) {
+            copy.setShop(shops.find(product.getShop().getId()));
+        }
+
+        List<Category> productCategories = new ArrayList<Category>(product.getCategories().size());
+        for (Category category : product.getCategories()) {
+            Category shared = categories.find(category.getId());
+            productCategories.add(shared != null ? shared : category);
+        }
+        copy.setCategories(productCategories);
+
+        List<LocalizedProduct> localizedProducts = new ArrayList<LocalizedProduct>(product.getLocalizedProducts());
+        for (LocalizedProduct localizedProduct : localizedProducts) {
+            localizedProduct.setLocale(localizedProduct.getLocale().intern());
+        }
+        copy.setLocalizedProducts(localizedProducts);
+        return copy;
+    }
+
+    private Shop initializeShop(Shop shop) {
+        Hibernate.initialize(shop.getOpeningHours());
+        shop.setOpeningHours(new ArrayList<OpeningHoursShop>(shop.getOpeningHours()));
+        return shop;
+    }
+
+    private void linkProduct(int slot) {
+        Product product = products.get(slot);
+        if (product.getShop() != null) {
+            int shopSlot = shops.indexOf(product.getShop().getId());
+            if (shopSlot != LongIntHashMap.MISSING) {
+                IntList shopProducts = shops.postings(shopSlot);
+                products.link(shopProducts, slot);
+                // The only field changed in place: a single reference to an immutable Long, readers see
+                // the former or the new count
+                shops.get(shopSlot).setNbProducts(shopProducts.size());
+            }
+        }
+        for (Category category : product.getCategories()) {
+            int categorySlot = categories.indexOf(category.getId());
+            if (categorySlot != LongIntHashMap.MISSING) {
+                products.link(categories.postings(categorySlot), slot);
+            }
+        }
+    }
+
+    private void load() {
+        long start = System.currentTimeMillis();
+        boolean fromSnapshot = snapshotPath != null && Files.isReadable(snapshotPath) && loadSnapshot();
+        if (!fromSnapshot) {
+            loadDatabase();
+        }
+
+        write(() -> ready = true);
+        LOGGER.info(
+                "Catalog read model loaded from {} in {} ms: {} shops, {} products, {} categories, ~{} MB of indexes",
+                fromSnapshot ? "the snapshot" : "the database",
+                System.currentTimeMillis() - start,
+                shops.live(),
+                products.live(),
+                categories.live(),
+                estimatedIndexBytes() / (1024 * 1024)
+        );
+    }
+
+    private void loadDatabase() {
+        EntityTable<Category> loadedCategories = new EntityTable<Category>(0);
+        EntityTable<Shop> loadedShops = new EntityTable<Shop>(0);
+        transactionTemplate.executeWithoutResult(status -> {
+            for (Category category : categoryRepository.findAll()) {
+                loadedCategories.put(category.getId(), category);
+            }
+            for (Shop shop : shopRepository.findByDeletedFalseOrderByIdAsc(Pageable.unpaged())) {
+                shop.setNbProducts(0);
+                loadedShops.put(shop.getId(), initializeShop(shop));
+            }
+        });
+
+        // copyProduct and linkProduct work on the fields, which nobody reads until the model is ready
+        categories = loadedCategories;
+        shops = loadedShops;
+        products = new EntityTable<Product>((int) Math.min(Integer.MAX_VALUE, productRepository.count()));
+
+        long lastId = 0;
+        List<Product> batch;
+        do {
+            long after = lastId;
+            batch = transactionTemplate.execute(status -> {
+                List<Product> copies = new ArrayList<Product>();
+                for (Product product : productRepository.findNextBatch(after, PageRequest.of(0, batchSize))) {
+                    copies.add(copyProduct(product));
+                }
+                return copies;
+            });
+            for (Product product : batch) {
+                linkProduct(products.put(product.getId(), product));
+                lastId = product.getId();
+            }
+        } while (batch.size() == batchSize);
+    }
+
+    // The snapshot is brought current with the outbox, which only goes back as far as its retention
+    private boolean loadSnapshot() {
+        try {
+            categories = new EntityTable<Category>(0);
+            shops = new EntityTable<Shop>(0);
+            products = new EntityTable<Product>(0);
+            Instant createdAt = CatalogSnapshot.read(
+                    snapshotPath, categories, shops, product -> linkProduct(products.put(product.getId(), product))
+            );
+            if (createdAt.isBefore(Instant.now().minus(outboxRetention))) {
+                LOGGER.warn("Catalog snapshot {} is older than the change events, ignoring it", snapshotPath);
+                return false;
+            }
+
+            // Transactions that started before the snapshot may have committed after it
+            catchUp(createdAt.minus(snapshotOverlap));
+            return true;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Could not load the catalog snapshot {}", snapshotPath, e);
+            return false;
+        }
+    }
+
+    private <T> Slice<T> page(IntList list, EntityTable<T> table, IntPredicate filter, Pageable pageable) {
+        long skip = pageable.isPaged() ? pageable.getOffset() : 0;
+        int size = pageable.isPaged() ? pageable.getPageSize() : Integer.MAX_VALUE;
+        List<T> content = new ArrayList<T>(Math.min(size, list.size()));
+        for (int i = 0; i < list.size(); i++) {
+            int slot = list.get(i);
+            if (!filter.test(slot)) {
+                continue;
+            }
+            if (skip > 0) {
+                skip--;
+            } else if (content.size() < size) {
+                content.add(table.get(slot));
+            } else {
+                return new SliceImpl<T>(content, pageable, true);
+            }
+        }
+        return new SliceImpl<T>(content, pageable, false);
+    }
+
+    // The scanned posting list already matches one of the criteria, checking both keeps it simple
+    private IntPredicate productFilter(Long shopId, List<Long> categoryIds, CategoryMatch categoryMatch) {
+        if (shopId == null || categoryIds.isEmpty()) {
+            return slot -> true;
+        }
+
+        return slot -> {
+            Product product = products.get(slot);
+            if (product.getShop() == null || product.getShop().getId() != shopId) {
+                return false;
+            }
+            long matches = product.getCategories().stream()
+                    .filter(category -> categoryIds.contains(category.getId()))
+                    .count();
+            return categoryMatch == CategoryMatch.ALL ? matches == categoryIds.size() : matches > 0;
+        };
+    }
+
+    private static IntList postingsOf(EntityTable<?> table, int slot) {
+        IntList list = table.postingsIfAny(slot);
+        return list != null ? list : EMPTY;
+    }
+
+    // null when the shop does not exist, or when no product can match the categories
+    private IntList productList(Long shopId, List<Long> categoryIds, CategoryMatch categoryMatch) {
+        IntList shopProducts = null;
+        if (shopId != null) {
+            int slot = shops.indexOf(shopId);
+            if (slot == LongIntHashMap.MISSING) {
+                return null;
+            }
+            shopProducts = postingsOf(shops, slot);
+        }
+
+        IntList categoryProducts = null;
+        if (!categoryIds.isEmpty()) {
+            List<IntList> lists = new ArrayList<IntList>(categoryIds.size());
+            for (long categoryId : categoryIds) {
+                int slot = categories.indexOf(categoryId);
+                if (slot != LongIntHashMap.MISSING) {
+                    lists.add(postingsOf(categories, slot));
+                } else if (categoryMatch == CategoryMatch.ALL) {
+                    return null;
+                }
+            }
+            if (lists.isEmpty()) {
+                return null;
+            }
+            categoryProducts = categoryMatch == CategoryMatch.ALL ? intersection(lists) : union(lists);
+        }
+
+        if (shopProducts == null && categoryProducts == null) {
+            return products.order();
+        }
+        if (shopProducts == null || categoryProducts == null) {
+            return shopProducts != null ? shopProducts : categoryProducts;
+        }
+        return shopProducts.size() <= categoryProducts.size() ? shopProducts : categoryProducts;
+    }
+
+    /**
+     * Products in all the posting lists: the shortest list is walked and its entries looked up in
+     * the others, which costs its length times the log of theirs.
+     */
+    private IntList intersection(List<IntList> lists) {
+        if (lists.size() == 1) {
+            return lists.get(0);
+        }
+
+        List<IntList> others = new ArrayList<IntList>(lists);
+        others.sort(Comparator.comparingInt(IntList::size));
+        IntList shortest = others.remove(0);
+        IntList result = new IntList(shortest.size());
+        for (int i = 0; i < shortest.size(); i++) {
+            int slot = shortest.get(i);
+            boolean inAll = true;
+            for (IntList other : others) {
+                if (!products.contains(other, slot)) {
+                    inAll = false;
+                    break;
+                }
+            }
+            if (inAll) {
+                result.add(slot);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Products in any of the posting lists, merged in id order.
+     */
+    private IntList union(List<IntList> lists) {
+        if (lists.size() == 1) {
+            return lists.get(0);
+        }
+
+        int total = 0;
+        for (IntList list : lists) {
+            total += list.size();
+        }
+        IntList result = new IntList(total);
+        int[] positions = new int[lists.size()];
+        long lastId = Long.MIN_VALUE;
+        while (true) {
+            // Few categories are filtered on at once, a linear scan for the lowest head is enough
+            int lowest = -1;
+            long lowestId = Long.MAX_VALUE;
+            for (int i = 0; i < lists.size(); i++) {
+                if (positions[i] < lists.get(i).size()) {
+                    long id = products.idOf(lists.get(i).get(positions[i]));
+                    if (id < lowestId) {
+                        lowest = i;
+                        lowestId = id;
+                    }
+                }
+            }
+            if (lowest < 0) {
+                return result;
+            }
+            if (lowestId != lastId) {
+                result.add(lists.get(lowest).get(positions[lowest]));
+                lastId = lowestId;
+            }
+            positions[lowest]++;
+        }
+    }
+
+    private <T> T read(Supplier<T> reader) {
+        lock.readLock().lock();
+        try {
+            return reader.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void removeCategory(long id) {
+        int slot = categories.indexOf(id);
+        if (slot == LongIntHashMap.MISSING) {
+            return;
+        }
+
+        IntList categoryProducts = categories.postings(slot);
+        for (int i = 0; i < categoryProducts.size(); i++) {
+            Product product = products.get(categoryProducts.get(i));
+            List<Category> productCategories = new ArrayList<Category>(product.getCategories());
+            productCategories.removeIf(category -> category.getId() == id);
+            replaceProduct(categoryProducts.get(i), product.getShop(), productCategories);
+        }
+        categories.remove(id);
+    }
+
+    private void removeShop(long id) {
+        int slot = shops.indexOf(id);
+        if (slot == LongIntHashMap.MISSING) {
+            return;
+        }
+
+        // The products of a deleted shop are detached by the purge job
+        IntList shopProducts = shops.postings(slot);
+        for (int i = 0; i < shopProducts.size(); i++) {
+            replaceProduct(shopProducts.get(i), null, products.get(shopProducts.get(i)).getCategories());
+        }
+        shops.remove(id);
+    }
+
+    /**
+     * Swaps the product of the slot for a copy with the given shop and categories. The published
+     * instances are never changed, since readers serialize them after releasing the lock.
+     */
+    private void replaceProduct(int slot, Shop shop, List<Category> productCategories) {
+        Product product = products.get(slot);
+        Product copy = new Product();
+        copy.setId(product.getId());
+        copy.setPrice(product.getPrice());
+        copy.setShop(shop);
+        copy.setCategories(productCategories);
+        copy.setLocalizedProducts(product.getLocalizedProducts());
+        products.put(product.getId(), copy);
+    }
+
+    private void unlinkProduct(int slot) {
+        Product product = products.get(slot);
+        if (product.getShop() != null) {
+            int shopSlot = shops.indexOf(product.getShop().getId());
+            if (shopSlot != LongIntHashMap.MISSING) {
+                IntList shopProducts = shops.postings(shopSlot);
+                products.unlink(shopProducts, slot);
+                shops.get(shopSlot).setNbProducts(shopProducts.size());
+            }
+        }
+        for (Category category : product.getCategories()) {
+            int categorySlot = categories.indexOf(category.getId());
+            if (categorySlot != LongIntHashMap.MISSING) {
+                products.unlink(categories.postings(categorySlot), slot);
+            }
+        }
+    }
+
+    private void write(Runnable change) {
+        lock.writeLock().lock();
+        try {
+            change.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void writeSnapshot() {
+        snapshotQueued.set(false);
+        long start = System.currentTimeMillis();
+        try {
+            CatalogSnapshot.write(snapshotPath, Instant.now(), categories, shops, products);
+            LOGGER.info(
+                    "Catalog snapshot {} written in {} ms", snapshotPath, System.currentTimeMillis() - start
+            );
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Could not write the catalog snapshot {}", snapshotPath, e);
+        }
+    }
+}
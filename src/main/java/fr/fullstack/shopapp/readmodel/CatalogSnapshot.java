@@ -0,0 +1,282 @@
+package fr.fullstack.shopapp.readmodel;
+
+import fr.fullstack.shopapp.model.Category;
+import fr.fullstack.shopapp.model.LocalizedProduct;
+import fr.fullstack.shopapp.model.OpeningHoursShop;
+import fr.fullstack.shopapp.model.Product;
+import fr.fullstack.shopapp.model.Shop;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Binary snapshot of the read model, read back through a memory mapping.
+ * Layout: a header (magic, version, creation time, entity counts), then the categories, the shops
+ * and the products, each as fixed size fields followed by length-prefixed UTF-8 strings. Products
+ * only reference their shop and categories by id.
+ */
+final class CatalogSnapshot {
+    private static final int MAGIC = 0x53484f50;
+
+    // Largest mapping, below the 2 GB limit of a buffer
+    private static final int REGION_SIZE = 1 << 30;
+
+    private static final int VERSION = 1;
+
+    private CatalogSnapshot() {
+    }
+
+    /**
+     * Fills the category and shop tables, hands over the products, and returns the creation time.
+     */
+    static Instant read(
+            Path path,
+            EntityTable<Category> categories,
+            EntityTable<Shop> shops,
+            Consumer<Product> products
+    ) throws IOException {
+        return read(path, REGION_SIZE, categories, shops, products);
+    }
+
+    static Instant read(
+            Path path,
+            int regionSize,
+            EntityTable<Category> categories,
+            EntityTable<Shop> shops,
+            Consumer<Product> products
+    ) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedInput input = new MappedInput(channel, regionSize);
+            if (input.getInt() != MAGIC || input.getInt() != VERSION) {
+                throw new IOException("Snapshot " + path + " has an unknown format");
+            }
+            Instant createdAt = Instant.ofEpochMilli(input.getLong());
+            int categoryCount = input.getInt();
+            int shopCount = input.getInt();
+            int productCount = input.getInt();
+
+            for (int i = 0; i < categoryCount; i++) {
+                Category category = new Category();
+                category.setId(input.getLong());
+                category.setName(input.getString());
+                categories.put(category.getId(), category);
+            }
+
+            for (int i = 0; i < shopCount; i++) {
+                Shop shop = new Shop();
+                shop.setId(input.getLong());
+                shop.setCreatedAt(LocalDate.ofEpochDay(input.getLong()));
+                shop.setInVacations(input.get() == 1);
+                shop.setName(input.getString());
+                shop.setNbProducts(0);
+                int openingHoursCount = input.getInt();
+                List<OpeningHoursShop> openingHours = new ArrayList<OpeningHoursShop>(openingHoursCount);
+                for (int j = 0; j < openingHoursCount; j++) {
+                    OpeningHoursShop hours = new OpeningHoursShop();
+                    hours.setId(input.getLong());
+                    hours.setDay(input.getInt());
+                    hours.setOpenAt(LocalTime.ofSecondOfDay(input.getInt()));
+                    hours.setCloseAt(LocalTime.ofSecondOfDay(input.getInt()));
+                    openingHours.add(hours);
+                }
+                shop.setOpeningHours(openingHours);
+                shops.put(shop.getId(), shop);
+            }
+
+            for (int i = 0; i < productCount; i++) {
+                Product product = new Product();
+                product.setId(input.getLong());
+                product.setPrice(input.getFloat());
+                long shopId = input.getLong();
+                if (shopId != 0) {
+                    product.setShop(shops.find(shopId));
+                }
+
+                int categoryIdCount = input.getInt();
+                List<Category> productCategories = new ArrayList<Category>(categoryIdCount);
+                for (int j = 0; j < categoryIdCount; j++) {
+                    Category category = categories.find(input.getLong());
+                    if (category != null) {
+                        productCategories.add(category);
+                    }
+                }
+                product.setCategories(productCategories);
+
+                int localizedCount = input.getInt();
+                List<LocalizedProduct> localizedProducts = new ArrayList<LocalizedProduct>(localizedCount);
+                for (int j = 0; j < localizedCount; j++) {
+                    LocalizedProduct localizedProduct = new LocalizedProduct();
+                    localizedProduct.setId(input.getLong());
+                    localizedProduct.setLocale(input.getString().intern());
+                    localizedProduct.setName(input.getString());
+                    localizedProduct.setDescription(input.getString());
+                    localizedProducts.add(localizedProduct);
+                }
+                product.setLocalizedProducts(localizedProducts);
+                products.accept(product);
+            }
+            return createdAt;
+        }
+    }
+
+    /**
+     * Writes the snapshot next to its destination, then moves it in place so readers never see a
+     * partial file.
+     */
+    static void write(
+            Path path,
+            Instant createdAt,
+            EntityTable<Category> categories,
+            EntityTable<Shop> shops,
+            EntityTable<Product> products
+    ) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(createdAt.toEpochMilli());
+                out.writeInt(categories.live());
+                out.writeInt(shops.live());
+                out.writeInt(products.live());
+
+                for (int i = 0; i < categories.order().size(); i++) {
+                    Category category = categories.get(categories.order().get(i));
+                    out.writeLong(category.getId());
+                    writeString(out, category.getName());
+                }
+
+                for (int i = 0; i < shops.order().size(); i++) {
+                    Shop shop = shops.get(shops.order().get(i));
+                    out.writeLong(shop.getId());
+                    out.writeLong(shop.getCreatedAt().toEpochDay());
+                    out.writeByte(shop.getInVacations() ? 1 : 0);
+                    writeString(out, shop.getName());
+                    out.writeInt(shop.getOpeningHours().size());
+                    for (OpeningHoursShop hours : shop.getOpeningHours()) {
+                        out.writeLong(hours.getId());
+                        out.writeInt((int) hours.getDay());
+                        out.writeInt(hours.getOpenAt().toSecondOfDay());
+                        out.writeInt(hours.getCloseAt().toSecondOfDay());
+                    }
+                }
+
+                for (int i = 0; i < products.order().size(); i++) {
+                    Product product = products.get(products.order().get(i));
+                    out.writeLong(product.getId());
+                    out.writeFloat(product.getPrice());
+                    out.writeLong(product.getShop() != null ? product.getShop().getId() : 0);
+                    out.writeInt(product.getCategories().size());
+                    for (Category category : product.getCategories()) {
+                        out.writeLong(category.getId());
+                    }
+                    out.writeInt(product.getLocalizedProducts().size());
+                    for (LocalizedProduct localizedProduct : product.getLocalizedProducts()) {
+                        out.writeLong(localizedProduct.getId());
+                        writeString(out, localizedProduct.getLocale());
+                        writeString(out, localizedProduct.getName());
+                        writeString(out, localizedProduct.getDescription());
+                    }
+                }
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads the file through mappings of at most regionSize bytes, a mapping being limited to 2 GB.
+     * A value running past the end of the current region is read from a new region starting at it.
+     */
+    private static final class MappedInput {
+        private MappedByteBuffer buffer;
+
+        // Position of the buffer in the file
+        private long bufferStart;
+
+        private final FileChannel channel;
+
+        private final int regionSize;
+
+        private final long size;
+
+        MappedInput(FileChannel channel, int regionSize) throws IOException {
+            this.channel = channel;
+            this.regionSize = regionSize;
+            this.size = channel.size();
+            map(0);
+        }
+
+        byte get() throws IOException {
+            return available(Byte.BYTES).get();
+        }
+
+        float getFloat() throws IOException {
+            return available(Float.BYTES).getFloat();
+        }
+
+        int getInt() throws IOException {
+            return available(Integer.BYTES).getInt();
+        }
+
+        long getLong() throws IOException {
+            return available(Long.BYTES).getLong();
+        }
+
+        String getString() throws IOException {
+            int length = getInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            available(length).get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private ByteBuffer available(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                long position = bufferStart + buffer.position();
+                if (size - position < bytes || bytes > regionSize) {
+                    throw new EOFException("Snapshot truncated at " + position);
+                }
+                map(position);
+            }
+            return buffer;
+        }
+
+        private void map(long position) throws IOException {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(regionSize, size - position));
+            bufferStart = position;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package fr.fullstack.shopapp.readmodel;
+
+import java.util.Arrays;
+
+/**
+ * Entities stored by slot, with an id to slot map and the live slots ordered by id.
+ * Each slot can own a posting list holding slots of another table (the products of a shop or
+ * of a category). Removed slots are left empty and never reused, a reload compacts the table.
+ * Not thread-safe.
+ */
+class EntityTable<T> {
+    private long[] ids;
+
+    private final LongIntHashMap index;
+
+    private Object[] items;
+
+    private final IntList order;
+
+    private IntList[] postings;
+
+    private int slots;
+
+    EntityTable(int expectedSize) {
+        int capacity = Math.max(16, expectedSize);
+        ids = new long[capacity];
+        index = new LongIntHashMap(capacity);
+        items = new Object[capacity];
+        order = new IntList(capacity);
+        postings = new IntList[capacity];
+    }
+
+    /**
+     * Whether the posting list, kept in id order, holds the slot.
+     */
+    boolean contains(IntList list, int slot) {
+        int position = search(list, ids[slot]);
+        return position < list.size() && list.get(position) == slot;
+    }
+
+    long estimatedBytes() {
+        long bytes = (long) ids.length * Long.BYTES
+                + index.estimatedBytes()
+                // Compressed references
+                + (long) items.length * Integer.BYTES
+                + order.estimatedBytes()
+                + (long) postings.length * Integer.BYTES;
+        for (int slot = 0; slot < slots; slot++) {
+            if (postings[slot] != null) {
+                bytes += postings[slot].estimatedBytes();
+            }
+        }
+        return bytes;
+    }
+
+    @SuppressWarnings("unchecked")
+    T find(long id) {
+        int slot = index.get(id);
+        return slot == LongIntHashMap.MISSING ? null : (T) items[slot];
+    }
+
+    @SuppressWarnings("unchecked")
+    T get(int slot) {
+        return (T) items[slot];
+    }
+
+    long idOf(int slot) {
+        return ids[slot];
+    }
+
+    int indexOf(long id) {
+        return index.get(id);
+    }
+
+    /**
+     * Adds a slot of this table to a posting list, keeping the list in id order.
+     */
+    void link(IntList list, int slot) {
+        int position = search(list, ids[slot]);
+        if (position >= list.size() || list.get(position) != slot) {
+            list.insert(position, slot);
+        }
+    }
+
+    int live() {
+        return order.size();
+    }
+
+    IntList order() {
+        return order;
+    }
+
+    /**
+     * Posting list of the slot, created on first use, so only for the writer.
+     */
+    IntList postings(int slot) {
+        if (postings[slot] == null) {
+            postings[slot] = new IntList();
+        }
+        return postings[slot];
+    }
+
+    // null when nothing was linked to the slot yet
+    IntList postingsIfAny(int slot) {
+        return postings[slot];
+    }
+
+    /**
+     * Replaces the entity with the same id or appends it, and returns its slot.
+     */
+    int put(long id, T item) {
+        int slot = index.get(id);
+        if (slot != LongIntHashMap.MISSING) {
+            items[slot] = item;
+            return slot;
+        }
+
+        if (slots == items.length) {
+            int capacity = slots + (slots >> 1);
+            ids = Arrays.copyOf(ids, capacity);
+            items = Arrays.copyOf(items, capacity);
+            postings = Arrays.copyOf(postings, capacity);
+        }
+        slot = slots++;
+        ids[slot] = id;
+        items[slot] = item;
+        index.put(id, slot);
+        link(order, slot);
+        return slot;
+    }
+
+    /**
+     * Removes the entity and its posting list, and returns its former slot.
+     */
+    int remove(long id) {
+        int slot = index.remove(id);
+        if (slot != LongIntHashMap.MISSING) {
+            unlink(order, slot);
+            items[slot] = null;
+            postings[slot] = null;
+        }
+        return slot;
+    }
+
+    void unlink(IntList list, int slot) {
+        int position = search(list, ids[slot]);
+        if (position < list.size() && list.get(position) == slot) {
+            list.removeAt(position);
+        }
+    }
+
+    // First position of the list whose id is not lower than the given id
+    private int search(IntList list, long id) {
+        int low = 0;
+        int high = list.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (ids[list.get(middle)] < id) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,51 @@
+package fr.fullstack.shopapp.readmodel;
+
+import java.util.Arrays;
+
+/**
+ * Growable int array, used for the posting lists of the read model.
+ * Not thread-safe.
+ */
+public class IntList {
+    private int[] elements;
+
+    private int size;
+
+    public IntList() {
+        this(4);
+    }
+
+    public IntList(int capacity) {
+        elements = new int[Math.max(1, capacity)];
+    }
+
+    public void add(int value) {
+        insert(size, value);
+    }
+
+    public long estimatedBytes() {
+        return (long) elements.length * Integer.BYTES;
+    }
+
+    public int get(int position) {
+        return elements[position];
+    }
+
+    public void insert(int position, int value) {
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements, size + (size >> 1) + 1);
+        }
+        System.arraycopy(elements, position, elements, position + 1, size - position);
+        elements[position] = value;
+        size++;
+    }
+
+    public void removeAt(int position) {
+        System.arraycopy(elements, position + 1, elements, position, size - position - 1);
+        size--;
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -1,10 +1,10 @@
 package fr.fullstack.shopapp.repository;
 
 import fr.fullstack.shopapp.model.Category;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 
 public interface CategoryRepository extends JpaRepository<Category, Long> {
-    Page<Category> findByOrderByIdAsc(Pageable pageable);
+    Slice<Category> findByOrderByIdAsc(Pageable pageable);
 }
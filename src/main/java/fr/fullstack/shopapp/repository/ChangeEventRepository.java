@@ -0,0 +1,28 @@
+package fr.fullstack.shopapp.repository;
+
+import fr.fullstack.shopapp.model.ChangeEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface ChangeEventRepository extends JpaRepository<ChangeEvent, Long> {
+    @Modifying
+    @Query("DELETE FROM ChangeEvent e WHERE e.createdAt < ?1")
+    int deleteByCreatedAtBefore(Instant date);
+
+    List<ChangeEvent> findByCreatedAtGreaterThanEqualAndIdGreaterThanOrderByIdAsc(
+            Instant date, long id, Pageable pageable
+    );
+
+    List<ChangeEvent> findByIdGreaterThanOrderByIdAsc(long id, Pageable pageable);
+
+    @Query("SELECT e FROM ChangeEvent e WHERE e.id > ?1 AND (e.shopId IS NULL OR e.shopId = ?2) ORDER BY e.id ASC")
+    List<ChangeEvent> findForShopAfter(long id, Long shopId, Pageable pageable);
+
+    @Query("SELECT COALESCE(MAX(e.id), 0) FROM ChangeEvent e")
+    long findMaxId();
+}
@@ -0,0 +1,7 @@
+package fr.fullstack.shopapp.repository;
+
+import fr.fullstack.shopapp.model.PriceAdjustment;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface PriceAdjustmentRepository extends JpaRepository<PriceAdjustment, Long> {
+}
@@ -1,19 +1,89 @@
 package fr.fullstack.shopapp.repository;
 
 import fr.fullstack.shopapp.model.Product;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
 public interface ProductRepository extends JpaRepository<Product, Long> {
-    Page<Product> findByOrderByIdAsc(Pageable pageable);
+    // Products of a shop being deleted are hidden until the purge detaches them
+    String SHOP_NOT_DELETED = " AND NOT EXISTS (SELECT 1 FROM shops s WHERE s.id = ?1 AND s.deleted)";
+
+    // Ids of the products in all the categories ?1 (?2 of them, the pairs are unique), read from the
+    // (category_id, product_id) index
+    String IN_ALL_CATEGORIES = "SELECT pc.product_id FROM products_categories pc WHERE pc.category_id IN (?1) "
+            + "GROUP BY pc.product_id HAVING COUNT(*) = ?2";
+
+    // Checked per product on the unique (product_id, category_id) index, or read from the
+    // (category_id, product_id) index when the planner expects few matching products
+    String IN_ANY_CATEGORY = "SELECT 1 FROM products_categories pc "
+            + "WHERE pc.product_id = p.id AND pc.category_id IN (?1)";
+
+    String NOT_IN_DELETED_SHOP = " AND NOT EXISTS (SELECT 1 FROM shops s WHERE s.id = p.shop_id AND s.deleted)";
 
-    @Query(value = "SELECT * FROM Products WHERE shop_id = ?1", nativeQuery = true)
-    Page<Product> findByShop(Long shopId, Pageable pageable);
+    // JPQL version of NOT_IN_DELETED_SHOP, for the queries on Product p
+    String VISIBLE = "NOT EXISTS (SELECT 1 FROM Shop ds WHERE ds.id = p.shop.id AND ds.deleted = true)";
+
+    @Query(value = "SELECT COUNT(*) FROM Products WHERE shop_id = ?1" + SHOP_NOT_DELETED, nativeQuery = true)
+    long countByShop(Long shopId);
+
+    @Query(value = "SELECT COUNT(*) FROM Products p WHERE p.id IN (" + IN_ALL_CATEGORIES + ")" + NOT_IN_DELETED_SHOP,
+           nativeQuery = true)
+    long countByAllCategories(Collection<Long> categoryIds, long categoryCount);
 
-    @Query(value = "SELECT * FROM Products p WHERE p.shop_id = ?1 AND p.id IN (SELECT pc.product_id FROM "
-            + "products_categories pc WHERE pc.category_id = ?2)",
+    @Query(value = "SELECT COUNT(*) FROM Products p WHERE EXISTS (" + IN_ANY_CATEGORY + ")" + NOT_IN_DELETED_SHOP,
            nativeQuery = true)
-    Page<Product> findByShopAndCategory(Long shopId, Long categoryId, Pageable pageable);
+    long countByCategories(Collection<Long> categoryIds);
+
+    @Query(value = "SELECT COUNT(*) FROM Products p WHERE p.shop_id = ?3 AND p.id IN (" + IN_ALL_CATEGORIES + ")"
+            + " AND NOT EXISTS (SELECT 1 FROM shops s WHERE s.id = ?3 AND s.deleted)",
+           nativeQuery = true)
+    long countByShopAndAllCategories(Collection<Long> categoryIds, long categoryCount, Long shopId);
+
+    @Query(value = "SELECT COUNT(*) FROM Products p WHERE p.shop_id = ?2 AND EXISTS (" + IN_ANY_CATEGORY + ")"
+            + " AND NOT EXISTS (SELECT 1 FROM shops s WHERE s.id = ?2 AND s.deleted)",
+           nativeQuery = true)
+    long countByShopAndCategories(Collection<Long> categoryIds, Long shopId);
+
+    @Query("SELECT COUNT(p) FROM Product p WHERE " + VISIBLE)
+    long countVisible();
+
+    @Query(value = "SELECT * FROM Products p WHERE p.id IN (" + IN_ALL_CATEGORIES + ")" + NOT_IN_DELETED_SHOP,
+           nativeQuery = true)
+    Slice<Product> findByAllCategories(Collection<Long> categoryIds, long categoryCount, Pageable pageable);
+
+    @Query(value = "SELECT * FROM Products p WHERE EXISTS (" + IN_ANY_CATEGORY + ")" + NOT_IN_DELETED_SHOP,
+           nativeQuery = true)
+    Slice<Product> findByCategories(Collection<Long> categoryIds, Pageable pageable);
+
+    @Query("SELECT p FROM Product p LEFT JOIN FETCH p.shop WHERE p.id IN ?1 AND " + VISIBLE)
+    List<Product> findByIdIn(Collection<Long> ids);
+
+    @Query("SELECT p FROM Product p WHERE " + VISIBLE + " ORDER BY p.id ASC")
+    Slice<Product> findByOrderByIdAsc(Pageable pageable);
+
+    @Query(value = "SELECT * FROM Products WHERE shop_id = ?1" + SHOP_NOT_DELETED, nativeQuery = true)
+    Slice<Product> findByShop(Long shopId, Pageable pageable);
+
+    @Query(value = "SELECT * FROM Products p WHERE p.shop_id = ?3 AND p.id IN (" + IN_ALL_CATEGORIES + ")"
+            + " AND NOT EXISTS (SELECT 1 FROM shops s WHERE s.id = ?3 AND s.deleted)",
+           nativeQuery = true)
+    Slice<Product> findByShopAndAllCategories(
+            Collection<Long> categoryIds, long categoryCount, Long shopId, Pageable pageable);
+
+    @Query(value = "SELECT * FROM Products p WHERE p.shop_id = ?2 AND EXISTS (" + IN_ANY_CATEGORY + ")"
+            + " AND NOT EXISTS (SELECT 1 FROM shops s WHERE s.id = ?2 AND s.deleted)",
+           nativeQuery = true)
+    Slice<Product> findByShopAndCategories(Collection<Long> categoryIds, Long shopId, Pageable pageable);
+
+    @Query("SELECT p FROM Product p LEFT JOIN FETCH p.shop WHERE p.id > ?1 ORDER BY p.id ASC")
+    List<Product> findNextBatch(long lastId, Pageable pageable);
+
+    @Query("SELECT p FROM Product p WHERE p.id = ?1 AND " + VISIBLE)
+    Optional<Product> findVisibleById(long id);
 }
@@ -0,0 +1,7 @@
+package fr.fullstack.shopapp.repository;
+
+import fr.fullstack.shopapp.model.ShopDeletionJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface ShopDeletionJobRepository extends JpaRepository<ShopDeletionJob, Long> {
+}
@@ -1,38 +1,79 @@
 package fr.fullstack.shopapp.repository;
 
 import fr.fullstack.shopapp.model.Shop;
-import org.springframework.data.domain.Page;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
 import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 
 public interface ShopRepository extends JpaRepository<Shop, Long> {
-    Page<Shop> findByCreatedAtBetween(LocalDate dateStart, LocalDate dateEnd, Pageable pageable);
+    // COUNTS
+    long countByDeletedFalse();
 
-    Page<Shop> findByCreatedAtGreaterThan(LocalDate date, Pageable pageable);
+    long countByDeletedFalseAndCreatedAtBetween(LocalDate dateStart, LocalDate dateEnd);
 
-    Page<Shop> findByCreatedAtLessThan(LocalDate date, Pageable pageable);
+    long countByDeletedFalseAndCreatedAtGreaterThan(LocalDate date);
+
+    long countByDeletedFalseAndCreatedAtLessThan(LocalDate date);
+
+    long countByDeletedFalseAndInVacations(boolean inVacations);
+
+    long countByDeletedFalseAndInVacationsAndCreatedAtGreaterThan(boolean inVacations, LocalDate date);
+
+    long countByDeletedFalseAndInVacationsAndCreatedAtGreaterThanAndCreatedAtLessThan(
+            boolean inVacations, LocalDate dateStart, LocalDate dateEnd
+    );
+
+    long countByDeletedFalseAndInVacationsAndCreatedAtLessThan(boolean inVacations, LocalDate date);
+
+    Optional<Shop> findByIdAndDeletedFalse(long id);
+
+    // Share-locks the shop until the commit, so that it cannot be marked as deleted meanwhile. Without
+    // flushing first: batches flush once for all their operations
+    @Query(value = "SELECT id FROM shops WHERE id = ?1 AND deleted = false FOR SHARE", nativeQuery = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FLUSH_MODE, value = "COMMIT"))
+    Optional<Long> lockByIdAndDeletedFalse(long id);
+
+    List<Shop> findByDeletedFalseAndIdIn(Collection<Long> ids);
+
+    Slice<Shop> findByDeletedFalseAndCreatedAtBetween(
+            LocalDate dateStart, LocalDate dateEnd, Pageable pageable
+    );
+
+    Slice<Shop> findByDeletedFalseAndCreatedAtGreaterThan(LocalDate date, Pageable pageable);
+
+    Slice<Shop> findByDeletedFalseAndCreatedAtLessThan(LocalDate date, Pageable pageable);
 
     // FILTERS
-    Page<Shop> findByInVacations(boolean inVacations, Pageable pageable);
+    Slice<Shop> findByDeletedFalseAndInVacations(boolean inVacations, Pageable pageable);
 
-    Page<Shop> findByInVacationsAndCreatedAtGreaterThan(boolean inVacations, LocalDate date, Pageable pageable);
+    Slice<Shop> findByDeletedFalseAndInVacationsAndCreatedAtGreaterThan(
+            boolean inVacations, LocalDate date, Pageable pageable
+    );
 
-    Page<Shop> findByInVacationsAndCreatedAtGreaterThanAndCreatedAtLessThan(
+    Slice<Shop> findByDeletedFalseAndInVacationsAndCreatedAtGreaterThanAndCreatedAtLessThan(
             boolean inVacations, LocalDate dateStart,
             LocalDate dateEnd, Pageable pageable
     );
 
-    Page<Shop> findByInVacationsAndCreatedAtLessThan(boolean inVacations, LocalDate date, Pageable pageable);
+    Slice<Shop> findByDeletedFalseAndInVacationsAndCreatedAtLessThan(
+            boolean inVacations, LocalDate date, Pageable pageable
+    );
 
-    Page<Shop> findByOrderByCreatedAtAsc(Pageable pageable);
+    Slice<Shop> findByDeletedFalseOrderByCreatedAtAsc(Pageable pageable);
 
-    Page<Shop> findByOrderByIdAsc(Pageable pageable);
+    Slice<Shop> findByDeletedFalseOrderByIdAsc(Pageable pageable);
 
     // SORT
-    Page<Shop> findByOrderByNameAsc(Pageable pageable);
+    Slice<Shop> findByDeletedFalseOrderByNameAsc(Pageable pageable);
 
     @Query(
             value = "SELECT *,"
@@ -40,11 +81,9 @@ public interface ShopRepository extends JpaRepository<Shop, Long> {
                     + "(SELECT COUNT(DISTINCT pc.category_id) FROM products_categories pc WHERE pc.product_id IN "
                     + "(SELECT p.id FROM products p WHERE p.shop_id = s.id)) as nbCategories "
                     + "FROM shops s "
-                    + "ORDER BY (SELECT COUNT(*) FROM products p WHERE p.shop_id = s.id) DESC",
-            countQuery = "SELECT * "
-                    + "FROM shops s "
-                    + "ORDER BY (SELECT COUNT(*) FROM products p WHERE p.shop_id = s.id) DESC",
+                    + "WHERE s.deleted = false "
+                    + "ORDER BY (SELECT COUNT(*) FROM products p WHERE p.shop_id = s.id) DESC, s.id",
             nativeQuery = true
     )
-    Page<Shop> findByOrderByNbProductsAsc(Pageable pageable);
+    Slice<Shop> findByOrderByNbProductsAsc(Pageable pageable);
 }
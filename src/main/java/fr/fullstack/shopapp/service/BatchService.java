@@ -0,0 +1,397 @@
+package fr.fullstack.shopapp.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import fr.fullstack.shopapp.cache.SingleFlightCache;
+import fr.fullstack.shopapp.dto.BatchOperation;
+import fr.fullstack.shopapp.dto.BatchRequest;
+import fr.fullstack.shopapp.dto.BatchResponse;
+import fr.fullstack.shopapp.dto.BatchResult;
+import fr.fullstack.shopapp.exception.InvalidRequestException;
+import fr.fullstack.shopapp.exception.ResourceNotFoundException;
+import fr.fullstack.shopapp.model.Category;
+import fr.fullstack.shopapp.model.Product;
+import fr.fullstack.shopapp.model.Shop;
+import fr.fullstack.shopapp.model.ShopDeletionJob;
+import fr.fullstack.shopapp.repository.CategoryRepository;
+import fr.fullstack.shopapp.repository.ProductRepository;
+import fr.fullstack.shopapp.repository.ShopRepository;
+import fr.fullstack.shopapp.util.ErrorValidation;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.validation.Validator;
+import org.hibernate.Hibernate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.beanvalidation.SpringValidatorAdapter;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Runs the operations of a batch in order.
+ * Atomic batches run in one transaction: entities are saved without the per-operation flush and
+ * refresh, so the inserts and updates are sent in JDBC batches at the end, and the first failure
+ * rolls everything back. Other batches run each operation in its own transaction, like the
+ * individual endpoints, and go on after a failure.
+ */
+@Service
+public class BatchService {
+    private final CategoryRepository categoryRepository;
+
+    private final CategoryService categoryService;
+
+    @PersistenceContext
+    private EntityManager em;
+
+    @Value("${shopapp.batch.max-operations:1000}")
+    private int maxOperations;
+
+    private final ObjectMapper objectMapper;
+
+    private final ProductRepository productRepository;
+
+    private final ProductService productService;
+
+    private final ShopRepository shopRepository;
+
+    private final ShopService shopService;
+
+    private final SingleFlightCache singleFlightCache;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final SpringValidatorAdapter validator;
+
+    public BatchService(
+            CategoryRepository categoryRepository,
+            CategoryService categoryService,
+            ObjectMapper objectMapper,
+            ProductRepository productRepository,
+            ProductService productService,
+            ShopRepository shopRepository,
+            ShopService shopService,
+            SingleFlightCache singleFlightCache,
+            PlatformTransactionManager transactionManager,
+            Validator validator
+    ) {
+        this.categoryRepository = categoryRepository;
+        this.categoryService = categoryService;
+        this.objectMapper = objectMapper;
+        this.productRepository = productRepository;
+        this.productService = productService;
+        this.shopRepository = shopRepository;
+        this.shopService = shopService;
+        this.singleFlightCache = singleFlightCache;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // The validator configured by Spring Boot
+        this.validator = new SpringValidatorAdapter(validator);
+    }
+
+    public BatchResponse execute(BatchRequest request) {
+        if (request.getOperations().size() > maxOperations) {
+            throw new InvalidRequestException("A batch may not contain more than " + maxOperations + " operations");
+        }
+        Set<String> refs = new HashSet<String>();
+        for (BatchOperation operation : request.getOperations()) {
+            if (operation.getRef() != null && !refs.add(operation.getRef())) {
+                throw new InvalidRequestException("Reference " + operation.getRef() + " is used more than once");
+            }
+        }
+        return request.getAtomic() ? executeAtomic(request.getOperations()) : executeEach(request.getOperations());
+    }
+
+    private BatchResponse executeAtomic(List<BatchOperation> operations) {
+        List<BatchResult> results = new ArrayList<BatchResult>();
+        List<String> evictions = new ArrayList<String>();
+        Boolean committed = transactionTemplate.execute(status -> {
+            Map<String, Long> refs = new HashMap<String, Long>();
+            for (int i = 0; i < operations.size(); i++) {
+                BatchOperation operation = operations.get(i);
+                try {
+                    BatchResult result = run(i, operation, refs, false);
+                    results.add(result);
+                    evictions.add(evictionKey(operation.getResource(), result.getId()));
+                } catch (RuntimeException e) {
+                    status.setRollbackOnly();
+                    results.add(BatchResult.failure(i, operation.getRef(), statusOf(e), e.getMessage()));
+                    for (int j = i + 1; j < operations.size(); j++) {
+                        results.add(BatchResult.failure(j, operations.get(j).getRef(),
+                                HttpStatus.FAILED_DEPENDENCY.value(), "Operation " + i + " failed"));
+                    }
+                    return false;
+                }
+            }
+
+            try {
+                em.flush();
+            } catch (RuntimeException e) {
+                // Nothing tells which statement of the JDBC batch failed
+                status.setRollbackOnly();
+                for (BatchResult result : results) {
+                    result.setBody(null);
+                    result.setError(e.getMessage());
+                    result.setStatus(statusOf(e));
+                }
+                return false;
+            }
+            em.clear();
+            reloadBodies(operations, results);
+            return true;
+        });
+
+        if (Boolean.TRUE.equals(committed)) {
+            for (String key : evictions) {
+                if (key != null) {
+                    singleFlightCache.evict(key);
+                }
+            }
+        }
+        return new BatchResponse(Boolean.TRUE.equals(committed), results);
+    }
+
+    private BatchResponse executeEach(List<BatchOperation> operations) {
+        List<BatchResult> results = new ArrayList<BatchResult>();
+        Map<String, Long> refs = new HashMap<String, Long>();
+        boolean committed = true;
+        for (int i = 0; i < operations.size(); i++) {
+            BatchOperation operation = operations.get(i);
+            int index = i;
+            try {
+                BatchResult result = transactionTemplate.execute(status -> run(index, operation, refs, true));
+                results.add(result);
+                String key = evictionKey(operation.getResource(), result.getId());
+                if (key != null) {
+                    singleFlightCache.evict(key);
+                }
+            } catch (RuntimeException e) {
+                // The commit can fail after the operation ran
+                if (operation.getRef() != null) {
+                    refs.put(operation.getRef(), null);
+                }
+                committed = false;
+                results.add(BatchResult.failure(i, operation.getRef(), statusOf(e), e.getMessage()));
+            }
+        }
+        return new BatchResponse(committed, results);
+    }
+
+    private String evictionKey(BatchOperation.Resource resource, Long id) {
+        switch (resource) {
+            case SHOPS:
+                return "shop:" + id + ":";
+            case PRODUCTS:
+                return "product:" + id + ":";
+            default:
+                return null;
+        }
+    }
+
+    private ObjectNode prepareBody(BatchOperation operation, Long id, Map<String, Long> refs) {
+        if (operation.getBody() == null) {
+            throw new InvalidRequestException("A body must be provided for " + operation.getMethod());
+        }
+        ObjectNode body = operation.getBody().deepCopy();
+        resolveRefs(body, refs);
+        if (id != null) {
+            body.put("id", id);
+        } else if (operation.getMethod() == BatchOperation.Method.PUT && !body.hasNonNull("id")) {
+            throw new InvalidRequestException("An id must be provided for PUT");
+        }
+        return body;
+    }
+
+    private <T> T readBody(ObjectNode body, Class<T> type) {
+        T entity;
+        try {
+            entity = objectMapper.treeToValue(body, type);
+        } catch (Exception e) {
+            throw new InvalidRequestException("Invalid body: " + e.getMessage());
+        }
+
+        BeanPropertyBindingResult errors = new BeanPropertyBindingResult(entity, "body");
+        validator.validate(entity, errors);
+        if (errors.hasErrors()) {
+            throw new InvalidRequestException(ErrorValidation.getErrorValidationMessage(errors));
+        }
+        return entity;
+    }
+
+    // Reloaded once for the whole batch, with nbProducts and the product shops
+    private void reloadBodies(List<BatchOperation> operations, List<BatchResult> results) {
+        Map<BatchOperation.Resource, Map<Long, Object>> saved = new EnumMap<>(BatchOperation.Resource.class);
+        for (BatchOperation.Resource resource : BatchOperation.Resource.values()) {
+            saved.put(resource, new HashMap<Long, Object>());
+        }
+        for (int i = 0; i < results.size(); i++) {
+            if (operations.get(i).getMethod() != BatchOperation.Method.DELETE) {
+                saved.get(operations.get(i).getResource()).put(results.get(i).getId(), null);
+            }
+        }
+
+        Map<Long, Object> shops = saved.get(BatchOperation.Resource.SHOPS);
+        for (Shop shop : shopRepository.findAllById(Set.copyOf(shops.keySet()))) {
+            Hibernate.initialize(shop.getOpeningHours());
+            shops.put(shop.getId(), shop);
+        }
+        Map<Long, Object> products = saved.get(BatchOperation.Resource.PRODUCTS);
+        for (Product product : productRepository.findByIdIn(Set.copyOf(products.keySet()))) {
+            Hibernate.initialize(product.getCategories());
+            Hibernate.initialize(product.getLocalizedProducts());
+            products.put(product.getId(), product);
+        }
+        Map<Long, Object> categories = saved.get(BatchOperation.Resource.CATEGORIES);
+        for (Category category : categoryRepository.findAllById(Set.copyOf(categories.keySet()))) {
+            categories.put(category.getId(), category);
+        }
+
+        for (int i = 0; i < results.size(); i++) {
+            if (operations.get(i).getMethod() != BatchOperation.Method.DELETE) {
+                results.get(i).setBody(saved.get(operations.get(i).getResource()).get(results.get(i).getId()));
+            }
+        }
+    }
+
+    private Long resolveId(JsonNode id, Map<String, Long> refs) {
+        if (id == null || id.isNull()) {
+            return null;
+        }
+        if (id.isIntegralNumber()) {
+            return id.asLong();
+        }
+        if (id.isObject() && id.size() == 1 && id.has("$ref")) {
+            String ref = id.get("$ref").asText();
+            if (!refs.containsKey(ref)) {
+                throw new InvalidRequestException("Unknown reference " + ref);
+            }
+            if (refs.get(ref) == null) {
+                throw new ResponseStatusException(HttpStatus.FAILED_DEPENDENCY, "Operation " + ref + " failed");
+            }
+            return refs.get(ref);
+        }
+        throw new InvalidRequestException("An id must be a number or a reference");
+    }
+
+    // Replaces the {"$ref": name} objects by {"id": id}
+    private void resolveRefs(JsonNode node, Map<String, Long> refs) {
+        if (node.isObject()) {
+            ObjectNode object = (ObjectNode) node;
+            Iterator<Map.Entry<String, JsonNode>> fields = object.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                JsonNode value = field.getValue();
+                if (value.isObject() && value.size() == 1 && value.has("$ref")) {
+                    field.setValue(objectMapper.createObjectNode().put("id", resolveId(value, refs)));
+                } else {
+                    resolveRefs(value, refs);
+                }
+            }
+        } else if (node.isArray()) {
+            for (int i = 0; i < node.size(); i++) {
+                JsonNode value = node.get(i);
+                if (value.isObject() && value.size() == 1 && value.has("$ref")) {
+                    ((ArrayNode) node)
+                            .set(i, objectMapper.createObjectNode().put("id", resolveId(value, refs)));
+                } else {
+                    resolveRefs(value, refs);
+                }
+            }
+        }
+    }
+
+    private BatchResult run(int index, BatchOperation operation, Map<String, Long> refs, boolean refresh) {
+        if (operation.getRef() != null) {
+            // Failed until the operation succeeds, for the operations referencing it
+            refs.put(operation.getRef(), null);
+        }
+
+        Long id = resolveId(operation.getId(), refs);
+        BatchResult result;
+        if (operation.getMethod() == BatchOperation.Method.DELETE) {
+            if (id == null) {
+                throw new InvalidRequestException("An id must be provided for DELETE");
+            }
+            result = runDelete(index, operation, id);
+        } else {
+            result = runSave(index, operation, prepareBody(operation, id, refs), refresh);
+        }
+
+        if (operation.getRef() != null) {
+            refs.put(operation.getRef(), result.getId());
+        }
+        return result;
+    }
+
+    private BatchResult runDelete(int index, BatchOperation operation, long id) {
+        switch (operation.getResource()) {
+            case SHOPS:
+                ShopDeletionJob job = shopService.deleteShopById(id);
+                return BatchResult.success(index, operation.getRef(), HttpStatus.ACCEPTED.value(), id, job);
+            case PRODUCTS:
+                productService.deleteProductById(id);
+                break;
+            default:
+                categoryService.deleteCategoryById(id);
+        }
+        return BatchResult.success(index, operation.getRef(), HttpStatus.NO_CONTENT.value(), id, null);
+    }
+
+    private BatchResult runSave(int index, BatchOperation operation, ObjectNode body, boolean refresh) {
+        boolean create = operation.getMethod() == BatchOperation.Method.POST;
+        Object saved;
+        long id;
+        switch (operation.getResource()) {
+            case SHOPS:
+                Shop shop = readBody(body, Shop.class);
+                shop = create ? shopService.createShop(shop, refresh) : shopService.updateShop(shop, refresh);
+                saved = shop;
+                id = shop.getId();
+                break;
+            case PRODUCTS:
+                Product product = readBody(body, Product.class);
+                product = create
+                        ? productService.createProduct(product, refresh)
+                        : productService.updateProduct(product, refresh);
+                saved = product;
+                id = product.getId();
+                break;
+            default:
+                Category category = readBody(body, Category.class);
+                category = create ? categoryService.createCategory(category) : categoryService.updateCategory(category);
+                saved = category;
+                id = category.getId();
+        }
+        // Atomic batches fill the bodies once everything is flushed
+        return BatchResult.success(index, operation.getRef(), HttpStatus.OK.value(), id, refresh ? saved : null);
+    }
+
+    private int statusOf(RuntimeException e) {
+        if (e instanceof ResourceNotFoundException) {
+            return HttpStatus.NOT_FOUND.value();
+        }
+        if (e instanceof InvalidRequestException) {
+            return HttpStatus.BAD_REQUEST.value();
+        }
+        if (e instanceof ResponseStatusException statusException) {
+            return statusException.getStatusCode().value();
+        }
+        if (e instanceof DataIntegrityViolationException) {
+            return HttpStatus.CONFLICT.value();
+        }
+        return HttpStatus.INTERNAL_SERVER_ERROR.value();
+    }
+}
@@ -0,0 +1,15 @@
+package fr.fullstack.shopapp.service;
+
+import fr.fullstack.shopapp.model.ChangeEntityType;
+import fr.fullstack.shopapp.model.ChangeOperation;
+
+/**
+ * Published for every change recorded in the outbox, listeners usually wait for the commit.
+ */
+public record CatalogChangedEvent(
+        ChangeEntityType entityType,
+        ChangeOperation operation,
+        long entityId,
+        Long shopId
+) {
+}
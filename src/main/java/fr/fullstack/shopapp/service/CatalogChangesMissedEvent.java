@@ -0,0 +1,10 @@
+package fr.fullstack.shopapp.service;
+
+import java.time.Instant;
+
+/**
+ * Published when the changes committed by the other instances since the given time may not have been
+ * received: listeners drop what they keep of the catalog, or catch up from the change_events outbox.
+ */
+public record CatalogChangesMissedEvent(Instant since) {
+}
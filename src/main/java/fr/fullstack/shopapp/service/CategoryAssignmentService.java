@@ -0,0 +1,143 @@
+package fr.fullstack.shopapp.service;
+
+import fr.fullstack.shopapp.cache.SingleFlightCache;
+import fr.fullstack.shopapp.dto.CategoryAssignmentResult;
+import fr.fullstack.shopapp.dto.ProductSelection;
+import fr.fullstack.shopapp.exception.InvalidRequestException;
+import fr.fullstack.shopapp.exception.ResourceNotFoundException;
+import fr.fullstack.shopapp.repository.CategoryRepository;
+import fr.fullstack.shopapp.repository.ShopRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Attaches a category to many products, or detaches it, with one statement on products_categories.
+ * The statement also writes the outbox rows of the products it changed, and the unique
+ * (product_id, category_id) constraint makes attaching an existing link a no-op.
+ */
+@Service
+public class CategoryAssignmentService {
+    private static final String ATTACH = "WITH linked AS ("
+            + "INSERT INTO products_categories (product_id, category_id) "
+            + "SELECT p.id, ? FROM products p WHERE %s "
+            + "ON CONFLICT (product_id, category_id) DO NOTHING "
+            + "RETURNING product_id) ";
+
+    private static final String DETACH = "WITH linked AS ("
+            + "DELETE FROM products_categories WHERE category_id = ? AND product_id IN ("
+            + "SELECT p.id FROM products p WHERE %s) "
+            + "RETURNING product_id) ";
+
+    private static final String RECORD_CHANGES = ", recorded AS ("
+            + "INSERT INTO change_events (created_at, entity_id, entity_type, operation, shop_id) "
+            + "SELECT now(), p.id, 'PRODUCT', 'UPDATED', p.shop_id "
+            + "FROM products p WHERE p.id IN (SELECT product_id FROM linked) "
+            + "RETURNING entity_id) "
+            + "SELECT entity_id FROM recorded";
+
+    private final ApplicationEventPublisher applicationEventPublisher;
+
+    private final CategoryRepository categoryRepository;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${shopapp.category-assignment.max-ids:100000}")
+    private int maxIds;
+
+    private final ShopRepository shopRepository;
+
+    private final SingleFlightCache singleFlightCache;
+
+    public CategoryAssignmentService(
+            ApplicationEventPublisher applicationEventPublisher,
+            CategoryRepository categoryRepository,
+            JdbcTemplate jdbcTemplate,
+            ShopRepository shopRepository,
+            SingleFlightCache singleFlightCache
+    ) {
+        this.applicationEventPublisher = applicationEventPublisher;
+        this.categoryRepository = categoryRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.shopRepository = shopRepository;
+        this.singleFlightCache = singleFlightCache;
+    }
+
+    @Transactional
+    public CategoryAssignmentResult attach(long categoryId, ProductSelection selection) {
+        return assign(ATTACH, categoryId, selection);
+    }
+
+    @Transactional
+    public CategoryAssignmentResult detach(long categoryId, ProductSelection selection) {
+        return assign(DETACH, categoryId, selection);
+    }
+
+    private CategoryAssignmentResult assign(String statement, long categoryId, ProductSelection selection) {
+        if (!categoryRepository.existsById(categoryId)) {
+            throw new ResourceNotFoundException("Category with id " + categoryId + " not found");
+        }
+
+        List<Object> parameters = new ArrayList<Object>();
+        parameters.add(categoryId);
+        String where = where(selection, parameters);
+        List<Long> changed = jdbcTemplate.queryForList(
+                String.format(statement, where) + RECORD_CHANGES, Long.class, parameters.toArray()
+        );
+
+        if (!changed.isEmpty()) {
+            long[] ids = new long[changed.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = changed.get(i);
+            }
+            applicationEventPublisher.publishEvent(new ProductsChangedEvent(ids));
+            // After the commit, so a concurrent read cannot cache the old categories again. One pass over the
+            // micro-cache instead of one per product
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    singleFlightCache.evict("product:");
+                }
+            });
+        }
+        return new CategoryAssignmentResult(categoryId, changed.size());
+    }
+
+    private String where(ProductSelection selection, List<Object> parameters) {
+        if (selection.getProductIds() != null) {
+            if (selection.getProductIds().size() > maxIds) {
+                throw new InvalidRequestException("No more than " + maxIds + " product ids may be provided");
+            }
+            parameters.add(selection.getProductIds().toArray(new Long[0]));
+            // Products of a shop being deleted are left alone
+            return "p.id = ANY(?) AND NOT EXISTS (SELECT 1 FROM shops s WHERE s.id = p.shop_id AND s.deleted)";
+        }
+
+        if (!shopRepository.findByIdAndDeletedFalse(selection.getShopId()).isPresent()) {
+            throw new ResourceNotFoundException("Shop with id " + selection.getShopId() + " not found");
+        }
+        // Filtering on shop_id keeps the statement on one partition
+        StringBuilder where = new StringBuilder("p.shop_id = ?");
+        parameters.add(selection.getShopId());
+        if (selection.getCategoryId() != null) {
+            where.append(" AND p.id IN (SELECT pc.product_id FROM products_categories pc WHERE pc.category_id = ?)");
+            parameters.add(selection.getCategoryId());
+        }
+        if (selection.getMinPrice() != null) {
+            where.append(" AND p.price >= ?");
+            parameters.add(selection.getMinPrice());
+        }
+        if (selection.getMaxPrice() != null) {
+            where.append(" AND p.price <= ?");
+            parameters.add(selection.getMaxPrice());
+        }
+        return where.toString();
+    }
+}
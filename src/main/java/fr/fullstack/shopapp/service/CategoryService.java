@@ -1,13 +1,18 @@
 package fr.fullstack.shopapp.service;
 
+import fr.fullstack.shopapp.dto.PageResponse;
+import fr.fullstack.shopapp.exception.ResourceNotFoundException;
 import fr.fullstack.shopapp.model.Category;
+import fr.fullstack.shopapp.model.ChangeEntityType;
+import fr.fullstack.shopapp.model.ChangeOperation;
 import fr.fullstack.shopapp.model.Product;
+import fr.fullstack.shopapp.readmodel.CatalogReadModel;
 import fr.fullstack.shopapp.repository.CategoryRepository;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -16,51 +21,68 @@ import java.util.Optional;
 
 @Service
 public class CategoryService {
+    @Autowired
+    private CatalogReadModel catalogReadModel;
+
     @Autowired
     private CategoryRepository categoryRepository;
 
+    @Autowired
+    private ChangeFeedService changeFeedService;
+
+    @Autowired
+    private CountCache countCache;
+
     @PersistenceContext
     private EntityManager em;
 
-    public Category createCategory(Category category) throws Exception {
-        try {
-            return categoryRepository.save(category);
-        } catch (Exception e) {
-            throw new Exception(e.getMessage());
-        }
+    @Transactional
+    public Category createCategory(Category category) {
+        Category newCategory = categoryRepository.save(category);
+        changeFeedService.recordChange(
+                ChangeEntityType.CATEGORY, ChangeOperation.CREATED, newCategory.getId(), null
+        );
+        return newCategory;
     }
 
     @Transactional
-    public void deleteCategoryById(long id) throws Exception {
-        try {
-            Category category = getCategory(id);
-            // delete nested relations with products
-            deleteNestedRelations(category);
-            categoryRepository.deleteById(id);
-        } catch (Exception e) {
-            throw new Exception(e.getMessage());
-        }
+    public void deleteCategoryById(long id) {
+        Category category = getCategory(id);
+        // delete nested relations with products
+        deleteNestedRelations(category);
+        categoryRepository.deleteById(id);
+        changeFeedService.recordChange(ChangeEntityType.CATEGORY, ChangeOperation.DELETED, id, null);
     }
 
-    public Category getCategoryById(long id) throws Exception {
-        try {
-            return getCategory(id);
-        } catch (Exception e) {
-            throw new Exception(e.getMessage());
-        }
+    public Category getCategoryById(long id) {
+        return catalogReadModel.findCategory(id).orElseGet(() -> getCategory(id));
     }
 
-    public Page<Category> getCategoryList(Pageable pageable) {
-        return categoryRepository.findByOrderByIdAsc(pageable);
-    }
+    public PageResponse<Category> getCategoryList(boolean withTotal, Pageable pageable) {
+        if (catalogReadModel.canServe(pageable)) {
+            Slice<Category> categories = catalogReadModel.findCategories(pageable);
+            if (!withTotal) {
+                return PageResponse.of(categories);
+            }
+            return PageResponse.of(categories, catalogReadModel.countCategories());
+        }
 
-    public Category updateCategory(Category category) throws Exception {
-        try {
-            getCategory(category.getId());
-            return this.createCategory(category);
-        } catch (Exception e) {
-            throw new Exception(e.getMessage());
+        Slice<Category> categories = categoryRepository.findByOrderByIdAsc(pageable);
+        if (!withTotal) {
+            return PageResponse.of(categories);
         }
+
+        return PageResponse.of(categories, countCache.count("categories", categoryRepository::count));
+    }
+
+    @Transactional
+    public Category updateCategory(Category category) {
+        getCategory(category.getId());
+        Category updatedCategory = categoryRepository.save(category);
+        changeFeedService.recordChange(
+                ChangeEntityType.CATEGORY, ChangeOperation.UPDATED, updatedCategory.getId(), null
+        );
+        return updatedCategory;
     }
 
     private void deleteNestedRelations(Category category) {
@@ -72,13 +94,15 @@ public class CategoryService {
             product.setCategories(categories);
             em.merge(product);
             em.flush();
+            Long shopId = product.getShop() != null ? product.getShop().getId() : null;
+            changeFeedService.recordChange(ChangeEntityType.PRODUCT, ChangeOperation.UPDATED, product.getId(), shopId);
         }
     }
 
-    private Category getCategory(Long id) throws Exception {
+    private Category getCategory(Long id) {
         Optional<Category> category = categoryRepository.findById(id);
         if (!category.isPresent()) {
-            throw new Exception("Category with id " + id + " not found");
+            throw new ResourceNotFoundException("Category with id " + id + " not found");
         }
         return category.get();
     }
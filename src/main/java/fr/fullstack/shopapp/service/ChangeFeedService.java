@@ -0,0 +1,262 @@
+package fr.fullstack.shopapp.service;
+
+import fr.fullstack.shopapp.model.ChangeEntityType;
+import fr.fullstack.shopapp.model.ChangeEvent;
+import fr.fullstack.shopapp.model.ChangeOperation;
+import fr.fullstack.shopapp.repository.ChangeEventRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Change feed backed by the change_events outbox.
+ * Writes record their change in the caller's transaction; a poller then pushes committed
+ * events to the subscribed SSE emitters. Emitters are async responses, so idle subscribers
+ * do not hold a request thread. Each subscriber has a bounded queue drained by the sender
+ * threads, so a slow client never blocks the poller; one that falls too far behind is
+ * disconnected, and resumes from its Last-Event-ID.
+ */
+@Service
+public class ChangeFeedService {
+    private static final int BATCH_SIZE = 500;
+
+    private static final long EMITTER_TIMEOUT_MS = Duration.ofMinutes(30).toMillis();
+
+    private static final int SENDER_THREADS = 4;
+
+    @Autowired
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    @Autowired
+    private ChangeEventRepository changeEventRepository;
+
+    // Last event pushed by the poller, only used from the scheduler thread
+    private long cursor = -1;
+
+    private long gapSince = 0;
+
+    @Value("${shopapp.change-feed.gap-timeout-ms:2000}")
+    private long gapTimeoutMs;
+
+    @Value("${shopapp.change-feed.queue-capacity:1000}")
+    private int queueCapacity;
+
+    @Value("${shopapp.change-feed.retention:7d}")
+    private Duration retention;
+
+    private final ExecutorService senders = Executors.newFixedThreadPool(SENDER_THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "change-feed-sender");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    @Scheduled(fixedDelayString = "${shopapp.change-feed.poll-interval-ms:500}")
+    public void dispatchNewEvents() {
+        if (cursor < 0) {
+            cursor = changeEventRepository.findMaxId();
+            return;
+        }
+
+        List<ChangeEvent> events = changeEventRepository.findByIdGreaterThanOrderByIdAsc(
+                cursor, PageRequest.of(0, BATCH_SIZE)
+        );
+        for (ChangeEvent event : events) {
+            // A missing id is either a rolled back transaction or one that has not committed yet:
+            // wait a little for it before moving on
+            if (event.getId() != cursor + 1 && !gapExpired()) {
+                return;
+            }
+            gapSince = 0;
+            cursor = event.getId();
+            for (Subscription subscription : subscriptions) {
+                subscription.offer(event);
+            }
+        }
+    }
+
+    @Transactional
+    @Scheduled(cron = "${shopapp.change-feed.purge-cron:0 0 3 * * *}")
+    public void purgeOldEvents() {
+        changeEventRepository.deleteByCreatedAtBefore(Instant.now().minus(retention));
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordChange(ChangeEntityType entityType, ChangeOperation operation, long entityId, Long shopId) {
+        changeEventRepository.save(new ChangeEvent(entityType, operation, entityId, shopId));
+        applicationEventPublisher.publishEvent(new CatalogChangedEvent(entityType, operation, entityId, shopId));
+    }
+
+    @Scheduled(fixedRateString = "${shopapp.change-feed.heartbeat-ms:15000}")
+    public void sendHeartbeats() {
+        for (Subscription subscription : subscriptions) {
+            senders.execute(subscription::sendHeartbeat);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        senders.shutdownNow();
+    }
+
+    public SseEmitter subscribe(Optional<Long> shopId, Optional<Long> lastEventId) {
+        SseEmitter emitter = new SseEmitter(EMITTER_TIMEOUT_MS);
+        Subscription subscription = new Subscription(
+                emitter, shopId.orElse(null), lastEventId.orElseGet(changeEventRepository::findMaxId),
+                lastEventId.isPresent()
+        );
+        emitter.onCompletion(() -> subscriptions.remove(subscription));
+        emitter.onError(e -> subscriptions.remove(subscription));
+        emitter.onTimeout(emitter::complete);
+        // Registered first so that the live events are queued while replaying, and sent after
+        subscriptions.add(subscription);
+
+        if (lastEventId.isPresent()) {
+            senders.execute(() -> {
+                try {
+                    replay(subscription);
+                } catch (RuntimeException e) {
+                    subscription.close(e);
+                } finally {
+                    subscription.endReplay();
+                }
+            });
+        }
+        return emitter;
+    }
+
+    /**
+     * Events after the given one that a subscriber filtered on the shop receives, or all of them
+     * without a filter.
+     */
+    List<ChangeEvent> findEventsAfter(long id, Long shopId) {
+        PageRequest page = PageRequest.of(0, BATCH_SIZE);
+        return shopId == null
+                ? changeEventRepository.findByIdGreaterThanOrderByIdAsc(id, page)
+                : changeEventRepository.findForShopAfter(id, shopId, page);
+    }
+
+    private boolean gapExpired() {
+        long now = System.currentTimeMillis();
+        if (gapSince == 0) {
+            gapSince = now;
+        }
+        return now - gapSince >= gapTimeoutMs;
+    }
+
+    private void replay(Subscription subscription) {
+        List<ChangeEvent> events;
+        do {
+            events = findEventsAfter(subscription.lastEventId, subscription.shopId);
+            for (ChangeEvent event : events) {
+                subscription.send(event);
+            }
+        } while (events.size() == BATCH_SIZE && subscriptions.contains(subscription));
+    }
+
+    private class Subscription {
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        private final SseEmitter emitter;
+
+        private volatile long lastEventId;
+
+        // Live events waiting to be sent
+        private final BlockingQueue<ChangeEvent> queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        private volatile boolean replaying;
+
+        private final Long shopId;
+
+        Subscription(SseEmitter emitter, Long shopId, long lastEventId, boolean replaying) {
+            this.emitter = emitter;
+            this.shopId = shopId;
+            this.lastEventId = lastEventId;
+            this.replaying = replaying;
+        }
+
+        void close(Exception e) {
+            subscriptions.remove(this);
+            emitter.completeWithError(e);
+        }
+
+        void endReplay() {
+            replaying = false;
+            drainLater();
+        }
+
+        void offer(ChangeEvent event) {
+            if (!queue.offer(event)) {
+                close(new IllegalStateException("Subscriber more than " + queueCapacity + " events behind"));
+                return;
+            }
+            drainLater();
+        }
+
+        synchronized void send(ChangeEvent event) {
+            if (event.getId() <= lastEventId) {
+                return;
+            }
+            lastEventId = event.getId();
+            // Events without a shop (categories) are sent to every subscriber
+            if (shopId != null && event.getShopId() != null && !shopId.equals(event.getShopId())) {
+                return;
+            }
+
+            try {
+                emitter.send(SseEmitter.event()
+                        .id(String.valueOf(event.getId()))
+                        .name(event.getEntityType().name().toLowerCase())
+                        .data(event));
+            } catch (IOException | IllegalStateException e) {
+                close(e);
+            }
+        }
+
+        synchronized void sendHeartbeat() {
+            try {
+                emitter.send(SseEmitter.event().comment("heartbeat"));
+            } catch (IOException | IllegalStateException e) {
+                close(e);
+            }
+        }
+
+        private void drain() {
+            ChangeEvent event;
+            while ((event = queue.poll()) != null) {
+                send(event);
+            }
+            draining.set(false);
+            // An event offered after the last poll, but before the flag was cleared
+            if (!queue.isEmpty()) {
+                drainLater();
+            }
+        }
+
+        private void drainLater() {
+            if (!replaying && draining.compareAndSet(false, true)) {
+                senders.execute(this::drain);
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package fr.fullstack.shopapp.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps the result of COUNT queries for a short time, so that list endpoints asking for
+ * a total do not pay a full count on every page. Totals may lag behind writes by up to the TTL.
+ */
+@Component
+public class CountCache {
+    private static final int MAX_ENTRIES = 1000;
+
+    private final Map<String, CachedCount> counts = new ConcurrentHashMap<>();
+
+    @Value("${shopapp.count-cache.ttl:30s}")
+    private Duration ttl;
+
+    public long count(String key, LongSupplier counter) {
+        long now = System.nanoTime();
+        CachedCount cached = counts.get(key);
+        if (cached != null && now - cached.loadedAt < ttl.toNanos()) {
+            return cached.value;
+        }
+
+        long value = counter.getAsLong();
+        if (counts.size() >= MAX_ENTRIES) {
+            counts.clear();
+        }
+        counts.put(key, new CachedCount(value, now));
+        return value;
+    }
+
+    private record CachedCount(long value, long loadedAt) {
+    }
+}
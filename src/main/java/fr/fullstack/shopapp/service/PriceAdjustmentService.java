@@ -0,0 +1,219 @@
+package fr.fullstack.shopapp.service;
+
+import fr.fullstack.shopapp.cache.SingleFlightCache;
+import fr.fullstack.shopapp.dto.PriceAdjustmentRequest;
+import fr.fullstack.shopapp.exception.ResourceNotFoundException;
+import fr.fullstack.shopapp.model.PriceAdjustment;
+import fr.fullstack.shopapp.model.PriceAdjustmentStatus;
+import fr.fullstack.shopapp.model.PriceAdjustmentType;
+import fr.fullstack.shopapp.repository.CategoryRepository;
+import fr.fullstack.shopapp.repository.PriceAdjustmentRepository;
+import fr.fullstack.shopapp.repository.ShopRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Changes the price of all the products matching a shop, a category and a price range.
+ * The update walks the matching products in id order, one chunk per short transaction with its
+ * outbox rows and the progress of the audit record. Walking by id, and not by the criteria, updates
+ * each product once even when the new price still falls in the range.
+ */
+@Service
+public class PriceAdjustmentService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PriceAdjustmentService.class);
+
+    private static final String UPDATE_CHUNK = "WITH chunk AS ("
+            + "SELECT p.id FROM products p WHERE %s AND p.id > ? ORDER BY p.id LIMIT ?), "
+            + "updated AS ("
+            + "UPDATE products p SET price = %s FROM chunk WHERE p.id = chunk.id "
+            + "RETURNING p.id, p.shop_id), "
+            + "recorded AS ("
+            + "INSERT INTO change_events (created_at, entity_id, entity_type, operation, shop_id) "
+            + "SELECT now(), id, 'PRODUCT', 'UPDATED', shop_id FROM updated "
+            + "RETURNING entity_id) "
+            + "SELECT entity_id FROM recorded";
+
+    private final ApplicationEventPublisher applicationEventPublisher;
+
+    private final CategoryRepository categoryRepository;
+
+    @Value("${shopapp.price-adjustment.chunk-size:1000}")
+    private int chunkSize;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final PriceAdjustmentRepository priceAdjustmentRepository;
+
+    private final ShopRepository shopRepository;
+
+    private final SingleFlightCache singleFlightCache;
+
+    private final TransactionTemplate transactionTemplate;
+
+    public PriceAdjustmentService(
+            ApplicationEventPublisher applicationEventPublisher,
+            CategoryRepository categoryRepository,
+            JdbcTemplate jdbcTemplate,
+            PriceAdjustmentRepository priceAdjustmentRepository,
+            ShopRepository shopRepository,
+            SingleFlightCache singleFlightCache,
+            PlatformTransactionManager transactionManager
+    ) {
+        this.applicationEventPublisher = applicationEventPublisher;
+        this.categoryRepository = categoryRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.priceAdjustmentRepository = priceAdjustmentRepository;
+        this.shopRepository = shopRepository;
+        this.singleFlightCache = singleFlightCache;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public PriceAdjustment adjustPrices(PriceAdjustmentRequest request) {
+        if (request.getShopId() != null && !shopRepository.findByIdAndDeletedFalse(request.getShopId()).isPresent()) {
+            throw new ResourceNotFoundException("Shop with id " + request.getShopId() + " not found");
+        }
+        if (request.getCategoryId() != null && !categoryRepository.existsById(request.getCategoryId())) {
+            throw new ResourceNotFoundException("Category with id " + request.getCategoryId() + " not found");
+        }
+
+        List<Object> parameters = new ArrayList<Object>();
+        String where = where(request, parameters);
+        Long matched = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM products p WHERE " + where, Long.class, parameters.toArray()
+        );
+        if (request.getDryRun()) {
+            return newAdjustment(request, matched, PriceAdjustmentStatus.DRY_RUN);
+        }
+
+        PriceAdjustment adjustment = priceAdjustmentRepository.save(
+                newAdjustment(request, matched, PriceAdjustmentStatus.RUNNING)
+        );
+        try {
+            String statement = String.format(UPDATE_CHUNK, where, newPrice(request.getType()));
+            // Until an empty chunk, a product deleted meanwhile can make a chunk short
+            long lastId = 0;
+            int updated;
+            do {
+                long cursor = lastId;
+                List<Long> ids = transactionTemplate.execute(status -> updateChunk(
+                        statement, parameters, request.getValue(), cursor, adjustment.getId()
+                ));
+                updated = ids.size();
+                for (long id : ids) {
+                    lastId = Math.max(lastId, id);
+                }
+                // After the commit of the chunk, so a concurrent read cannot cache the old price again
+                if (updated > 0) {
+                    singleFlightCache.evict("product:");
+                }
+            } while (updated > 0);
+
+            jdbcTemplate.update(
+                    "UPDATE price_adjustments SET status = 'COMPLETED', finished_at = now() WHERE id = ?",
+                    adjustment.getId()
+            );
+        } catch (RuntimeException e) {
+            // The chunks already committed stay applied, the record tells how far the update went
+            LOGGER.error("Price adjustment {} failed", adjustment.getId(), e);
+            jdbcTemplate.update(
+                    "UPDATE price_adjustments SET status = 'FAILED', error = ?, finished_at = now() WHERE id = ?",
+                    StringUtils.truncate(String.valueOf(e.getMessage()), 1000), adjustment.getId()
+            );
+        }
+        return getPriceAdjustment(adjustment.getId());
+    }
+
+    public PriceAdjustment getPriceAdjustment(long id) {
+        Optional<PriceAdjustment> adjustment = priceAdjustmentRepository.findById(id);
+        if (!adjustment.isPresent()) {
+            throw new ResourceNotFoundException("Price adjustment with id " + id + " not found");
+        }
+        return adjustment.get();
+    }
+
+    private PriceAdjustment newAdjustment(PriceAdjustmentRequest request, long matched, PriceAdjustmentStatus status) {
+        return new PriceAdjustment(
+                request.getShopId(),
+                request.getCategoryId(),
+                request.getMinPrice(),
+                request.getMaxPrice(),
+                request.getType(),
+                request.getValue(),
+                matched,
+                status
+        );
+    }
+
+    private String newPrice(PriceAdjustmentType type) {
+        String price = type == PriceAdjustmentType.AMOUNT ? "p.price + ?" : "p.price * (1 + ? / 100.0)";
+        return "GREATEST(0, ROUND((" + price + ")::numeric, 2))";
+    }
+
+    private List<Long> updateChunk(
+            String statement,
+            List<Object> whereParameters,
+            float value,
+            long lastId,
+            long adjustmentId
+    ) {
+        List<Object> parameters = new ArrayList<Object>(whereParameters);
+        parameters.add(lastId);
+        parameters.add(chunkSize);
+        // The new price comes after the chunk in the statement
+        parameters.add(value);
+        List<Long> ids = jdbcTemplate.queryForList(statement, Long.class, parameters.toArray());
+
+        long chunkLastId = lastId;
+        long[] productIds = new long[ids.size()];
+        for (int i = 0; i < productIds.length; i++) {
+            productIds[i] = ids.get(i);
+            chunkLastId = Math.max(chunkLastId, productIds[i]);
+        }
+        jdbcTemplate.update(
+                "UPDATE price_adjustments SET products_updated = products_updated + ?, last_product_id = ? "
+                        + "WHERE id = ?",
+                ids.size(), chunkLastId, adjustmentId
+        );
+        // In the transaction of the chunk: the listeners run after its commit, and the other
+        // instances are notified with it
+        if (productIds.length > 0) {
+            applicationEventPublisher.publishEvent(new ProductsChangedEvent(productIds));
+        }
+        return ids;
+    }
+
+    private String where(PriceAdjustmentRequest request, List<Object> parameters) {
+        // Products of a shop being deleted are left alone
+        StringBuilder where = new StringBuilder(
+                "NOT EXISTS (SELECT 1 FROM shops s WHERE s.id = p.shop_id AND s.deleted)"
+        );
+        if (request.getShopId() != null) {
+            where.append(" AND p.shop_id = ?");
+            parameters.add(request.getShopId());
+        }
+        if (request.getCategoryId() != null) {
+            where.append(" AND p.id IN (SELECT pc.product_id FROM products_categories pc WHERE pc.category_id = ?)");
+            parameters.add(request.getCategoryId());
+        }
+        if (request.getMinPrice() != null) {
+            where.append(" AND p.price >= ?");
+            parameters.add(request.getMinPrice());
+        }
+        if (request.getMaxPrice() != null) {
+            where.append(" AND p.price <= ?");
+            parameters.add(request.getMaxPrice());
+        }
+        return where.toString();
+    }
+}
@@ -0,0 +1,157 @@
+package fr.fullstack.shopapp.service;
+
+import fr.fullstack.shopapp.dto.SearchResponse;
+import fr.fullstack.shopapp.exception.InvalidRequestException;
+import fr.fullstack.shopapp.model.Locale;
+import fr.fullstack.shopapp.model.Product;
+import fr.fullstack.shopapp.repository.ProductRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Full-text search of the products on the search_vector column of their localizations
+ * (see sql/product_search.sql), with the text search configuration of the requested locale.
+ * Only the first max-candidates matching localizations are ranked, which bounds the cost of
+ * frequent words; pages are walked with a (rank, product id) cursor.
+ */
+@Service
+public class ProductSearchService {
+    // %1$s is the text search configuration and %2$s the locale, both from the Locale enum, inlined so
+    // that the planner picks the partial index of the locale even with a generic plan
+    private static final String SEARCH = "SELECT m.product_id, m.rank FROM ("
+            + "SELECT pl.product_id, ts_rank(l.search_vector, websearch_to_tsquery('%1$s', ?)) AS rank "
+            + "FROM localized_product l "
+            + "JOIN products_localized_product pl ON pl.localized_product_id = l.id "
+            + "JOIN products p ON p.id = pl.product_id "
+            + "WHERE l.locale = '%2$s' AND l.search_vector @@ websearch_to_tsquery('%1$s', ?) "
+            + "AND NOT EXISTS (SELECT 1 FROM shops s WHERE s.id = p.shop_id AND s.deleted)%3$s "
+            + "LIMIT ?) m%4$s "
+            + "ORDER BY m.rank DESC, m.product_id LIMIT ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${shopapp.search.max-candidates:10000}")
+    private int maxCandidates;
+
+    @Value("${shopapp.search.max-size:100}")
+    private int maxSize;
+
+    private final ProductRepository productRepository;
+
+    public ProductSearchService(JdbcTemplate jdbcTemplate, ProductRepository productRepository) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.productRepository = productRepository;
+    }
+
+    public SearchResponse<Product> searchProducts(
+            String query,
+            String locale,
+            Optional<Long> shopId,
+            Optional<Long> categoryId,
+            Optional<Float> minPrice,
+            Optional<Float> maxPrice,
+            int size,
+            Optional<String> cursor
+    ) {
+        if (query.isBlank()) {
+            throw new InvalidRequestException("The search query may not be empty");
+        }
+        if (size < 1 || size > maxSize) {
+            throw new InvalidRequestException("Size must be between 1 and " + maxSize);
+        }
+
+        List<Object> parameters = new ArrayList<Object>();
+        parameters.add(query);
+        parameters.add(query);
+        StringBuilder filters = new StringBuilder();
+        if (shopId.isPresent()) {
+            // Keeps the join on products to one partition
+            filters.append(" AND p.shop_id = ?");
+            parameters.add(shopId.get());
+        }
+        if (categoryId.isPresent()) {
+            filters.append(" AND EXISTS (SELECT 1 FROM products_categories pc "
+                    + "WHERE pc.product_id = p.id AND pc.category_id = ?)");
+            parameters.add(categoryId.get());
+        }
+        if (minPrice.isPresent()) {
+            filters.append(" AND p.price >= ?");
+            parameters.add(minPrice.get());
+        }
+        if (maxPrice.isPresent()) {
+            filters.append(" AND p.price <= ?");
+            parameters.add(maxPrice.get());
+        }
+        parameters.add(maxCandidates);
+
+        String after = "";
+        if (cursor.isPresent()) {
+            after = " WHERE m.rank < ? OR (m.rank = ? AND m.product_id > ?)";
+            Object[] position = decodeCursor(cursor.get());
+            parameters.add(position[0]);
+            parameters.add(position[0]);
+            parameters.add(position[1]);
+        }
+        // One more row tells whether there is a next page
+        parameters.add(size + 1);
+
+        String sql = String.format(SEARCH, configuration(locale), locale, filters, after);
+        List<Long> ids = new ArrayList<Long>();
+        List<Float> ranks = new ArrayList<Float>();
+        jdbcTemplate.query(sql, rs -> {
+            ids.add(rs.getLong("product_id"));
+            ranks.add(rs.getFloat("rank"));
+        }, parameters.toArray());
+
+        boolean hasNext = ids.size() > size;
+        int count = Math.min(ids.size(), size);
+        String nextCursor = hasNext ? encodeCursor(ranks.get(count - 1), ids.get(count - 1)) : null;
+
+        Map<Long, Product> products = new HashMap<Long, Product>();
+        for (Product product : productRepository.findByIdIn(ids.subList(0, count))) {
+            products.put(product.getId(), product);
+        }
+        List<Product> content = new ArrayList<Product>(count);
+        for (Long id : ids.subList(0, count)) {
+            // Deleted between the two queries
+            if (products.containsKey(id)) {
+                content.add(products.get(id));
+            }
+        }
+        return new SearchResponse<Product>(content, nextCursor);
+    }
+
+    private String configuration(String locale) {
+        try {
+            return switch (Locale.valueOf(locale)) {
+                case FR -> "french";
+                case EN -> "english";
+            };
+        } catch (IllegalArgumentException e) {
+            throw new InvalidRequestException("Locale must be FR or EN");
+        }
+    }
+
+    private Object[] decodeCursor(String cursor) {
+        try {
+            String[] position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+            return new Object[] {Float.parseFloat(position[0]), Long.parseLong(position[1])};
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            throw new InvalidRequestException("Invalid cursor");
+        }
+    }
+
+    private String encodeCursor(float rank, long productId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((rank + ":" + productId).getBytes(StandardCharsets.UTF_8));
+    }
+}
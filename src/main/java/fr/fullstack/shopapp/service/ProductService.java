@@ -1,100 +1,321 @@
 package fr.fullstack.shopapp.service;
 
+import fr.fullstack.shopapp.dto.MultiGetResponse;
+import fr.fullstack.shopapp.dto.PageResponse;
+import fr.fullstack.shopapp.exception.InvalidRequestException;
+import fr.fullstack.shopapp.exception.ResourceNotFoundException;
+import fr.fullstack.shopapp.model.CategoryMatch;
+import fr.fullstack.shopapp.model.ChangeEntityType;
+import fr.fullstack.shopapp.model.ChangeOperation;
 import fr.fullstack.shopapp.model.LocalizedProduct;
 import fr.fullstack.shopapp.model.Product;
+import fr.fullstack.shopapp.model.Shop;
+import fr.fullstack.shopapp.projection.FieldSet;
+import fr.fullstack.shopapp.projection.ProductProjection;
+import fr.fullstack.shopapp.readmodel.CatalogReadModel;
 import fr.fullstack.shopapp.repository.ProductRepository;
+import fr.fullstack.shopapp.repository.ShopRepository;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.entity.EntityPersister;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
 public class ProductService {
+    @Autowired
+    private CatalogReadModel catalogReadModel;
+
+    @Autowired
+    private ChangeFeedService changeFeedService;
+
+    @Autowired
+    private CountCache countCache;
+
     @PersistenceContext
     private EntityManager em;
 
+    @Value("${shopapp.category-filter.max-categories:20}")
+    private int maxCategories;
+
+    @Autowired
+    private ProductProjection productProjection;
+
     @Autowired
     private ProductRepository productRepository;
 
+    @Autowired
+    private ShopRepository shopRepository;
+
+    @Transactional
+    public Product createProduct(Product product) {
+        return createProduct(product, true);
+    }
+
+    /**
+     * Without refresh, the insert is left to the next flush and the shop is not loaded:
+     * batches flush once for all their operations.
+     */
     @Transactional
-    public Product createProduct(Product product) throws Exception {
+    public Product createProduct(Product product, boolean refresh) {
         // Check that product exists at least in french and check name's length
-        try {
-            checkLocalizedProducts(product);
-        } catch (Exception e) {
-            throw new Exception(e.getMessage());
-        }
+        checkLocalizedProducts(product);
+        checkShop(product);
+
+        Product newProduct = refresh ? saveProduct(product) : productRepository.save(product);
+        recordChange(ChangeOperation.CREATED, newProduct);
+        return newProduct;
+    }
 
-        try {
-            Product newProduct = productRepository.save(product);
-            em.flush();
-            em.refresh(newProduct);
-            return newProduct;
-        } catch (Exception e) {
-            throw new Exception(e.getMessage());
+    @Transactional
+    public void deleteProductById(long id) {
+        Product product = getProduct(id);
+        productRepository.deleteById(id);
+        recordChange(ChangeOperation.DELETED, product);
+    }
+
+    public MultiGetResponse<Product> getProductsByIds(List<Long> ids) {
+        Map<Long, Product> products = new HashMap<Long, Product>();
+        for (Product product : productRepository.findByIdIn(ids)) {
+            products.put(product.getId(), product);
         }
+        return MultiGetResponse.inRequestOrder(ids, products);
     }
 
-    public void deleteProductById(long id) throws Exception {
-        try {
-            getProduct(id);
-            productRepository.deleteById(id);
-        } catch (Exception e) {
-            throw new Exception(e.getMessage());
+    public Product getProductById(long id) {
+        return catalogReadModel.findProduct(id).orElseGet(() -> getProduct(id));
+    }
+
+    public Map<String, Object> getProductFields(long id, FieldSet fields) {
+        List<Map<String, Object>> products = productProjection.findPage(
+                "WHERE p.id = :id AND " + ProductRepository.VISIBLE, Map.of("id", id), fields, Pageable.unpaged()
+        ).getContent();
+        if (products.isEmpty()) {
+            throw new ResourceNotFoundException("Product with id " + id + " not found");
         }
+        return products.get(0);
     }
 
-    public Product getProductById(long id) throws Exception {
-        try {
-            return getProduct(id);
-        } catch (Exception e) {
-            throw new Exception(e.getMessage());
+    /**
+     * Products of getShopProductList with only the requested fields loaded.
+     */
+    public PageResponse<Map<String, Object>> getShopProductFieldsList(
+            Optional<Long> shopId,
+            List<Long> categoryIds,
+            CategoryMatch categoryMatch,
+            boolean withTotal,
+            Pageable pageable,
+            FieldSet fields
+    ) {
+        List<Long> categories = checkCategories(categoryIds);
+        List<String> conditions = new ArrayList<String>();
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        if (shopId.isPresent()) {
+            conditions.add("p.shop.id = :shopId AND p.shop.deleted = false");
+            parameters.put("shopId", shopId.get());
+        } else {
+            conditions.add(ProductRepository.VISIBLE);
         }
+        if (categories.size() > 1 && categoryMatch == CategoryMatch.ALL) {
+            conditions.add("(SELECT COUNT(c) FROM Product p2 JOIN p2.categories c "
+                    + "WHERE p2.id = p.id AND c.id IN :categoryIds) = :categoryCount");
+            parameters.put("categoryIds", categories);
+            parameters.put("categoryCount", (long) categories.size());
+        } else if (!categories.isEmpty()) {
+            conditions.add("EXISTS (SELECT 1 FROM Product p2 JOIN p2.categories c "
+                    + "WHERE p2.id = p.id AND c.id IN :categoryIds)");
+            parameters.put("categoryIds", categories);
+        }
+        String where = conditions.isEmpty() ? "" : "WHERE " + String.join(" AND ", conditions);
+
+        Slice<Map<String, Object>> products = productProjection.findPage(where, parameters, fields, pageable);
+        if (!withTotal) {
+            return PageResponse.of(products);
+        }
+
+        String key = countKey(shopId, categories, categoryMatch);
+        return PageResponse.of(products, countCache.count(key, () -> productProjection.count(where, parameters)));
     }
 
-    public Page<Product> getShopProductList(Optional<Long> shopId, Optional<Long> categoryId, Pageable pageable) {
-        if (shopId.isPresent() && categoryId.isPresent()) {
-            return productRepository.findByShopAndCategory(shopId.get(), categoryId.get(), pageable);
+    /**
+     * Products, optionally of a shop and of all or any of the categories.
+     */
+    public PageResponse<Product> getShopProductList(
+            Optional<Long> shopId,
+            List<Long> categoryIds,
+            CategoryMatch categoryMatch,
+            boolean withTotal,
+            Pageable pageable
+    ) {
+        List<Long> categories = checkCategories(categoryIds);
+        if (catalogReadModel.canServe(pageable)) {
+            Slice<Product> products = catalogReadModel.findProducts(
+                    shopId.orElse(null), categories, categoryMatch, pageable
+            );
+            if (!withTotal) {
+                return PageResponse.of(products);
+            }
+            return PageResponse.of(
+                    products, catalogReadModel.countProducts(shopId.orElse(null), categories, categoryMatch)
+            );
         }
 
-        if (shopId.isPresent()) {
-            return productRepository.findByShop(shopId.get(), pageable);
+        Slice<Product> products = findShopProducts(shopId, categories, categoryMatch, pageable);
+        if (!withTotal) {
+            return PageResponse.of(products);
         }
 
-        return productRepository.findByOrderByIdAsc(pageable);
+        return PageResponse.of(products, countShopProducts(shopId, categories, categoryMatch));
     }
 
     @Transactional
-    public Product updateProduct(Product product) throws Exception {
-        try {
-            getProduct(product.getId());
-            return this.createProduct(product);
-        } catch (Exception e) {
-            throw new Exception(e.getMessage());
-        }
+    public Product updateProduct(Product product) {
+        return updateProduct(product, true);
     }
 
-    private void checkLocalizedProducts(Product product) throws Exception {
+    @Transactional
+    public Product updateProduct(Product product, boolean refresh) {
+        getProduct(product.getId());
+        checkLocalizedProducts(product);
+        checkShop(product);
+        Product updatedProduct = refresh ? saveProduct(product) : productRepository.save(product);
+        recordChange(ChangeOperation.UPDATED, updatedProduct);
+        return updatedProduct;
+    }
+
+    private void checkLocalizedProducts(Product product) {
         Optional<LocalizedProduct> localizedProductFr = product.getLocalizedProducts()
                 .stream().filter(o -> o.getLocale().equals("FR")).findFirst();
 
         // A name in french must be at least provided
         if (!localizedProductFr.isPresent()) {
-            throw new Exception("A name in french must be at least provided");
+            throw new InvalidRequestException("A name in french must be at least provided");
+        }
+    }
+
+    // The shop is locked until the commit, so that its deletion waits for the product to be attached
+    private void checkShop(Product product) {
+        Shop shop = product.getShop();
+        if (shop != null && !isPendingInsert(shop)
+                && !shopRepository.lockByIdAndDeletedFalse(shop.getId()).isPresent()) {
+            throw new InvalidRequestException("Shop with id " + shop.getId() + " not found or being deleted");
+        }
+    }
+
+    /**
+     * Distinct category ids in ascending order, so that equal filters share their cached counts.
+     */
+    private List<Long> checkCategories(List<Long> categoryIds) {
+        List<Long> categories = categoryIds.stream().distinct().sorted().toList();
+        if (categories.size() > maxCategories) {
+            throw new InvalidRequestException("At most " + maxCategories + " categories can be filtered on");
+        }
+        return categories;
+    }
+
+    private String countKey(Optional<Long> shopId, List<Long> categories, CategoryMatch categoryMatch) {
+        String key = "products" + shopId.map(id -> ":shop=" + id).orElse("");
+        if (categories.size() == 1) {
+            return key + ":category=" + categories.get(0);
+        }
+        if (categories.size() > 1) {
+            return key + ":categories=" + categoryMatch + categories;
         }
+        return key;
+    }
+
+    private long countShopProducts(Optional<Long> shopId, List<Long> categories, CategoryMatch categoryMatch) {
+        String key = countKey(shopId, categories, categoryMatch);
+        boolean all = categories.size() > 1 && categoryMatch == CategoryMatch.ALL;
+        if (shopId.isPresent() && !categories.isEmpty()) {
+            return countCache.count(key, () -> all
+                    ? productRepository.countByShopAndAllCategories(categories, categories.size(), shopId.get())
+                    : productRepository.countByShopAndCategories(categories, shopId.get()));
+        }
+
+        if (!categories.isEmpty()) {
+            return countCache.count(key, () -> all
+                    ? productRepository.countByAllCategories(categories, categories.size())
+                    : productRepository.countByCategories(categories));
+        }
+
+        if (shopId.isPresent()) {
+            return countCache.count(key, () -> productRepository.countByShop(shopId.get()));
+        }
+
+        return countCache.count(key, productRepository::countVisible);
     }
 
-    private Product getProduct(Long id) throws Exception {
-        Optional<Product> product = productRepository.findById(id);
+    private Slice<Product> findShopProducts(
+            Optional<Long> shopId,
+            List<Long> categories,
+            CategoryMatch categoryMatch,
+            Pageable pageable
+    ) {
+        boolean all = categories.size() > 1 && categoryMatch == CategoryMatch.ALL;
+        if (shopId.isPresent() && !categories.isEmpty()) {
+            long count = categories.size();
+            return all
+                    ? productRepository.findByShopAndAllCategories(categories, count, shopId.get(), pageable)
+                    : productRepository.findByShopAndCategories(categories, shopId.get(), pageable);
+        }
+
+        if (!categories.isEmpty()) {
+            return all
+                    ? productRepository.findByAllCategories(categories, categories.size(), pageable)
+                    : productRepository.findByCategories(categories, pageable);
+        }
+
+        if (shopId.isPresent()) {
+            return productRepository.findByShop(shopId.get(), pageable);
+        }
+
+        return productRepository.findByOrderByIdAsc(pageable);
+    }
+
+    private Product getProduct(Long id) {
+        Optional<Product> product = productRepository.findVisibleById(id);
         if (!product.isPresent()) {
-            throw new Exception("Product with id " + id + " not found");
+            throw new ResourceNotFoundException("Product with id " + id + " not found");
         }
         return product.get();
     }
 
+    // Created earlier in the transaction and not flushed yet, as in the batches: no other transaction
+    // can see it to delete it, and the lock query would not find it
+    private boolean isPendingInsert(Shop shop) {
+        SessionImplementor session = em.unwrap(SessionImplementor.class);
+        EntityPersister persister = session.getEntityPersister(Shop.class.getName(), shop);
+        Object managed = session.getPersistenceContextInternal()
+                .getEntity(session.generateEntityKey(shop.getId(), persister));
+        if (!(managed instanceof Shop managedShop) || managedShop.getDeleted()) {
+            return false;
+        }
+        EntityEntry entry = session.getPersistenceContextInternal().getEntry(managed);
+        return entry != null && !entry.isExistsInDatabase();
+    }
+
+    private void recordChange(ChangeOperation operation, Product product) {
+        Long shopId = product.getShop() != null ? product.getShop().getId() : null;
+        changeFeedService.recordChange(ChangeEntityType.PRODUCT, operation, product.getId(), shopId);
+    }
+
+    private Product saveProduct(Product product) {
+        Product savedProduct = productRepository.save(product);
+        em.flush();
+        em.refresh(savedProduct);
+        return savedProduct;
+    }
 }
@@ -0,0 +1,8 @@
+package fr.fullstack.shopapp.service;
+
+/**
+ * Published by the set-based writes that record many product changes in one statement, in place of
+ * one CatalogChangedEvent per product.
+ */
+public record ProductsChangedEvent(long[] productIds) {
+}
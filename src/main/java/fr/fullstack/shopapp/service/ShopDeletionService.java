@@ -0,0 +1,177 @@
+package fr.fullstack.shopapp.service;
+
+import fr.fullstack.shopapp.cache.SingleFlightCache;
+import fr.fullstack.shopapp.model.ChangeEntityType;
+import fr.fullstack.shopapp.model.ChangeOperation;
+import fr.fullstack.shopapp.repository.ShopRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Purges the shops marked as deleted.
+ * Products are detached in chunks, each in its own short transaction with its outbox rows, so a large
+ * shop never holds locks for long. Jobs are claimed with SKIP LOCKED and a job whose worker stopped
+ * updating it is picked up again, so several instances can run the worker. A failed job is retried
+ * after a delay, up to a number of attempts.
+ */
+@Service
+public class ShopDeletionService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShopDeletionService.class);
+
+    private static final String CLAIM_JOB = "UPDATE shop_deletion_jobs SET status = 'RUNNING', "
+            + "attempts = attempts + 1, finished_at = NULL, updated_at = now() "
+            + "WHERE id = (SELECT id FROM shop_deletion_jobs "
+            + "WHERE status = 'PENDING' OR (status = 'RUNNING' AND updated_at < ?) "
+            + "OR (status = 'FAILED' AND attempts < ? AND updated_at < ?) "
+            + "ORDER BY id LIMIT 1 FOR UPDATE SKIP LOCKED) "
+            + "RETURNING id, shop_id";
+
+    // The changes keep the shop the products were detached from, so only its subscribers receive them
+    private static final String DETACH_PRODUCTS = "WITH detached AS ("
+            + "UPDATE products SET shop_id = NULL "
+            + "WHERE shop_id = ? AND id IN (SELECT id FROM products WHERE shop_id = ? LIMIT ?) "
+            + "RETURNING id), "
+            + "recorded AS ("
+            + "INSERT INTO change_events (created_at, entity_id, entity_type, operation, shop_id) "
+            + "SELECT now(), id, 'PRODUCT', 'UPDATED', ? FROM detached "
+            + "RETURNING entity_id) "
+            + "SELECT entity_id FROM recorded";
+
+    private final ApplicationEventPublisher applicationEventPublisher;
+
+    private final ChangeFeedService changeFeedService;
+
+    private final Timer chunkTimer;
+
+    @Value("${shopapp.shop-purge.chunk-size:1000}")
+    private int chunkSize;
+
+    private final Counter failedJobs;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${shopapp.shop-purge.max-attempts:5}")
+    private int maxAttempts;
+
+    private final Counter purgedProducts;
+
+    @Value("${shopapp.shop-purge.retry-after:1m}")
+    private Duration retryAfter;
+
+    private final ShopRepository shopRepository;
+
+    private final SingleFlightCache singleFlightCache;
+
+    @Value("${shopapp.shop-purge.stale-after:5m}")
+    private Duration staleAfter;
+
+    private final TransactionTemplate transactionTemplate;
+
+    public ShopDeletionService(
+            ApplicationEventPublisher applicationEventPublisher,
+            ChangeFeedService changeFeedService,
+            JdbcTemplate jdbcTemplate,
+            MeterRegistry registry,
+            ShopRepository shopRepository,
+            SingleFlightCache singleFlightCache,
+            PlatformTransactionManager transactionManager
+    ) {
+        this.applicationEventPublisher = applicationEventPublisher;
+        this.changeFeedService = changeFeedService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.shopRepository = shopRepository;
+        this.singleFlightCache = singleFlightCache;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkTimer = Timer.builder("shopapp.shop-purge.chunk").register(registry);
+        this.failedJobs = Counter.builder("shopapp.shop-purge.failed").register(registry);
+        this.purgedProducts = Counter.builder("shopapp.shop-purge.products").register(registry);
+    }
+
+    @Scheduled(fixedDelayString = "${shopapp.shop-purge.poll-interval-ms:1000}")
+    public void runPendingJobs() {
+        long[] job;
+        while ((job = claimJob()) != null) {
+            runJob(job[0], job[1]);
+        }
+    }
+
+    private long[] claimJob() {
+        List<long[]> jobs = jdbcTemplate.query(
+                CLAIM_JOB,
+                (rs, rowNum) -> new long[]{rs.getLong("id"), rs.getLong("shop_id")},
+                Timestamp.from(Instant.now().minus(staleAfter)),
+                maxAttempts,
+                Timestamp.from(Instant.now().minus(retryAfter))
+        );
+        return jobs.isEmpty() ? null : jobs.get(0);
+    }
+
+    private List<Long> detachChunk(long jobId, long shopId) {
+        return chunkTimer.record(() -> transactionTemplate.execute(status -> {
+            List<Long> ids = jdbcTemplate.queryForList(
+                    DETACH_PRODUCTS, Long.class, shopId, shopId, chunkSize, shopId
+            );
+            jdbcTemplate.update(
+                    "UPDATE shop_deletion_jobs SET products_detached = products_detached + ?, updated_at = now() "
+                            + "WHERE id = ?",
+                    ids.size(), jobId
+            );
+            if (!ids.isEmpty()) {
+                // Delivered to the listeners once the chunk commits
+                applicationEventPublisher.publishEvent(
+                        new ProductsChangedEvent(ids.stream().mapToLong(Long::longValue).toArray())
+                );
+            }
+            return ids;
+        }));
+    }
+
+    private void runJob(long jobId, long shopId) {
+        try {
+            // Until an empty chunk, a product attached meanwhile would keep the shop from being deleted
+            List<Long> detached;
+            do {
+                detached = detachChunk(jobId, shopId);
+                purgedProducts.increment(detached.size());
+                if (!detached.isEmpty()) {
+                    // After the commit of the chunk, so a concurrent read cannot cache the old shop again
+                    singleFlightCache.evict("product:");
+                }
+            } while (!detached.isEmpty());
+
+            transactionTemplate.executeWithoutResult(status -> {
+                shopRepository.deleteById(shopId);
+                changeFeedService.recordChange(ChangeEntityType.SHOP, ChangeOperation.DELETED, shopId, shopId);
+                jdbcTemplate.update(
+                        "UPDATE shop_deletion_jobs SET status = 'COMPLETED', finished_at = now(), updated_at = now() "
+                                + "WHERE id = ?",
+                        jobId
+                );
+            });
+        } catch (RuntimeException e) {
+            LOGGER.error("Deletion of shop {} failed", shopId, e);
+            failedJobs.increment();
+            jdbcTemplate.update(
+                    "UPDATE shop_deletion_jobs SET status = 'FAILED', error = ?, finished_at = now(), "
+                            + "updated_at = now() WHERE id = ?",
+                    StringUtils.truncate(String.valueOf(e.getMessage()), 1000), jobId
+            );
+        }
+    }
+}
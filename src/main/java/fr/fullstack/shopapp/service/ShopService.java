@@ -1,62 +1,279 @@
 package fr.fullstack.shopapp.service;
 
-import fr.fullstack.shopapp.model.Product;
+import fr.fullstack.shopapp.dto.MultiGetResponse;
+import fr.fullstack.shopapp.dto.PageResponse;
+import fr.fullstack.shopapp.exception.ResourceNotFoundException;
+import fr.fullstack.shopapp.model.ChangeEntityType;
+import fr.fullstack.shopapp.model.ChangeOperation;
 import fr.fullstack.shopapp.model.Shop;
+import fr.fullstack.shopapp.model.ShopDeletionJob;
+import fr.fullstack.shopapp.projection.FieldSet;
+import fr.fullstack.shopapp.projection.ShopProjection;
+import fr.fullstack.shopapp.readmodel.CatalogReadModel;
+import fr.fullstack.shopapp.repository.ShopDeletionJobRepository;
 import fr.fullstack.shopapp.repository.ShopRepository;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Predicate;
 
 @Service
 public class ShopService {
+    @Autowired
+    private CatalogReadModel catalogReadModel;
+
+    @Autowired
+    private ChangeFeedService changeFeedService;
+
+    @Autowired
+    private CountCache countCache;
+
     @PersistenceContext
     private EntityManager em;
 
+    @Autowired
+    private ShopDeletionJobRepository shopDeletionJobRepository;
+
+    @Autowired
+    private ShopProjection shopProjection;
+
     @Autowired
     private ShopRepository shopRepository;
 
     @Transactional
-    public Shop createShop(Shop shop) throws Exception {
-        try {
-            Shop newShop = shopRepository.save(shop);
-            // Refresh the entity after the save. Otherwise, @Formula does not work.
-            em.flush();
-            em.refresh(newShop);
-            return newShop;
-        } catch (Exception e) {
-            throw new Exception(e.getMessage());
+    public Shop createShop(Shop shop) {
+        return createShop(shop, true);
+    }
+
+    /**
+     * Without refresh, the insert is left to the next flush and nbProducts is not loaded:
+     * batches flush once for all their operations.
+     */
+    @Transactional
+    public Shop createShop(Shop shop, boolean refresh) {
+        Shop newShop = refresh ? saveShop(shop) : shopRepository.save(shop);
+        changeFeedService.recordChange(
+                ChangeEntityType.SHOP, ChangeOperation.CREATED, newShop.getId(), newShop.getId()
+        );
+        return newShop;
+    }
+
+    @Transactional
+    public ShopDeletionJob deleteShopById(long id) {
+        // The shop is hidden right away, its products are detached in the background
+        Shop shop = getShop(id);
+        shop.setDeleted(true);
+        ShopDeletionJob job = shopDeletionJobRepository.save(new ShopDeletionJob(id));
+        changeFeedService.recordChange(ChangeEntityType.SHOP, ChangeOperation.DELETED, id, id);
+        return job;
+    }
+
+    public ShopDeletionJob getDeletionJob(long jobId) {
+        Optional<ShopDeletionJob> job = shopDeletionJobRepository.findById(jobId);
+        if (!job.isPresent()) {
+            throw new ResourceNotFoundException("Deletion job with id " + jobId + " not found");
+        }
+        return job.get();
+    }
+
+    public MultiGetResponse<Shop> getShopsByIds(List<Long> ids) {
+        Map<Long, Shop> shops = new HashMap<Long, Shop>();
+        for (Shop shop : shopRepository.findByDeletedFalseAndIdIn(ids)) {
+            shops.put(shop.getId(), shop);
         }
+        return MultiGetResponse.inRequestOrder(ids, shops);
+    }
+
+    public Shop getShopById(long id) {
+        return catalogReadModel.findShop(id).orElseGet(() -> getShop(id));
+    }
+
+    public PageResponse<Shop> getShopList(
+            Optional<String> sortBy,
+            Optional<Boolean> inVacations,
+            Optional<String> createdBefore,
+            Optional<String> createdAfter,
+            boolean withTotal,
+            Pageable pageable
+    ) {
+        if (catalogReadModel.canServe(pageable)) {
+            return getShopListFromReadModel(sortBy, inVacations, createdBefore, createdAfter, withTotal, pageable);
+        }
+
+        Slice<Shop> shops = findShops(sortBy, inVacations, createdBefore, createdAfter, pageable);
+        if (!withTotal) {
+            return PageResponse.of(shops);
+        }
+
+        return PageResponse.of(shops, countShops(sortBy, inVacations, createdBefore, createdAfter));
+    }
+
+    public Map<String, Object> getShopFields(long id, FieldSet fields) {
+        List<Map<String, Object>> shops = shopProjection.findPage(
+                "WHERE s.id = :id AND s.deleted = false", Map.of("id", id), "", fields, Pageable.unpaged()
+        ).getContent();
+        if (shops.isEmpty()) {
+            throw new ResourceNotFoundException("Shop with id " + id + " not found");
+        }
+        return shops.get(0);
+    }
+
+    /**
+     * Same filters and sorts as getShopList, with only the requested fields loaded.
+     */
+    public PageResponse<Map<String, Object>> getShopFieldsList(
+            Optional<String> sortBy,
+            Optional<Boolean> inVacations,
+            Optional<String> createdBefore,
+            Optional<String> createdAfter,
+            boolean withTotal,
+            Pageable pageable,
+            FieldSet fields
+    ) {
+        // The controller passes createdAfter first: createdBefore holds the lower bound, as in getShopList
+        Optional<String> lowerBound = createdBefore;
+        Optional<String> upperBound = createdAfter;
+        List<String> conditions = new ArrayList<String>();
+        conditions.add("s.deleted = false");
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        String orderBy;
+        if (sortBy.isPresent()) {
+            switch (sortBy.get()) {
+                case "name":
+                    orderBy = "ORDER BY s.name ASC";
+                    break;
+                case "createdAt":
+                    orderBy = "ORDER BY s.createdAt ASC";
+                    break;
+                default:
+                    // Most products first, as the repository query
+                    orderBy = "ORDER BY s.nbProducts DESC, s.id ASC";
+            }
+        } else {
+            orderBy = "ORDER BY s.id ASC";
+            if (inVacations.isPresent()) {
+                conditions.add("s.inVacations = :inVacations");
+                parameters.put("inVacations", inVacations.get());
+            }
+            if (!inVacations.isPresent() && lowerBound.isPresent() && upperBound.isPresent()) {
+                conditions.add("s.createdAt BETWEEN :lowerBound AND :upperBound");
+            } else {
+                if (lowerBound.isPresent()) {
+                    conditions.add("s.createdAt > :lowerBound");
+                }
+                if (upperBound.isPresent()) {
+                    conditions.add("s.createdAt < :upperBound");
+                }
+            }
+            if (lowerBound.isPresent()) {
+                parameters.put("lowerBound", LocalDate.parse(lowerBound.get()));
+            }
+            if (upperBound.isPresent()) {
+                parameters.put("upperBound", LocalDate.parse(upperBound.get()));
+            }
+        }
+
+        Slice<Map<String, Object>> shops = shopProjection.findPage(
+                "WHERE " + String.join(" AND ", conditions), parameters, orderBy, fields, pageable
+        );
+        if (!withTotal) {
+            return PageResponse.of(shops);
+        }
+
+        return PageResponse.of(shops, countShops(sortBy, inVacations, createdBefore, createdAfter));
     }
 
     @Transactional
-    public void deleteShopById(long id) throws Exception {
-        try {
-            Shop shop = getShop(id);
-            // delete nested relations with products
-            deleteNestedRelations(shop);
-            shopRepository.deleteById(id);
-        } catch (Exception e) {
-            throw new Exception(e.getMessage());
+    public Shop updateShop(Shop shop) {
+        return updateShop(shop, true);
+    }
+
+    @Transactional
+    public Shop updateShop(Shop shop, boolean refresh) {
+        getShop(shop.getId());
+        Shop updatedShop = refresh ? saveShop(shop) : shopRepository.save(shop);
+        changeFeedService.recordChange(
+                ChangeEntityType.SHOP, ChangeOperation.UPDATED, updatedShop.getId(), updatedShop.getId()
+        );
+        return updatedShop;
+    }
+
+    private long countShops(
+            Optional<String> sortBy,
+            Optional<Boolean> inVacations,
+            Optional<String> createdBefore,
+            Optional<String> createdAfter
+    ) {
+        // Sorting ignores the filters, so the total is the number of shops
+        if (sortBy.isPresent()) {
+            return countCache.count("shops", shopRepository::countByDeletedFalse);
         }
+
+        String key = "shops:" + inVacations.orElse(null)
+                + ":" + createdBefore.orElse(null)
+                + ":" + createdAfter.orElse(null);
+        return countCache.count(key, () -> countShopListWithFilter(inVacations, createdBefore, createdAfter));
     }
 
-    public Shop getShopById(long id) throws Exception {
-        try {
-            return getShop(id);
-        } catch (Exception e) {
-            throw new Exception(e.getMessage());
+    private long countShopListWithFilter(
+            Optional<Boolean> inVacations,
+            Optional<String> createdAfter,
+            Optional<String> createdBefore
+    ) {
+        if (inVacations.isPresent() && createdBefore.isPresent() && createdAfter.isPresent()) {
+            return shopRepository.countByDeletedFalseAndInVacationsAndCreatedAtGreaterThanAndCreatedAtLessThan(
+                    inVacations.get(),
+                    LocalDate.parse(createdAfter.get()),
+                    LocalDate.parse(createdBefore.get())
+            );
+        }
+
+        if (inVacations.isPresent() && createdBefore.isPresent()) {
+            return shopRepository.countByDeletedFalseAndInVacationsAndCreatedAtLessThan(
+                    inVacations.get(), LocalDate.parse(createdBefore.get())
+            );
+        }
+
+        if (inVacations.isPresent() && createdAfter.isPresent()) {
+            return shopRepository.countByDeletedFalseAndInVacationsAndCreatedAtGreaterThan(
+                    inVacations.get(), LocalDate.parse(createdAfter.get())
+            );
+        }
+
+        if (inVacations.isPresent()) {
+            return shopRepository.countByDeletedFalseAndInVacations(inVacations.get());
+        }
+
+        if (createdBefore.isPresent() && createdAfter.isPresent()) {
+            return shopRepository.countByDeletedFalseAndCreatedAtBetween(
+                    LocalDate.parse(createdAfter.get()), LocalDate.parse(createdBefore.get())
+            );
+        }
+
+        if (createdBefore.isPresent()) {
+            return shopRepository.countByDeletedFalseAndCreatedAtLessThan(LocalDate.parse(createdBefore.get()));
+        }
+
+        if (createdAfter.isPresent()) {
+            return shopRepository.countByDeletedFalseAndCreatedAtGreaterThan(LocalDate.parse(createdAfter.get()));
         }
+
+        return shopRepository.countByDeletedFalse();
     }
 
-    public Page<Shop> getShopList(
+    private Slice<Shop> findShops(
             Optional<String> sortBy,
             Optional<Boolean> inVacations,
             Optional<String> createdBefore,
@@ -67,60 +284,89 @@ public class ShopService {
         if (sortBy.isPresent()) {
             switch (sortBy.get()) {
                 case "name":
-                    return shopRepository.findByOrderByNameAsc(pageable);
+                    return shopRepository.findByDeletedFalseOrderByNameAsc(pageable);
                 case "createdAt":
-                    return shopRepository.findByOrderByCreatedAtAsc(pageable);
+                    return shopRepository.findByDeletedFalseOrderByCreatedAtAsc(pageable);
                 default:
                     return shopRepository.findByOrderByNbProductsAsc(pageable);
             }
         }
 
         // FILTERS
-        Page<Shop> shopList = getShopListWithFilter(inVacations, createdBefore, createdAfter, pageable);
+        Slice<Shop> shopList = getShopListWithFilter(inVacations, createdBefore, createdAfter, pageable);
         if (shopList != null) {
             return shopList;
         }
 
         // NONE
-        return shopRepository.findByOrderByIdAsc(pageable);
+        return shopRepository.findByDeletedFalseOrderByIdAsc(pageable);
     }
 
-    @Transactional
-    public Shop updateShop(Shop shop) throws Exception {
-        try {
-            getShop(shop.getId());
-            return this.createShop(shop);
-        } catch (Exception e) {
-            throw new Exception(e.getMessage());
+    private Shop getShop(Long id) {
+        Optional<Shop> shop = shopRepository.findByIdAndDeletedFalse(id);
+        if (!shop.isPresent()) {
+            throw new ResourceNotFoundException("Shop with id " + id + " not found");
         }
+        return shop.get();
     }
 
-    private void deleteNestedRelations(Shop shop) {
-        List<Product> products = shop.getProducts();
-        for (int i = 0; i < products.size(); i++) {
-            Product product = products.get(i);
-            product.setShop(null);
-            em.merge(product);
-            em.flush();
+    // Same filters and sorts as the repository queries
+    private PageResponse<Shop> getShopListFromReadModel(
+            Optional<String> sortBy,
+            Optional<Boolean> inVacations,
+            Optional<String> createdAfter,
+            Optional<String> createdBefore,
+            boolean withTotal,
+            Pageable pageable
+    ) {
+        Predicate<Shop> all = shop -> true;
+        if (sortBy.isPresent()) {
+            Comparator<Shop> order;
+            switch (sortBy.get()) {
+                case "name":
+                    order = Comparator.comparing(Shop::getName);
+                    break;
+                case "createdAt":
+                    order = Comparator.comparing(Shop::getCreatedAt);
+                    break;
+                default:
+                    // Most products first, as the repository query
+                    order = Comparator.comparingLong(Shop::getNbProducts).reversed()
+                            .thenComparingLong(Shop::getId);
+            }
+            Slice<Shop> shops = catalogReadModel.findShops(all, order, pageable);
+            return withTotal ? PageResponse.of(shops, catalogReadModel.countShops(all)) : PageResponse.of(shops);
         }
-    }
 
-    private Shop getShop(Long id) throws Exception {
-        Optional<Shop> shop = shopRepository.findById(id);
-        if (!shop.isPresent()) {
-            throw new Exception("Shop with id " + id + " not found");
+        Predicate<Shop> filter = all;
+        if (inVacations.isPresent()) {
+            filter = filter.and(shop -> shop.getInVacations() == inVacations.get());
         }
-        return shop.get();
+        // Without the vacation filter both dates are inclusive (between), otherwise they are exclusive
+        boolean inclusive = !inVacations.isPresent() && createdAfter.isPresent() && createdBefore.isPresent();
+        if (createdAfter.isPresent()) {
+            LocalDate date = LocalDate.parse(createdAfter.get());
+            filter = filter.and(shop -> shop.getCreatedAt().isAfter(date)
+                    || (inclusive && shop.getCreatedAt().isEqual(date)));
+        }
+        if (createdBefore.isPresent()) {
+            LocalDate date = LocalDate.parse(createdBefore.get());
+            filter = filter.and(shop -> shop.getCreatedAt().isBefore(date)
+                    || (inclusive && shop.getCreatedAt().isEqual(date)));
+        }
+
+        Slice<Shop> shops = catalogReadModel.findShops(filter, null, pageable);
+        return withTotal ? PageResponse.of(shops, catalogReadModel.countShops(filter)) : PageResponse.of(shops);
     }
 
-    private Page<Shop> getShopListWithFilter(
+    private Slice<Shop> getShopListWithFilter(
             Optional<Boolean> inVacations,
             Optional<String> createdAfter,
             Optional<String> createdBefore,
             Pageable pageable
     ) {
         if (inVacations.isPresent() && createdBefore.isPresent() && createdAfter.isPresent()) {
-            return shopRepository.findByInVacationsAndCreatedAtGreaterThanAndCreatedAtLessThan(
+            return shopRepository.findByDeletedFalseAndInVacationsAndCreatedAtGreaterThanAndCreatedAtLessThan(
                     inVacations.get(),
                     LocalDate.parse(createdAfter.get()),
                     LocalDate.parse(createdBefore.get()),
@@ -129,39 +375,47 @@ public class ShopService {
         }
 
         if (inVacations.isPresent() && createdBefore.isPresent()) {
-            return shopRepository.findByInVacationsAndCreatedAtLessThan(
+            return shopRepository.findByDeletedFalseAndInVacationsAndCreatedAtLessThan(
                     inVacations.get(), LocalDate.parse(createdBefore.get()), pageable
             );
         }
 
         if (inVacations.isPresent() && createdAfter.isPresent()) {
-            return shopRepository.findByInVacationsAndCreatedAtGreaterThan(
+            return shopRepository.findByDeletedFalseAndInVacationsAndCreatedAtGreaterThan(
                     inVacations.get(), LocalDate.parse(createdAfter.get()), pageable
             );
         }
 
         if (inVacations.isPresent()) {
-            return shopRepository.findByInVacations(inVacations.get(), pageable);
+            return shopRepository.findByDeletedFalseAndInVacations(inVacations.get(), pageable);
         }
 
         if (createdBefore.isPresent() && createdAfter.isPresent()) {
-            return shopRepository.findByCreatedAtBetween(
+            return shopRepository.findByDeletedFalseAndCreatedAtBetween(
                     LocalDate.parse(createdAfter.get()), LocalDate.parse(createdBefore.get()), pageable
             );
         }
 
         if (createdBefore.isPresent()) {
-            return shopRepository.findByCreatedAtLessThan(
+            return shopRepository.findByDeletedFalseAndCreatedAtLessThan(
                     LocalDate.parse(createdBefore.get()), pageable
             );
         }
 
         if (createdAfter.isPresent()) {
-            return shopRepository.findByCreatedAtGreaterThan(
+            return shopRepository.findByDeletedFalseAndCreatedAtGreaterThan(
                     LocalDate.parse(createdAfter.get()), pageable
             );
         }
 
         return null;
     }
+
+    private Shop saveShop(Shop shop) {
+        Shop savedShop = shopRepository.save(shop);
+        // Refresh the entity after the save. Otherwise, @Formula does not work.
+        em.flush();
+        em.refresh(savedShop);
+        return savedShop;
+    }
 }
@@ -0,0 +1,82 @@
+package fr.fullstack.shopapp.tracing;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+
+/**
+ * Appends the exported spans to a local file, one JSON object per line (shopapp.tracing.file, empty
+ * disables it). Called from the exporter thread of the batch span processor only.
+ */
+@Component
+public class FileSpanExporter implements SpanExporter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileSpanExporter.class);
+
+    private final ObjectMapper objectMapper;
+
+    private final Path path;
+
+    private BufferedWriter writer;
+
+    public FileSpanExporter(ObjectMapper objectMapper, @Value("${shopapp.tracing.file:}") String path) {
+        this.objectMapper = objectMapper;
+        this.path = StringUtils.hasText(path) ? Path.of(path) : null;
+    }
+
+    @Override
+    public CompletableResultCode export(Collection<SpanData> spans) {
+        if (path == null) {
+            return CompletableResultCode.ofSuccess();
+        }
+
+        try {
+            if (writer == null) {
+                Path directory = path.toAbsolutePath().getParent();
+                Files.createDirectories(directory);
+                writer = Files.newBufferedWriter(
+                        path, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND
+                );
+            }
+            for (SpanData span : spans) {
+                writer.write(objectMapper.writeValueAsString(SpanRecords.toRecord(span)));
+                writer.newLine();
+            }
+            writer.flush();
+            return CompletableResultCode.ofSuccess();
+        } catch (IOException e) {
+            LOGGER.warn("Could not write {} spans to {}", spans.size(), path, e);
+            return CompletableResultCode.ofFailure();
+        }
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+        return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                return CompletableResultCode.ofFailure();
+            }
+        }
+        return CompletableResultCode.ofSuccess();
+    }
+}
@@ -0,0 +1,73 @@
+package fr.fullstack.shopapp.tracing;
+
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the last exported spans in memory, to look a trace up without any collector.
+ * Spans show up once the batch span processor exported them, a few seconds after they end.
+ */
+@Component
+public class InMemorySpanExporter implements SpanExporter {
+    @Value("${shopapp.tracing.memory.max-spans:10000}")
+    private int maxSpans;
+
+    private final Deque<SpanData> spans = new ArrayDeque<SpanData>();
+
+    public synchronized void clear() {
+        spans.clear();
+    }
+
+    @Override
+    public synchronized CompletableResultCode export(Collection<SpanData> exported) {
+        for (SpanData span : exported) {
+            if (spans.size() >= maxSpans) {
+                spans.removeFirst();
+            }
+            spans.addLast(span);
+        }
+        return CompletableResultCode.ofSuccess();
+    }
+
+    /**
+     * Spans of the trace, in start order.
+     */
+    public List<Map<String, Object>> findTrace(String traceId) {
+        List<SpanData> trace = new ArrayList<SpanData>();
+        synchronized (this) {
+            for (SpanData span : spans) {
+                if (span.getTraceId().equals(traceId)) {
+                    trace.add(span);
+                }
+            }
+        }
+        trace.sort(Comparator.comparingLong(SpanData::getStartEpochNanos));
+
+        List<Map<String, Object>> records = new ArrayList<Map<String, Object>>(trace.size());
+        for (SpanData span : trace) {
+            records.add(SpanRecords.toRecord(span));
+        }
+        return records;
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+        return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+        return CompletableResultCode.ofSuccess();
+    }
+}
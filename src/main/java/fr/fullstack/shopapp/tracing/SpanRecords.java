@@ -0,0 +1,30 @@
+package fr.fullstack.shopapp.tracing;
+
+import io.opentelemetry.sdk.trace.data.SpanData;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+final class SpanRecords {
+    private SpanRecords() {
+    }
+
+    /**
+     * Flat view of a finished span, as written to the trace file and returned by the admin endpoint.
+     */
+    static Map<String, Object> toRecord(SpanData span) {
+        Map<String, Object> record = new LinkedHashMap<String, Object>();
+        record.put("traceId", span.getTraceId());
+        record.put("spanId", span.getSpanId());
+        record.put("parentSpanId", span.getParentSpanContext().isValid() ? span.getParentSpanId() : null);
+        record.put("name", span.getName());
+        record.put("kind", span.getKind().name());
+        record.put("startEpochNanos", span.getStartEpochNanos());
+        record.put("durationMicros", (span.getEndEpochNanos() - span.getStartEpochNanos()) / 1000);
+        record.put("status", span.getStatus().getStatusCode().name());
+        Map<String, Object> attributes = new LinkedHashMap<String, Object>();
+        span.getAttributes().forEach((key, value) -> attributes.put(key.getKey(), value));
+        record.put("attributes", attributes);
+        return record;
+    }
+}
@@ -0,0 +1,29 @@
+package fr.fullstack.shopapp.tracing;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Returns the id of the trace of sampled requests in the X-Trace-Id header, to look it up afterwards.
+ * Runs inside the observation filter that opens the HTTP span.
+ */
+@Component
+public class TraceIdFilter extends OncePerRequestFilter {
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        SpanContext context = Span.current().getSpanContext();
+        if (context.isValid() && context.isSampled()) {
+            response.setHeader("X-Trace-Id", context.getTraceId());
+        }
+        chain.doFilter(request, response);
+    }
+}
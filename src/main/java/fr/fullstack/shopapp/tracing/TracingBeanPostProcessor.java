@@ -0,0 +1,96 @@
+package fr.fullstack.shopapp.tracing;
+
+import fr.fullstack.shopapp.service.CategoryService;
+import fr.fullstack.shopapp.service.ProductService;
+import fr.fullstack.shopapp.service.ShopService;
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Scope;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.framework.Advised;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Set;
+
+/**
+ * Opens a span around every call to a controller and to the catalog services, named after the
+ * class and the method. The HTTP span of the request also covers the JSON serialization, so the time
+ * left outside the controller span is mostly Jackson.
+ */
+@Component
+public class TracingBeanPostProcessor implements BeanPostProcessor, Ordered {
+    private static final Set<Class<?>> TRACED_SERVICES = Set.of(
+            CategoryService.class, ProductService.class, ShopService.class
+    );
+
+    private final ObjectProvider<OpenTelemetry> openTelemetry;
+
+    private volatile Tracer tracer;
+
+    public TracingBeanPostProcessor(ObjectProvider<OpenTelemetry> openTelemetry) {
+        this.openTelemetry = openTelemetry;
+    }
+
+    // After the transaction proxies, so that the span also covers the commit
+    @Override
+    public int getOrder() {
+        return Ordered.LOWEST_PRECEDENCE;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        Class<?> type = ClassUtils.getUserClass(bean);
+        if (!TRACED_SERVICES.contains(type) && !AnnotatedElementUtils.hasAnnotation(type, RestController.class)) {
+            return bean;
+        }
+
+        MethodInterceptor interceptor = tracingInterceptor(type.getSimpleName());
+        if (bean instanceof Advised advised && !advised.isFrozen()) {
+            advised.addAdvice(0, interceptor);
+            return bean;
+        }
+        ProxyFactory proxyFactory = new ProxyFactory(bean);
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvice(interceptor);
+        return proxyFactory.getProxy(type.getClassLoader());
+    }
+
+    private Tracer tracer() {
+        // Resolved on first use: the tracer provider is not ready while the post processors are created
+        if (tracer == null) {
+            tracer = openTelemetry.getIfAvailable(OpenTelemetry::noop).getTracer("fr.fullstack.shopapp");
+        }
+        return tracer;
+    }
+
+    private MethodInterceptor tracingInterceptor(String className) {
+        return invocation -> {
+            if (invocation.getMethod().getDeclaringClass() == Object.class) {
+                return invocation.proceed();
+            }
+
+            Span span = tracer().spanBuilder(className + "." + invocation.getMethod().getName())
+                    .setAttribute("code.namespace", className)
+                    .setAttribute("code.function", invocation.getMethod().getName())
+                    .startSpan();
+            try (Scope scope = span.makeCurrent()) {
+                return invocation.proceed();
+            } catch (Throwable e) {
+                span.recordException(e);
+                span.setStatus(StatusCode.ERROR);
+                throw e;
+            } finally {
+                span.end();
+            }
+        };
+    }
+}
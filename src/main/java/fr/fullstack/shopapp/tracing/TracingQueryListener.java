@@ -0,0 +1,88 @@
+package fr.fullstack.shopapp.tracing;
+
+import fr.fullstack.shopapp.querylog.RepositoryMethodTracker;
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * One client span per JDBC statement, under the span of the service or controller that issued it.
+ * Statements outside of a trace (scheduled jobs) are not traced, so they do not start traces of
+ * their own.
+ */
+@Component
+public class TracingQueryListener implements QueryExecutionListener {
+    private static final int MAX_STATEMENT_LENGTH = 2000;
+
+    private static final String SPAN = TracingQueryListener.class.getName();
+
+    private final ObjectProvider<OpenTelemetry> openTelemetry;
+
+    private volatile Tracer tracer;
+
+    public TracingQueryListener(ObjectProvider<OpenTelemetry> openTelemetry) {
+        this.openTelemetry = openTelemetry;
+    }
+
+    @Override
+    public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        Span span = execInfo.getCustomValue(SPAN, Span.class);
+        if (span == null) {
+            return;
+        }
+
+        span.setAttribute("db.statement", statement(queryInfoList));
+        span.setAttribute("db.batch_size", execInfo.getBatchSize());
+        if (!execInfo.isSuccess()) {
+            if (execInfo.getThrowable() != null) {
+                span.recordException(execInfo.getThrowable());
+            }
+            span.setStatus(StatusCode.ERROR);
+        }
+        span.end();
+    }
+
+    @Override
+    public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        if (!Span.current().getSpanContext().isValid()) {
+            return;
+        }
+
+        String caller = RepositoryMethodTracker.currentMethod();
+        Span span = tracer().spanBuilder(caller != null ? "jdbc " + caller : "jdbc")
+                .setSpanKind(SpanKind.CLIENT)
+                .setAttribute("db.system", "postgresql")
+                .startSpan();
+        execInfo.addCustomValue(SPAN, span);
+    }
+
+    private String statement(List<QueryInfo> queryInfoList) {
+        StringBuilder statement = new StringBuilder();
+        for (QueryInfo queryInfo : queryInfoList) {
+            if (statement.length() > 0) {
+                statement.append("; ");
+            }
+            statement.append(queryInfo.getQuery());
+            if (statement.length() > MAX_STATEMENT_LENGTH) {
+                return statement.substring(0, MAX_STATEMENT_LENGTH);
+            }
+        }
+        return statement.toString();
+    }
+
+    private Tracer tracer() {
+        if (tracer == null) {
+            tracer = openTelemetry.getIfAvailable(OpenTelemetry::noop).getTracer("fr.fullstack.shopapp");
+        }
+        return tracer;
+    }
+}
@@ -0,0 +1,53 @@
+package fr.fullstack.shopapp.tracing;
+
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.trace.data.LinkData;
+import io.opentelemetry.sdk.trace.samplers.Sampler;
+import io.opentelemetry.sdk.trace.samplers.SamplingResult;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Samples a ratio of the traces, the spans following the decision of their parent. The ratio can be
+ * changed at runtime through the admin endpoint, and replaces management.tracing.sampling.probability.
+ */
+@Component
+public class TracingSampler implements Sampler {
+    private volatile Sampler delegate;
+
+    private volatile double sampleRate;
+
+    public TracingSampler(@Value("${shopapp.tracing.sample-rate:0.1}") double sampleRate) {
+        setSampleRate(sampleRate);
+    }
+
+    @Override
+    public String getDescription() {
+        return "TracingSampler{" + sampleRate + "}";
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    public void setSampleRate(double sampleRate) {
+        this.delegate = Sampler.parentBased(Sampler.traceIdRatioBased(sampleRate));
+        this.sampleRate = sampleRate;
+    }
+
+    @Override
+    public SamplingResult shouldSample(
+            Context parentContext,
+            String traceId,
+            String name,
+            SpanKind spanKind,
+            Attributes attributes,
+            List<LinkData> parentLinks
+    ) {
+        return delegate.shouldSample(parentContext, traceId, name, spanKind, attributes, parentLinks);
+    }
+}
@@ -0,0 +1,12 @@
+package fr.fullstack.shopapp.util;
+
+import org.springframework.http.MediaType;
+
+public class MediaTypes {
+    public static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+
+    public static final MediaType APPLICATION_SMILE = MediaType.parseMediaType(APPLICATION_SMILE_VALUE);
+
+    private MediaTypes() {
+    }
+}
@@ -0,0 +1,53 @@
+package fr.fullstack.shopapp.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SingleFlightCacheTest {
+    private final SingleFlightCache cache = new SingleFlightCache(Duration.ofMinutes(1));
+
+    @Test
+    void evictionRemovesKeptResults() throws Exception {
+        cache.load("product:1:", () -> bytes("old"));
+
+        cache.evict("product:1:");
+
+        assertThat(cache.load("product:1:", () -> bytes("new"))).isEqualTo(bytes("new"));
+    }
+
+    @Test
+    void resultLoadedDuringEvictionIsNotKept() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch written = new CountDownLatch(1);
+        CompletableFuture<byte[]> stale = CompletableFuture.supplyAsync(() -> {
+            try {
+                return cache.load("product:1:", () -> {
+                    loading.countDown();
+                    written.await();
+                    return bytes("old");
+                });
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        loading.await();
+
+        cache.evict("product:1:");
+        // Not coalesced with the load started before the write
+        assertThat(cache.load("product:1:", () -> bytes("new"))).isEqualTo(bytes("new"));
+        written.countDown();
+
+        assertThat(stale.get()).isEqualTo(bytes("old"));
+        assertThat(cache.load("product:1:", () -> bytes("newer"))).isEqualTo(bytes("new"));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
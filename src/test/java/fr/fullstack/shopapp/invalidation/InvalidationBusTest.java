@@ -0,0 +1,145 @@
+package fr.fullstack.shopapp.invalidation;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.fullstack.shopapp.cache.SingleFlightCache;
+import fr.fullstack.shopapp.model.ChangeEntityType;
+import fr.fullstack.shopapp.model.ChangeOperation;
+import fr.fullstack.shopapp.service.CatalogChangedEvent;
+import fr.fullstack.shopapp.service.CatalogChangesMissedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Two buses on a channel of their own, standing for two instances, against the database of
+ * application.properties. The transactions commit.
+ */
+@SpringBootTest(properties = {
+        "shopapp.autocomplete.enabled=false",
+        "shopapp.invalidation.enabled=false",
+        "shopapp.list-cache.enabled=false",
+        "shopapp.read-model.enabled=false"
+})
+class InvalidationBusTest {
+    private static final Duration GAP_TIMEOUT = Duration.ofMillis(300);
+
+    private static final long WAIT_MS = 5000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${spring.datasource.password}")
+    private String password;
+
+    private final List<Object> received = new CopyOnWriteArrayList<Object>();
+
+    private InvalidationBus receiver;
+
+    private InvalidationBus sender;
+
+    @Autowired
+    private SingleFlightCache singleFlightCache;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${spring.datasource.url}")
+    private String url;
+
+    @Value("${spring.datasource.username}")
+    private String username;
+
+    @BeforeEach
+    void startBuses() {
+        String channel = "test_invalidation_" + UUID.randomUUID().toString().replace("-", "");
+        sender = newBus(channel, event -> { });
+        receiver = newBus(channel, received::add);
+        sender.start();
+        receiver.start();
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @AfterEach
+    void stopBuses() {
+        sender.stop();
+        receiver.stop();
+    }
+
+    @Test
+    void committedChangesReachTheOtherInstance() throws Exception {
+        commit(change(1));
+
+        waitFor(change(1));
+    }
+
+    @Test
+    void transactionFailingToCommitDoesNotFlushTheOtherInstance() throws Exception {
+        // The receiver only tracks the numbers after the first message it hears
+        commit(change(1));
+        waitFor(change(1));
+
+        assertThatThrownBy(() -> transactionTemplate.executeWithoutResult(status -> {
+            sender.onCatalogChanged(change(2));
+            // Registered after the bus: fails once its notification was sent
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    throw new IllegalStateException("Commit failure");
+                }
+            });
+        })).isInstanceOf(IllegalStateException.class);
+        commit(change(3));
+
+        waitFor(change(3));
+        Thread.sleep(GAP_TIMEOUT.multipliedBy(3).toMillis());
+        assertThat(received).doesNotContain(change(2));
+        assertThat(received).noneMatch(event -> event instanceof CatalogChangesMissedEvent);
+    }
+
+    private CatalogChangedEvent change(long productId) {
+        return new CatalogChangedEvent(ChangeEntityType.PRODUCT, ChangeOperation.UPDATED, productId, null);
+    }
+
+    private void commit(CatalogChangedEvent event) {
+        transactionTemplate.executeWithoutResult(status -> sender.onCatalogChanged(event));
+    }
+
+    private InvalidationBus newBus(String channel, ApplicationEventPublisher publisher) {
+        return new InvalidationBus(
+                publisher, jdbcTemplate, new SimpleMeterRegistry(), objectMapper, singleFlightCache,
+                true, channel, GAP_TIMEOUT, Duration.ofSeconds(10), Duration.ofMillis(100),
+                url, username, password
+        );
+    }
+
+    private void waitFor(Object event) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MS;
+        while (!received.contains(event) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(received).contains(event);
+    }
+}
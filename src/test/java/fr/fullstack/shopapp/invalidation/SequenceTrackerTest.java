@@ -0,0 +1,30 @@
+package fr.fullstack.shopapp.invalidation;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SequenceTrackerTest {
+    @Test
+    void holeIsMissingUntilReceived() {
+        SequenceTracker tracker = new SequenceTracker();
+        tracker.receive("a", 1, 100);
+        tracker.receive("a", 3, 200);
+
+        assertThat(tracker.oldestMissing()).isEqualTo(200);
+
+        tracker.receive("a", 2, 300);
+
+        assertThat(tracker.oldestMissing()).isEqualTo(-1);
+    }
+
+    @Test
+    void skippedNumbersAreNotWaitedFor() {
+        SequenceTracker tracker = new SequenceTracker();
+        tracker.receive("a", 1, 100);
+        tracker.receive("a", 4, 200);
+        tracker.skip("a", new long[]{2, 3});
+
+        assertThat(tracker.oldestMissing()).isEqualTo(-1);
+    }
+}
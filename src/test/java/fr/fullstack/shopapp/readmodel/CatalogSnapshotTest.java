@@ -0,0 +1,83 @@
+package fr.fullstack.shopapp.readmodel;
+
+import fr.fullstack.shopapp.model.Category;
+import fr.fullstack.shopapp.model.LocalizedProduct;
+import fr.fullstack.shopapp.model.OpeningHoursShop;
+import fr.fullstack.shopapp.model.Product;
+import fr.fullstack.shopapp.model.Shop;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CatalogSnapshotTest {
+    private static final int PRODUCTS = 100;
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void readsValuesAcrossRegions() throws Exception {
+        EntityTable<Category> categories = new EntityTable<Category>(1);
+        Category category = new Category();
+        category.setId(1);
+        category.setName("Catégorie");
+        categories.put(category.getId(), category);
+
+        EntityTable<Shop> shops = new EntityTable<Shop>(1);
+        OpeningHoursShop hours = new OpeningHoursShop();
+        hours.setId(1);
+        hours.setDay(1);
+        hours.setOpenAt(LocalTime.of(9, 0));
+        hours.setCloseAt(LocalTime.of(18, 0));
+        Shop shop = new Shop();
+        shop.setId(1);
+        shop.setCreatedAt(LocalDate.of(2024, 1, 1));
+        shop.setName("Boutique");
+        shop.setOpeningHours(new ArrayList<OpeningHoursShop>(List.of(hours)));
+        shops.put(shop.getId(), shop);
+
+        EntityTable<Product> products = new EntityTable<Product>(PRODUCTS);
+        for (int i = 1; i <= PRODUCTS; i++) {
+            LocalizedProduct localizedProduct = new LocalizedProduct();
+            localizedProduct.setId(i);
+            localizedProduct.setLocale("FR");
+            localizedProduct.setName("Produit " + i);
+            localizedProduct.setDescription("Description du produit " + i);
+            Product product = new Product();
+            product.setId(i);
+            product.setPrice(i);
+            product.setShop(shop);
+            product.setCategories(new ArrayList<Category>(List.of(category)));
+            product.setLocalizedProducts(new ArrayList<LocalizedProduct>(List.of(localizedProduct)));
+            products.put(product.getId(), product);
+        }
+
+        Path path = directory.resolve("catalog.snapshot");
+        Instant createdAt = Instant.ofEpochMilli(1_700_000_000_000L);
+        CatalogSnapshot.write(path, createdAt, categories, shops, products);
+
+        // Regions far smaller than the file, ending in the middle of values
+        EntityTable<Category> readCategories = new EntityTable<Category>(1);
+        EntityTable<Shop> readShops = new EntityTable<Shop>(1);
+        List<Product> readProducts = new ArrayList<Product>();
+        Instant readCreatedAt = CatalogSnapshot.read(path, 61, readCategories, readShops, readProducts::add);
+
+        assertThat(readCreatedAt).isEqualTo(createdAt);
+        assertThat(readShops.find(1).getName()).isEqualTo("Boutique");
+        assertThat(readShops.find(1).getOpeningHours().get(0).getCloseAt()).isEqualTo(LocalTime.of(18, 0));
+        assertThat(readProducts).extracting(Product::getId).hasSize(PRODUCTS);
+        Product last = readProducts.get(PRODUCTS - 1);
+        assertThat(last.getId()).isEqualTo(PRODUCTS);
+        assertThat(last.getShop()).isSameAs(readShops.find(1));
+        assertThat(last.getCategories().get(0).getName()).isEqualTo("Catégorie");
+        assertThat(last.getLocalizedProducts().get(0).getDescription()).isEqualTo("Description du produit " + PRODUCTS);
+    }
+}
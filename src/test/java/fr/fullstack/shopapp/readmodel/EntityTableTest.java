@@ -0,0 +1,60 @@
+package fr.fullstack.shopapp.readmodel;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EntityTableTest {
+    @Test
+    void liveSlotsStayInIdOrder() {
+        EntityTable<String> table = new EntityTable<String>(1);
+        // More entities than the initial capacity, in no particular order
+        for (long id : new long[]{30, 10, 20, 50, 40, 15, 25, 35, 45, 55, 5, 60, 65, 70, 75, 80, 85, 90}) {
+            table.put(id, "entity " + id);
+        }
+        table.remove(20);
+        table.remove(90);
+
+        assertThat(table.live()).isEqualTo(16);
+        assertThat(ids(table, table.order()))
+                .containsExactly(5L, 10L, 15L, 25L, 30L, 35L, 40L, 45L, 50L, 55L, 60L, 65L, 70L, 75L, 80L, 85L);
+        assertThat(table.find(20)).isNull();
+        assertThat(table.find(85)).isEqualTo("entity 85");
+    }
+
+    @Test
+    void replacedEntityKeepsItsSlotAndPostings() {
+        EntityTable<String> shops = new EntityTable<String>(1);
+        EntityTable<String> products = new EntityTable<String>(1);
+        int shop = shops.put(1, "shop");
+        for (long id : new long[]{3, 1, 2}) {
+            products.link(shops.postings(shop), products.put(id, "product " + id));
+        }
+
+        assertThat(shops.put(1, "renamed shop")).isEqualTo(shop);
+        assertThat(shops.find(1)).isEqualTo("renamed shop");
+        assertThat(ids(products, shops.postingsIfAny(shop))).containsExactly(1L, 2L, 3L);
+
+        int moved = products.indexOf(2);
+        products.unlink(shops.postings(shop), moved);
+
+        assertThat(products.contains(shops.postings(shop), moved)).isFalse();
+        assertThat(ids(products, shops.postingsIfAny(shop))).containsExactly(1L, 3L);
+
+        shops.remove(1);
+
+        assertThat(shops.postingsIfAny(shop)).isNull();
+        assertThat(shops.live()).isZero();
+    }
+
+    private static List<Long> ids(EntityTable<?> table, IntList list) {
+        List<Long> ids = new ArrayList<Long>();
+        for (int i = 0; i < list.size(); i++) {
+            ids.add(table.idOf(list.get(i)));
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,52 @@
+package fr.fullstack.shopapp.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.fullstack.shopapp.dto.BatchRequest;
+import fr.fullstack.shopapp.dto.BatchResponse;
+import fr.fullstack.shopapp.dto.BatchResult;
+import fr.fullstack.shopapp.model.Product;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs against the database of application.properties, in a transaction rolled back after each test.
+ */
+@SpringBootTest(properties = {
+        "shopapp.autocomplete.enabled=false",
+        "shopapp.invalidation.enabled=false",
+        "shopapp.list-cache.enabled=false",
+        "shopapp.read-model.enabled=false"
+})
+@Transactional
+class BatchServiceTest {
+    @Autowired
+    private BatchService batchService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void atomicBatchCreatesProductOfShopCreatedBefore() throws Exception {
+        BatchRequest request = objectMapper.readValue("""
+                {"atomic": true, "operations": [
+                  {"method": "POST", "resource": "shops", "ref": "shop", "body": {
+                    "name": "Batch shop", "inVacations": false,
+                    "openingHours": [{"day": 1, "openAt": "09:00:00", "closeAt": "18:00:00"}]}},
+                  {"method": "POST", "resource": "products", "ref": "product", "body": {
+                    "price": 10, "shop": {"$ref": "shop"},
+                    "localizedProducts": [{"locale": "FR", "name": "Produit", "description": "Description"}]}}
+                ]}
+                """, BatchRequest.class);
+
+        BatchResponse response = batchService.execute(request);
+
+        assertThat(response.getResults()).extracting(BatchResult::getError).containsOnlyNulls();
+        assertThat(response.getCommitted()).isTrue();
+        Product product = (Product) response.getResults().get(1).getBody();
+        assertThat(product.getShop().getId()).isEqualTo(response.getResults().get(0).getId());
+    }
+}
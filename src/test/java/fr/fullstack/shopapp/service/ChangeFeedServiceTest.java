@@ -0,0 +1,55 @@
+package fr.fullstack.shopapp.service;
+
+import fr.fullstack.shopapp.model.ChangeEntityType;
+import fr.fullstack.shopapp.model.ChangeEvent;
+import fr.fullstack.shopapp.model.ChangeOperation;
+import fr.fullstack.shopapp.repository.ChangeEventRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs against the database of application.properties, in a transaction rolled back after each test.
+ */
+@SpringBootTest(properties = {
+        "shopapp.autocomplete.enabled=false",
+        "shopapp.invalidation.enabled=false",
+        "shopapp.list-cache.enabled=false",
+        "shopapp.read-model.enabled=false"
+})
+@Transactional
+class ChangeFeedServiceTest {
+    @Autowired
+    private ChangeEventRepository changeEventRepository;
+
+    @Autowired
+    private ChangeFeedService changeFeedService;
+
+    private long lastEventId;
+
+    @BeforeEach
+    void recordChanges() {
+        lastEventId = changeEventRepository.findMaxId();
+        changeFeedService.recordChange(ChangeEntityType.PRODUCT, ChangeOperation.CREATED, 1, 10L);
+        changeFeedService.recordChange(ChangeEntityType.PRODUCT, ChangeOperation.CREATED, 2, 20L);
+        changeFeedService.recordChange(ChangeEntityType.CATEGORY, ChangeOperation.CREATED, 3, null);
+    }
+
+    @Test
+    void replayWithoutFilterReturnsEveryEvent() {
+        assertThat(changeFeedService.findEventsAfter(lastEventId, null))
+                .extracting(ChangeEvent::getEntityId)
+                .containsExactly(1L, 2L, 3L);
+    }
+
+    @Test
+    void replayOfShopReturnsItsEventsAndTheEventsWithoutShop() {
+        assertThat(changeFeedService.findEventsAfter(lastEventId, 10L))
+                .extracting(ChangeEvent::getEntityId)
+                .containsExactly(1L, 3L);
+    }
+}
@@ -0,0 +1,100 @@
+package fr.fullstack.shopapp.service;
+
+import fr.fullstack.shopapp.model.LocalizedProduct;
+import fr.fullstack.shopapp.model.OpeningHoursShop;
+import fr.fullstack.shopapp.model.Product;
+import fr.fullstack.shopapp.model.Shop;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs against the database of application.properties, in a transaction rolled back after each test:
+ * the chunks of the job join it.
+ */
+@SpringBootTest(properties = {
+        "shopapp.autocomplete.enabled=false",
+        "shopapp.invalidation.enabled=false",
+        "shopapp.list-cache.enabled=false",
+        "shopapp.read-model.enabled=false",
+        "shopapp.shop-purge.chunk-size=2"
+})
+@Transactional
+class ShopDeletionServiceTest {
+    @PersistenceContext
+    private EntityManager em;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ShopDeletionService shopDeletionService;
+
+    @Autowired
+    private ShopService shopService;
+
+    @Test
+    void purgeDetachesProductsAndRecordsTheirShop() {
+        Shop shop = createShop();
+        List<Long> productIds = new ArrayList<Long>();
+        for (int i = 0; i < 5; i++) {
+            productIds.add(createProduct(shop).getId());
+        }
+        shopService.deleteShopById(shop.getId());
+        em.flush();
+        em.clear();
+
+        shopDeletionService.runPendingJobs();
+
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM shops WHERE id = ?", Long.class, shop.getId()
+        )).isEqualTo(0L);
+        for (long productId : productIds) {
+            assertThat(jdbcTemplate.queryForList(
+                    "SELECT shop_id FROM products WHERE id = ?", Long.class, productId
+            )).containsOnlyNulls();
+            assertThat(jdbcTemplate.queryForList(
+                    "SELECT shop_id FROM change_events WHERE entity_type = 'PRODUCT' AND operation = 'UPDATED' "
+                            + "AND entity_id = ?",
+                    Long.class, productId
+            )).containsExactly(shop.getId());
+        }
+    }
+
+    private Product createProduct(Shop shop) {
+        LocalizedProduct localizedProduct = new LocalizedProduct();
+        localizedProduct.setLocale("FR");
+        localizedProduct.setName("Produit");
+        localizedProduct.setDescription("Description");
+        Product product = new Product();
+        product.setPrice(10);
+        product.setShop(shop);
+        product.setLocalizedProducts(new ArrayList<LocalizedProduct>(List.of(localizedProduct)));
+        return productService.createProduct(product);
+    }
+
+    private Shop createShop() {
+        OpeningHoursShop openingHours = new OpeningHoursShop();
+        openingHours.setDay(1);
+        openingHours.setOpenAt(LocalTime.of(9, 0));
+        openingHours.setCloseAt(LocalTime.of(18, 0));
+        Shop shop = new Shop();
+        shop.setName("Shop");
+        shop.setInVacations(false);
+        shop.setOpeningHours(new ArrayList<OpeningHoursShop>(List.of(openingHours)));
+        return shopService.createShop(shop);
+    }
+}
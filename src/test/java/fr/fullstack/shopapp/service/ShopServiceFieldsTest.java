@@ -0,0 +1,128 @@
+package fr.fullstack.shopapp.service;
+
+import fr.fullstack.shopapp.model.OpeningHoursShop;
+import fr.fullstack.shopapp.model.Shop;
+import fr.fullstack.shopapp.projection.ShopProjection;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import net.ttddyy.dsproxy.QueryCountHolder;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs against the database of application.properties, in a transaction rolled back after each test.
+ */
+@SpringBootTest(properties = {
+        "shopapp.autocomplete.enabled=false",
+        "shopapp.invalidation.enabled=false",
+        "shopapp.list-cache.enabled=false",
+        "shopapp.read-model.enabled=false"
+})
+@Transactional
+class ShopServiceFieldsTest {
+    private static final Pageable PAGE = PageRequest.of(0, 10);
+
+    @PersistenceContext
+    private EntityManager em;
+
+    @Autowired
+    private ShopService shopService;
+
+    @BeforeEach
+    void createShops() {
+        for (int i = 0; i < 3; i++) {
+            OpeningHoursShop openingHours = new OpeningHoursShop();
+            openingHours.setDay(1);
+            openingHours.setOpenAt(LocalTime.of(9, 0));
+            openingHours.setCloseAt(LocalTime.of(18, 0));
+            Shop shop = new Shop();
+            shop.setName("Shop " + i);
+            shop.setInVacations(false);
+            shop.setOpeningHours(new ArrayList<OpeningHoursShop>(List.of(openingHours)));
+            shopService.createShop(shop);
+        }
+        // Loaded again by the tests, not from the persistence context
+        em.flush();
+        em.clear();
+        QueryCountHolder.clear();
+    }
+
+    @Test
+    void fieldsListIsOneQuery() {
+        shopService.getShopFieldsList(
+                Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), false, PAGE,
+                ShopProjection.parse("id,name")
+        );
+
+        assertThat(QueryCountHolder.getGrandTotal().getTotal()).isEqualTo(1);
+    }
+
+    @Test
+    void fieldsListRunsFewerQueriesThanEntities() {
+        List<Shop> shops = shopService.getShopList(
+                Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), false, PAGE
+        ).getContent();
+        // What the serialization of the entities reads
+        shops.forEach(shop -> shop.getOpeningHours().size());
+        long entityQueries = QueryCountHolder.getGrandTotal().getTotal();
+
+        QueryCountHolder.clear();
+        shopService.getShopFieldsList(
+                Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), false, PAGE,
+                ShopProjection.parse("id,name")
+        );
+
+        assertThat(QueryCountHolder.getGrandTotal().getTotal()).isLessThan(entityQueries);
+    }
+
+    @Test
+    void nbProductsSortMatchesEntities() {
+        Optional<String> sortBy = Optional.of("nbProducts");
+        List<Long> entityIds = shopService.getShopList(
+                sortBy, Optional.empty(), Optional.empty(), Optional.empty(), false, PAGE
+        ).getContent().stream().map(Shop::getId).toList();
+        List<Map<String, Object>> shops = shopService.getShopFieldsList(
+                sortBy, Optional.empty(), Optional.empty(), Optional.empty(), false, PAGE,
+                ShopProjection.parse("id,nbProducts")
+        ).getContent();
+
+        assertThat(shops).extracting(shop -> ((Number) shop.get("id")).longValue()).isEqualTo(entityIds);
+        assertThat(shops).extracting(shop -> ((Number) shop.get("nbProducts")).longValue())
+                .isSortedAccordingTo((a, b) -> Long.compare(b, a));
+    }
+
+    @TestConfiguration
+    static class QueryCountConfig {
+        // Counts the statements of the calling thread in QueryCountHolder
+        @Bean
+        static BeanPostProcessor queryCountDataSourcePostProcessor() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (bean instanceof DataSource dataSource) {
+                        return ProxyDataSourceBuilder.create(dataSource).countQuery().build();
+                    }
+                    return bean;
+                }
+            };
+        }
+    }
+}